@@ -25,10 +25,13 @@ import io.kahu.hawaii.service.mail.FakeMailSender;
 import io.kahu.hawaii.service.mail.HawaiiProperties;
 import io.kahu.hawaii.service.mail.MailSender;
 import io.kahu.hawaii.service.mail.MailSenderHelperImpl;
+import io.kahu.hawaii.util.call.RandomRequestIdGenerator;
+import io.kahu.hawaii.util.call.RequestIdGenerator;
 import io.kahu.hawaii.util.call.configuration.DispatcherConfigurator;
 import io.kahu.hawaii.util.call.configuration.RequestConfigurations;
 import io.kahu.hawaii.util.call.dispatch.ExecutorRepository;
 import io.kahu.hawaii.util.call.dispatch.RequestDispatcher;
+import io.kahu.hawaii.util.call.http.HttpClientRepository;
 import io.kahu.hawaii.util.call.http.response.FileDownload;
 import io.kahu.hawaii.util.call.log.CallLoggerImpl;
 import io.kahu.hawaii.util.call.log.request.GenericRequestLogger;
@@ -273,6 +276,7 @@ public class KahuConfig {
         Map<String, Object> beans = new HashMap<>();
         beans.put("Hawaii:name=HawaiiMailProperties", hawaiiMailProperties());
         beans.put("Hawaii:name=RequestConfigurations", requestCongfigurations());
+        beans.put("Hawaii:name=HttpClientRepository", httpClientRepository());
         return beans;
     }
 
@@ -281,20 +285,35 @@ public class KahuConfig {
         return new RequestConfigurations();
     }
 
+    @Bean(destroyMethod = "stop")
+    public HttpClientRepository httpClientRepository() {
+        return new HttpClientRepository(logManager());
+    }
+
     @Bean(destroyMethod = "stop")
     public ExecutorRepository executorServiceRepository() {
         final ExecutorRepository executorRepository = new ExecutorRepository(logManager());
-        DispatcherConfigurator dispatcherConfigurator = new DispatcherConfigurator(executorRepository, requestCongfigurations(), logManager());
+        DispatcherConfigurator dispatcherConfigurator = new DispatcherConfigurator(executorRepository, requestCongfigurations(), httpClientRepository(),
+                logManager());
         String config = env.getProperty("dispatcher.configuration.file");
         File configFile = new File(locationHelper().getHawaiiServerHome(), config);
         dispatcherConfigurator.configure(configFile);
+        if (env.getProperty("dispatcher.configuration.reload", Boolean.class, false)) {
+            dispatcherConfigurator.watch(fileChangeListener());
+        }
         return executorRepository;
     }
 
-    @Bean
+    @Bean(destroyMethod = "stop")
     public RequestDispatcher requestDispatcher() {
-        // TODO Inject HttpClientFactory
-        return new RequestDispatcher(executorServiceRepository(), logManager());
+        RequestDispatcher requestDispatcher = new RequestDispatcher(executorServiceRepository(), httpClientRepository(), logManager());
+        requestDispatcher.setRequestIdGenerator(requestIdGenerator());
+        return requestDispatcher;
+    }
+
+    @Bean
+    public RequestIdGenerator requestIdGenerator() {
+        return new RandomRequestIdGenerator();
     }
 
     @Bean
@@ -15,9 +15,11 @@
  */
 package io.kahu.hawaii.util.call;
 
+import io.kahu.hawaii.util.call.dispatch.RoutingTable;
 import io.kahu.hawaii.util.call.statistics.QueueStatistic;
 import io.kahu.hawaii.util.call.statistics.RequestStatistic;
 
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.FutureTask;
 
@@ -26,10 +28,24 @@ import java.util.concurrent.FutureTask;
  * @param <T>
  */
 public interface AbortableRequest<T> extends Request<T> {
+    /**
+     * @return the time left until the deadline of the request.
+     */
     TimeOut getTimeOut();
 
+    /**
+     * @return the deadline of the request: the configured time out, limited by the deadline of the transaction (if any). Null if the request
+     * is not executed yet.
+     */
+    Deadline getDeadline();
+
     RequestContext<T> getContext();
 
+    /**
+     * @return the route of the request, resolved once when the request is executed. Null if the request is not executed yet.
+     */
+    RoutingTable.Route getRoute();
+
     void setQueueStatistic(QueueStatistic queueStatistic);
 
     RequestStatistic getStatistic();
@@ -38,6 +54,12 @@ public interface AbortableRequest<T> extends Request<T> {
 
     Response<T> doExecute() throws Throwable;
 
+    /**
+     * @return the conversion of the response (including the callback) on the conversion stage, started by {@link #doExecute()}. Null if the
+     * response is converted by the thread that executes the request.
+     */
+    CompletableFuture<Void> getConversion();
+
     void doCallback();
 
     /**
@@ -45,6 +67,12 @@ public interface AbortableRequest<T> extends Request<T> {
      */
     void abort();
 
+    /**
+     * In case the response is not needed anymore, the request is aborted with status {@link ResponseStatus#CANCELLED} by invoking this
+     * method.
+     */
+    void abandon();
+
     /**
      * Signal the end of the request, releasing the lock on the response. Clients using Response#get() will be signalled to conintue.
      */
@@ -63,5 +91,22 @@ public interface AbortableRequest<T> extends Request<T> {
 
     void setLatch(CountDownLatch latch);
 
+    /**
+     * A fingerprint of the request, such that two requests for the same call with equal fingerprints will get the same response.
+     * @return the fingerprint or null if the request cannot be coalesced with identical requests.
+     */
+    String getFingerprint();
+
+    /**
+     * A copy of the request, with its own response and statistic, that can be executed independently of this request (e.g. to hedge it).
+     * @return the copy or null if the request cannot be copied.
+     */
+    AbortableRequest<T> copy();
+
+    /**
+     * Cancel the backend request without touching the response, used when the response is provided by a copy of this request.
+     */
+    void cancel();
+
     boolean isAsync();
 }
@@ -15,19 +15,24 @@
  */
 package io.kahu.hawaii.util.call;
 
+import io.kahu.hawaii.util.call.configuration.RequestConfiguration;
 import io.kahu.hawaii.util.call.dispatch.RequestDispatcher;
+import io.kahu.hawaii.util.call.dispatch.RoutingTable;
 import io.kahu.hawaii.util.call.log.CallLogger;
 import io.kahu.hawaii.util.call.statistics.QueueStatistic;
 import io.kahu.hawaii.util.call.statistics.RequestStatistic;
 import io.kahu.hawaii.util.exception.ServerException;
 import io.kahu.hawaii.util.logger.CoreLoggers;
+import io.kahu.hawaii.util.logger.LoggingContext;
 import io.kahu.hawaii.util.logger.LoggingContext.PopResource;
 
-import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.FutureTask;
 
 public abstract class AbstractAbortableRequest<F, T> implements Request<T>, AbortableRequest<T> {
+    private static final RequestIdGenerator DEFAULT_ID_GENERATOR = new RandomRequestIdGenerator();
+
     private final RequestDispatcher requestDispatcher;
     private final ResponseHandler<F, T> responseHandler;
     private final RequestContext<T> context;
@@ -37,10 +42,15 @@ public abstract class AbstractAbortableRequest<F, T> implements Request<T>, Abor
     private final CallLogger<T> logger;
 
     private boolean isAsync = false;
-    private boolean error = false;
+    private volatile boolean error = false;
     private Response<T> response = null;
     private String id;
+    private Deadline deadline;
+    private RoutingTable.Route route;
     private CountDownLatch latch;
+    private volatile CompletableFuture<Void> conversion;
+    private final Object conversionLock = new Object();
+    private boolean converted = false;
 
     public AbstractAbortableRequest(RequestPrototype<F, T>  prototype) {
         this.requestDispatcher = prototype.getRequestDispatcher();
@@ -67,6 +77,16 @@ public abstract class AbstractAbortableRequest<F, T> implements Request<T>, Abor
         this.logger = logger;
     }
 
+    /**
+     * Copy constructor, see {@link #copy()}.
+     */
+    protected AbstractAbortableRequest(AbstractAbortableRequest<F, T> original) {
+        this.requestDispatcher = original.requestDispatcher;
+        this.context = original.context;
+        this.responseHandler = original.responseHandler;
+        this.logger = original.logger;
+    }
+
     @Override
     public void setCallback(ResponseCallback<T> callback) {
         this.callback = callback;
@@ -74,9 +94,28 @@ public abstract class AbstractAbortableRequest<F, T> implements Request<T>, Abor
 
     @Override
     public void abort() {
-        this.error = true;
+        abort(ResponseStatus.TIME_OUT, getContext().getTimeOutResponse(), "Request '" + getId() + "' timed out.");
+    }
+
+    @Override
+    public void abandon() {
+        abort(ResponseStatus.CANCELLED, null, "Request '" + getId() + "' cancelled.");
+    }
+
+    private void abort(ResponseStatus status, T result, String message) {
+        boolean convertedInTime;
+        synchronized (conversionLock) {
+            this.error = true;
+            convertedInTime = converted;
+        }
         statistic.endBackendRequest();
-        response.set(ResponseStatus.TIME_OUT, getContext().getTimeOutResponse(), "Request '" + getId() + "' timed out.");
+        response.set(status, result, message);
+        CompletableFuture<Void> conversion = this.conversion;
+        if (conversion != null && !convertedInTime) {
+            // A late conversion leaves the response alone, whoever waits for the callback is released now.
+            conversion.cancel(false);
+            doCallback();
+        }
         abortInternally();
     }
 
@@ -102,33 +141,117 @@ public abstract class AbstractAbortableRequest<F, T> implements Request<T>, Abor
         if (idFromContext != null && !idFromContext.equals("")) {
             id = idFromContext.toString();
         } else {
-            id = UUID.randomUUID().toString();
+            id = requestDispatcher == null ? DEFAULT_ID_GENERATOR.generate() : requestDispatcher.getRequestIdGenerator().generate();
+        }
+        route = requestDispatcher == null ? null : requestDispatcher.getRoute(this);
+        deadline = Deadline.after(route == null || route.getTimeOut() == null ? getContext().getTimeOut() : route.getTimeOut());
+        Object transactionDeadline = logger.getLogManager().getContext(Deadline.CONTEXT_KEY);
+        if (transactionDeadline instanceof Deadline) {
+            deadline = deadline.min((Deadline) transactionDeadline);
         }
         statistic = new RequestStatistic();
         statistic.startRequest();
         logger.logRequest(this);
 
         response = new Response<>(this, statistic, logger.getLogManager().getContextSnapshot());
+        response.setListenerFailureHandler(this::listenerFailed);
         this.isAsync = false;
         this.error = false;
     }
 
     @Override
     public Response<T> doExecute() throws Throwable {
+        conversion = null;
+        synchronized (conversionLock) {
+            converted = false;
+        }
+        ResponseHandler<F, T> handler = new TimingResponseHandler<>(responseHandler, statistic);
+        DetachingResponseHandler detachingHandler = null;
+        if (isConvertedByConversionStage()) {
+            detachingHandler = new DetachingResponseHandler(handler);
+            handler = detachingHandler;
+        }
+
         try {
             statistic.startBackendRequest();
-            executeInternally(new TimingResponseHandler<>(responseHandler, statistic), response);
+            executeInternally(handler, response);
         } catch (Throwable t) {
-            response.setStatus(ResponseStatus.INTERNAL_FAILURE, "Error executing call.", t);
+            if (!error) {
+                // An aborted (timed out) request keeps its status.
+                response.setStatus(ResponseStatus.INTERNAL_FAILURE, "Error executing call.", t);
+            }
             throw t;
         } finally {
             statistic.endBackendRequest();
         }
+
+        if (detachingHandler != null && detachingHandler.payload != null) {
+            F payload = detachingHandler.payload;
+            statistic.queueConversion();
+            conversion = requestDispatcher.getConversionStage().convert(() -> convert(payload));
+        }
         return response;
     }
 
+    @Override
+    public CompletableFuture<Void> getConversion() {
+        return conversion;
+    }
+
+    private boolean isConvertedByConversionStage() {
+        RequestConfiguration configuration = getContext().getConfiguration();
+        return configuration != null && configuration.isConversionStage() && requestDispatcher != null;
+    }
+
+    /**
+     * Convert a detached payload on the conversion stage and do the callback, like the executor does for requests converted on the thread
+     * of the queue. The payload is converted into a response of its own which is copied into the response of the request only if the
+     * request has not been aborted (timed out) meanwhile.
+     */
+    private void convert(F payload) {
+        if (error) {
+            return;
+        }
+        LoggingContext.remove();
+        Response<T> result = new Response<>(this, statistic, response.getLoggingContext());
+        boolean callback = false;
+        try {
+            new TimingResponseHandler<>(responseHandler, statistic).addToResponse(payload, result);
+            if (result.getStatus() == null) {
+                result.setStatus(ResponseStatus.INTERNAL_FAILURE, "Response handler did not set the response status.");
+            } else {
+                callback = true;
+            }
+        } catch (Throwable t) {
+            result.setStatus(ResponseStatus.INTERNAL_FAILURE, "Error converting response.", t);
+        } finally {
+            LoggingContext.remove();
+        }
+
+        synchronized (conversionLock) {
+            if (error) {
+                return;
+            }
+            converted = true;
+            response.copy(result);
+        }
+        if (callback) {
+            doCallback();
+        }
+    }
+
     protected abstract void executeInternally(ResponseHandler<F, T> responseHandler, Response<T> response) throws ServerException;
 
+    /**
+     * Detach the payload from the backend connection (for instance by reading it completely), so it can be converted after the connection
+     * is released. See {@link RequestConfiguration#isConversionStage()}.
+     *
+     * @return the detached payload or null if the payload cannot be detached, it is converted right away then.
+     */
+    protected F detach(F payload) throws ServerException {
+        return null;
+    }
+
     protected abstract void abortInternally();
 
     protected void rejectInternally() {
@@ -163,6 +286,10 @@ public abstract class AbstractAbortableRequest<F, T> implements Request<T>, Abor
         }
     }
 
+    private void listenerFailed(Throwable t) {
+        logger.getLogManager().error(CoreLoggers.SERVER_CALLS, t);
+    }
+
     @Override
     public void setQueueStatistic(QueueStatistic queueStatistic) {
         getStatistic().setQueueStatistic(queueStatistic);
@@ -208,6 +335,40 @@ public abstract class AbstractAbortableRequest<F, T> implements Request<T>, Abor
         this.latch = latch;
     }
 
+    @Override
+    public String getFingerprint() {
+        return null;
+    }
+
+    @Override
+    public AbortableRequest<T> copy() {
+        AbstractAbortableRequest<F, T> copy = newCopy();
+        if (copy != null) {
+            copy.id = id;
+            copy.deadline = deadline;
+            copy.route = route;
+            copy.isAsync = isAsync;
+            copy.statistic = new RequestStatistic();
+            copy.statistic.startRequest();
+            copy.response = new Response<>(copy, copy.statistic, response.getLoggingContext());
+            copy.response.setListenerFailureHandler(copy::listenerFailed);
+        }
+        return copy;
+    }
+
+    /**
+     * Create a new instance of this request for {@link #copy()}, by default requests cannot be copied.
+     * @return the new instance or null if the request cannot be copied.
+     */
+    protected AbstractAbortableRequest<F, T> newCopy() {
+        return null;
+    }
+
+    @Override
+    public void cancel() {
+        abortInternally();
+    }
+
     @Override
     public boolean isAsync() {
         return isAsync;
@@ -215,7 +376,20 @@ public abstract class AbstractAbortableRequest<F, T> implements Request<T>, Abor
 
     @Override
     public TimeOut getTimeOut() {
-        return getContext().getTimeOut();
+        if (deadline == null) {
+            return getContext().getTimeOut();
+        }
+        return deadline.getRemainingTimeOut();
+    }
+
+    @Override
+    public Deadline getDeadline() {
+        return deadline;
+    }
+
+    @Override
+    public RoutingTable.Route getRoute() {
+        return route;
     }
 
     private void logResponse() {
@@ -235,4 +409,24 @@ public abstract class AbstractAbortableRequest<F, T> implements Request<T>, Abor
     protected void setResponse(Response<T> response) {
         this.response = response;
     }
+
+    /**
+     * Keeps the detached payload for the conversion stage, payloads that cannot be detached are converted right away.
+     */
+    private final class DetachingResponseHandler implements ResponseHandler<F, T> {
+        private final ResponseHandler<F, T> delegate;
+        private F payload;
+
+        private DetachingResponseHandler(ResponseHandler<F, T> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void addToResponse(F payload, Response<T> response) throws ServerException {
+            this.payload = detach(payload);
+            if (this.payload == null) {
+                delegate.addToResponse(payload, response);
+            }
+        }
+    }
 }
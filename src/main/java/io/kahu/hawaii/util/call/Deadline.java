@@ -0,0 +1,71 @@
+/**
+ * Copyright 2014-2018 Q24
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kahu.hawaii.util.call;
+
+import org.apache.http.annotation.ThreadSafe;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A point in time before which a request (or a whole transaction) must be done.
+ *
+ * A transaction deadline is carried in the logging context under {@link #CONTEXT_KEY}, e.g.
+ * <pre>
+ * logManager.putContext(Deadline.CONTEXT_KEY, Deadline.after(new TimeOut(2, TimeUnit.SECONDS)));
+ * </pre>
+ * Each request dispatched within the transaction is then limited to the remaining budget.
+ */
+@ThreadSafe
+public final class Deadline {
+    public static final String CONTEXT_KEY = "tx.deadline";
+
+    private final long nanoTime;
+
+    private Deadline(long nanoTime) {
+        this.nanoTime = nanoTime;
+    }
+
+    public static Deadline after(TimeOut timeOut) {
+        return new Deadline(System.nanoTime() + timeOut.getUnit().toNanos(timeOut.getDuration()));
+    }
+
+    /**
+     * @return the earliest of this deadline and the other deadline.
+     */
+    public Deadline min(Deadline other) {
+        if (other == null || nanoTime - other.nanoTime <= 0) {
+            return this;
+        }
+        return other;
+    }
+
+    public long remaining(TimeUnit unit) {
+        return unit.convert(Math.max(0L, nanoTime - System.nanoTime()), TimeUnit.NANOSECONDS);
+    }
+
+    public TimeOut getRemainingTimeOut() {
+        return new TimeOut(remaining(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+    }
+
+    public boolean isExpired() {
+        return nanoTime - System.nanoTime() <= 0;
+    }
+
+    @Override
+    public String toString() {
+        return remaining(TimeUnit.MILLISECONDS) + " msec left";
+    }
+}
@@ -0,0 +1,37 @@
+/**
+ * Copyright 2014-2018 Q24
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kahu.hawaii.util.call;
+
+import org.apache.http.annotation.ThreadSafe;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Generates random (version 4) UUIDs from the random generator of the current thread. Unlike {@link UUID#randomUUID()}, which shares one
+ * SecureRandom between all threads, the threads do not contend. The ids are not suited as secrets.
+ */
+@ThreadSafe
+public class RandomRequestIdGenerator implements RequestIdGenerator {
+
+    @Override
+    public String generate() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long mostSignificantBits = (random.nextLong() & ~0xF000L) | 0x4000L;
+        long leastSignificantBits = (random.nextLong() & ~(0xC000000000000000L)) | 0x8000000000000000L;
+        return new UUID(mostSignificantBits, leastSignificantBits).toString();
+    }
+}
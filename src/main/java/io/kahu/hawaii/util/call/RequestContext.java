@@ -25,6 +25,7 @@ import org.apache.http.annotation.ThreadSafe;
 public class RequestContext<T> {
     private final String backendSystem;
     private final String methodName;
+    private final String name;
 
     private RequestConfiguration configuration;
 
@@ -37,6 +38,7 @@ public class RequestContext<T> {
     public RequestContext(String backendSystem, String methodName) {
         this.backendSystem = backendSystem;
         this.methodName = methodName;
+        this.name = backendSystem + "." + methodName;
         configuration = new RequestConfiguration();
     }
 
@@ -47,6 +49,7 @@ public class RequestContext<T> {
     public RequestContext(String backendSystem, String methodName, TimeOut timeOut) {
         this.backendSystem = backendSystem;
         this.methodName = methodName;
+        this.name = backendSystem + "." + methodName;
         configuration = new RequestConfiguration();
         configuration.setTimeOut(timeOut);
     }
@@ -81,7 +84,7 @@ public class RequestContext<T> {
 
     @Override
     public String toString() {
-        return getBackendSystem() + "." + getMethodName();
+        return name;
     }
 
     public RequestConfiguration getConfiguration() {
@@ -0,0 +1,24 @@
+/**
+ * Copyright 2014-2018 Q24
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kahu.hawaii.util.call;
+
+/**
+ * Generates the ids of requests that are not part of a call with an id already (see 'call.id' in the logging context). The id is logged
+ * and sent to the backend system (for instance as 'X-Hawaii-Id' header), so it must be unique and consist of printable characters.
+ */
+public interface RequestIdGenerator {
+    String generate();
+}
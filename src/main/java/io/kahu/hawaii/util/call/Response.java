@@ -22,7 +22,12 @@ import io.kahu.hawaii.util.logger.LoggingContextMap;
 
 import java.net.SocketException;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 import org.apache.http.Header;
 import org.apache.http.annotation.NotThreadSafe;
@@ -33,6 +38,7 @@ public class Response<T> {
     private final RequestStatistic statistic;
     private final LoggingContextMap loggingContext;
     private final CountDownLatch latch = new CountDownLatch(1);
+    private final CompletableFuture<Response<T>> completion = new CompletableFuture<>();
 
     private String rawPayload;
 
@@ -42,6 +48,8 @@ public class Response<T> {
     private T response;
 
     private boolean logged = false;
+    private volatile Consumer<ResponseStatus> abortHandler;
+    private volatile Consumer<Throwable> listenerFailureHandler;
 
 
     // These 3 are mostly for responses to HTTP requests, but can hold metadata
@@ -193,5 +201,116 @@ public class Response<T> {
 
     public void signalDone() {
         latch.countDown();
+        completion.complete(this);
+    }
+
+    /**
+     * Non blocking alternative for {@link #get()}. The stage completes with this response once the request is done, also if the request
+     * failed, timed out or was rejected (check the status).
+     *
+     * Dependent stages run on the thread that finishes the request (unless an 'async' variant is used), so keep them short. To chain
+     * dependent backend calls use thenCompose with the response of the next call, e.g.
+     * <pre>
+     * first.executeAsync().toCompletionStage().thenCompose(response -&gt; next(response).executeAsync().toCompletionStage())
+     * </pre>
+     */
+    public CompletionStage<Response<T>> toCompletionStage() {
+        // Do not hand out the future itself, clients must not be able to complete it.
+        return completion.thenApply(response -> response);
+    }
+
+    /**
+     * Run the listener once the request is done (see {@link #signalDone()}), on the thread that finishes the request. If the request is done
+     * already the listener runs right away on the calling thread. Registering a listener does not block, and no thread waits for the
+     * response.
+     *
+     * The thread that finishes the request can be a thread of a queue, of the conversion stage or, when the request times out, the single
+     * thread that times out all requests. So the listener must not block; use {@link #onComplete(Consumer, Executor)} for listeners that
+     * can. An exception thrown by the listener is logged, other listeners still run.
+     */
+    public void onComplete(Consumer<? super Response<T>> listener) {
+        completion.thenAccept(guarded(listener));
+    }
+
+    /**
+     * Run the listener on the executor once the request is done (right away if the request is done already). An exception thrown by the
+     * listener is logged.
+     *
+     * @see #onComplete(Consumer)
+     */
+    public void onComplete(Consumer<? super Response<T>> listener, Executor executor) {
+        completion.thenAcceptAsync(guarded(listener), executor);
+    }
+
+    private Consumer<Response<T>> guarded(Consumer<? super Response<T>> listener) {
+        return response -> {
+            try {
+                listener.accept(response);
+            } catch (Throwable t) {
+                Consumer<Throwable> handler = listenerFailureHandler;
+                if (handler != null) {
+                    handler.accept(t);
+                }
+            }
+        };
+    }
+
+    /**
+     * Abort the request of this response if it is still in flight, as if it timed out. Only asynchronous requests can be aborted, for other
+     * requests this does nothing.
+     */
+    public void abort() {
+        Consumer<ResponseStatus> handler = abortHandler;
+        if (handler != null) {
+            handler.accept(ResponseStatus.TIME_OUT);
+        }
+    }
+
+    /**
+     * Abort the request of this response if it is still in flight because its response is not needed anymore. The response gets status
+     * {@link ResponseStatus#CANCELLED}, which is not counted as a failure by the circuit breaker nor as a drop by the adaptive limit. Only
+     * asynchronous requests can be cancelled, for other requests this does nothing.
+     */
+    public void cancel() {
+        Consumer<ResponseStatus> handler = abortHandler;
+        if (handler != null) {
+            handler.accept(ResponseStatus.CANCELLED);
+        }
+    }
+
+    /**
+     * Internal use only! The handler gets the status to abort the request with.
+     */
+    public void setAbortHandler(Consumer<ResponseStatus> abortHandler) {
+        this.abortHandler = abortHandler;
+    }
+
+    /**
+     * Internal use only! Handles (logs) the exceptions thrown by completion listeners.
+     */
+    public void setListenerFailureHandler(Consumer<Throwable> listenerFailureHandler) {
+        this.listenerFailureHandler = listenerFailureHandler;
+    }
+
+    /**
+     * Wait until the response is done (without getting it).
+     *
+     * @return true if the response is done, false if the waiting time elapsed.
+     */
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        return latch.await(timeout, unit);
+    }
+
+    /**
+     * Copy the outcome of another (done) response for the same call into this response. The request, statistic and logging context of
+     * this response are kept.
+     */
+    public void copy(Response<T> other) {
+        setStatus(other.getStatus(), other.getMessage(), other.getThrowable());
+        this.response = other.getResponsePayload();
+        this.rawPayload = other.getRawPayload();
+        this.statusLine = other.getStatusLine();
+        this.statusCode = other.getStatusCode();
+        this.headers = other.getHeaders();
     }
 }
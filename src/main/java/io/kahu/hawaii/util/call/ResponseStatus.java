@@ -16,5 +16,10 @@
 package io.kahu.hawaii.util.call;
 
 public enum ResponseStatus {
-    SUCCESS, BACKEND_FAILURE, TIME_OUT, TOO_BUSY, INTERNAL_FAILURE;
+    SUCCESS, BACKEND_FAILURE, TIME_OUT, TOO_BUSY, INTERNAL_FAILURE,
+    /**
+     * The request was aborted because its response is not needed anymore (see {@link Response#cancel()}), this says nothing about the
+     * backend.
+     */
+    CANCELLED;
 }
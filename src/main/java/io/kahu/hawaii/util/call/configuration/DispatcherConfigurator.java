@@ -17,8 +17,11 @@ package io.kahu.hawaii.util.call.configuration;
 
 import java.io.File;
 import java.util.Collection;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.io.FileUtils;
@@ -29,30 +32,69 @@ import org.codehaus.jettison.json.JSONObject;
 import org.springframework.context.ApplicationListener;
 import org.springframework.context.event.ContextRefreshedEvent;
 
+import io.kahu.hawaii.service.io.FileChangeHandler;
+import io.kahu.hawaii.service.io.FileChangeListener;
 import io.kahu.hawaii.util.call.RequestBuilder;
 import io.kahu.hawaii.util.call.RequestContext;
+import io.kahu.hawaii.util.call.ResponseStatus;
 import io.kahu.hawaii.util.call.TimeOut;
 import io.kahu.hawaii.util.call.dispatch.ExecutorRepository;
+import io.kahu.hawaii.util.call.dispatch.HawaiiExecutor;
 import io.kahu.hawaii.util.call.dispatch.HawaiiExecutorImpl;
+import io.kahu.hawaii.util.call.dispatch.HawaiiThreadFactory;
+import io.kahu.hawaii.util.call.dispatch.MicroBatcher;
+import io.kahu.hawaii.util.call.dispatch.PriorityTaskQueue;
+import io.kahu.hawaii.util.call.dispatch.SchedulingLogPolicy;
+import io.kahu.hawaii.util.call.dispatch.VirtualThreadExecutor;
+import io.kahu.hawaii.util.call.dispatch.circuit.CircuitBreaker;
+import io.kahu.hawaii.util.call.dispatch.hedge.HedgingPolicy;
+import io.kahu.hawaii.util.call.dispatch.limit.AdaptiveLimit;
+import io.kahu.hawaii.util.call.dispatch.limit.AimdLimit;
+import io.kahu.hawaii.util.call.dispatch.limit.CoDel;
+import io.kahu.hawaii.util.call.dispatch.limit.ConcurrencyLimiter;
+import io.kahu.hawaii.util.call.dispatch.limit.GradientLimit;
+import io.kahu.hawaii.util.call.dispatch.limit.RateLimiter;
+import io.kahu.hawaii.util.call.dispatch.limit.TokenBudget;
+import io.kahu.hawaii.util.call.dispatch.retry.RetryPolicy;
+import io.kahu.hawaii.util.call.http.HttpClientConfiguration;
+import io.kahu.hawaii.util.call.http.HttpClientRepository;
+import io.kahu.hawaii.util.exception.ServerException;
 import io.kahu.hawaii.util.logger.CoreLoggers;
 import io.kahu.hawaii.util.logger.LogManager;
 import io.kahu.hawaii.util.spring.ApplicationContextProvider;
 
-public class DispatcherConfigurator implements ApplicationListener<ContextRefreshedEvent> {
+public class DispatcherConfigurator implements ApplicationListener<ContextRefreshedEvent>, FileChangeHandler {
+    private static final String QUEUE_TYPE_VIRTUAL = "virtual";
+    private static final String LIMIT_ALGORITHM_GRADIENT = "gradient";
+    private static final String[] RESIZABLE_QUEUE_SETTINGS = { "core_pool_size", "max_pool_size", "keep_alive_time", "adaptive_limit", "hedge_budget",
+            "scheduling_log", "codel", "caller_runs" };
+
     private final LogManager logManager;
     private final ExecutorRepository executorServiceRepository;
     private final RequestConfigurations requestConfigurations;
+    private final HttpClientRepository httpClientRepository;
+    private final Map<String, String> appliedSettings = new HashMap<>();
+    private final Set<String> configuredQueues = new HashSet<>();
+    private File configFile;
+    private FileChangeListener fileChangeListener;
 
     public DispatcherConfigurator(ExecutorRepository executorServiceRepository, RequestConfigurations requestConfigurations, LogManager logManager) {
+        this(executorServiceRepository, requestConfigurations, null, logManager);
+    }
+
+    public DispatcherConfigurator(ExecutorRepository executorServiceRepository, RequestConfigurations requestConfigurations,
+            HttpClientRepository httpClientRepository, LogManager logManager) {
         this.executorServiceRepository = executorServiceRepository;
         executorServiceRepository.setRequestConfigurations(requestConfigurations);
 
         this.requestConfigurations = requestConfigurations;
+        this.httpClientRepository = httpClientRepository;
 
         this.logManager = logManager;
     }
 
     public void configure(File configFile) {
+        this.configFile = configFile;
         try {
             String configuration = FileUtils.readFileToString(configFile);
             JSONObject json = new JSONObject(configuration);
@@ -63,78 +105,553 @@ public class DispatcherConfigurator implements ApplicationListener<ContextRefres
         }
     }
 
-    public void configure(JSONObject json) throws JSONException {
+    /**
+     * Apply the configuration. When called again (on reload) queues whose pool sizes changed are resized in place, queues with other changes
+     * are replaced by a new queue while the old one finishes its pending requests. Settings removed from the configuration get their
+     * default value again. The new settings of all calls and systems are built first and then published at once.
+     */
+    public synchronized void configure(JSONObject json) throws JSONException {
+        validate(json);
         parseConfig(json);
     }
 
+    /**
+     * Reload the configuration file (see {@link #configure(File)}) each time it changes.
+     */
+    public void watch(FileChangeListener fileChangeListener) {
+        this.fileChangeListener = fileChangeListener;
+        fileChangeListener.setCallBack(this);
+        start();
+    }
+
+    @Override
+    public void start() {
+        try {
+            fileChangeListener.startMonitoringFile(configFile.getAbsolutePath());
+        } catch (ServerException e) {
+            logManager.error(e);
+        }
+    }
+
+    @Override
+    public void handleFileChange() {
+        logManager.info(CoreLoggers.SERVER, "Reloading dispatcher configuration '" + configFile + "'.");
+        try {
+            configure(new JSONObject(FileUtils.readFileToString(configFile)));
+        } catch (Exception e) {
+            logManager.error(CoreLoggers.SERVER, "Could not reload dispatcher configuration '" + configFile + "', the current configuration is kept.", e);
+        }
+    }
+
+    /**
+     * Check the configuration before anything is applied, so an invalid configuration leaves the current one untouched.
+     */
+    private void validate(JSONObject json) throws JSONException {
+        Set<String> queueNames = new HashSet<>();
+        JSONArray queues = json.getJSONArray("queues");
+        for (int i = 0; i < queues.length(); i++) {
+            JSONObject queue = queues.getJSONObject(i);
+            queueNames.add(queue.getString("name"));
+            parseSchedulingLogPolicy(queue.optJSONObject("scheduling_log"));
+            if (QUEUE_TYPE_VIRTUAL.equals(queue.optString("type"))) {
+                queue.getInt("max_concurrent_requests");
+            } else if (queue.getInt("core_pool_size") > queue.getInt("max_pool_size")) {
+                throw new JSONException("The core pool size of queue '" + queue.getString("name") + "' exceeds its max pool size.");
+            } else {
+                queue.getInt("keep_alive_time");
+                queue.getInt("max_pending_requests");
+            }
+        }
+
+        JSONArray systems = json.getJSONArray("systems");
+        for (int i = 0; i < systems.length(); i++) {
+            JSONObject system = systems.getJSONObject(i);
+            system.getString("name");
+            validateQueue(system.optString("default_queue"), queueNames);
+            validateRetry(system.optJSONObject("retry"));
+            validateRateLimit(system.optJSONObject("rate_limit"));
+            JSONArray calls = system.optJSONArray("calls");
+            if (calls != null) {
+                for (int j = 0; j < calls.length(); j++) {
+                    JSONObject call = calls.getJSONObject(j);
+                    call.getString("method");
+                    validateQueue(call.optString("queue"), queueNames);
+                    validateRetry(call.optJSONObject("retry"));
+                    validateRateLimit(call.optJSONObject("rate_limit"));
+                    validateBatch(call.optJSONObject("batch"));
+                }
+            }
+        }
+    }
+
+    private void validateRateLimit(JSONObject rateLimit) throws JSONException {
+        if (rateLimit != null && rateLimit.getDouble("rate") <= 0.0D) {
+            throw new JSONException("The rate of a rate limit must be positive.");
+        }
+    }
+
+    private void validateBatch(JSONObject batch) throws JSONException {
+        if (batch != null && (batch.getInt("max_size") < 1 || batch.getLong("max_wait") < 0L)) {
+            throw new JSONException("The max size of a batch must be at least 1 and its max wait may not be negative.");
+        }
+    }
+
+    private void validateRetry(JSONObject retry) throws JSONException {
+        if (retry == null) {
+            return;
+        }
+        if (retry.optInt("max_attempts", 3) < 1) {
+            throw new JSONException("The max attempts of a retry policy must be at least 1.");
+        }
+        JSONArray statuses = retry.optJSONArray("statuses");
+        if (statuses != null) {
+            for (int i = 0; i < statuses.length(); i++) {
+                try {
+                    ResponseStatus.valueOf(statuses.getString(i));
+                } catch (IllegalArgumentException e) {
+                    throw new JSONException("Unknown response status '" + statuses.getString(i) + "'.");
+                }
+            }
+        }
+    }
+
+    private void validateQueue(String queue, Set<String> queueNames) throws JSONException {
+        if (StringUtils.isNotBlank(queue) && !queueNames.contains(queue)) {
+            throw new JSONException("The configured queue '" + queue + "' does not exist.");
+        }
+    }
+
     private void parseConfig(JSONObject json) throws JSONException {
+        Map<String, String> applied = new HashMap<>();
         Map<String, String> defaultExecutors = new HashMap<>();
-        Map<String, HawaiiExecutorImpl> executors = new HashMap<>();
+        Map<String, HawaiiExecutor> executors = new HashMap<>();
+        Map<String, RequestConfiguration> settings = new HashMap<>();
 
         JSONArray queues = json.getJSONArray("queues");
         for (int i = 0; i < queues.length(); i++) {
             JSONObject queue = queues.getJSONObject(i);
             String name = queue.getString("name");
+            HawaiiExecutor current = executorServiceRepository.getExecutorByName(name);
+
+            SchedulingLogPolicy schedulingLogPolicy = parseSchedulingLogPolicy(queue.optJSONObject("scheduling_log"));
+
+            if (QUEUE_TYPE_VIRTUAL.equals(queue.optString("type"))) {
+                HawaiiExecutor virtual = current;
+                JSONObject queueStructure = new JSONObject(queue.toString());
+                queueStructure.remove("scheduling_log");
+                boolean replace = changed(applied, "queue." + name, queueStructure);
+                if (current == null || replace) {
+                    int maxConcurrentRequests = queue.getInt("max_concurrent_requests");
+                    int maxPendingRequests = queue.optInt("max_pending_requests", 0);
+
+                    logManager.info(CoreLoggers.SERVER, "Creating virtual queue '" + name + "' with '" + maxConcurrentRequests + "'/'" + maxPendingRequests + "'.");
+                    virtual = new VirtualThreadExecutor(name, maxConcurrentRequests, maxPendingRequests, logManager);
+                }
+                virtual.setSchedulingLogPolicy(schedulingLogPolicy);
+                executors.put(name, virtual);
+                continue;
+            }
+
             int corePoolSize = queue.getInt("core_pool_size");
             int maxPoolSize = queue.getInt("max_pool_size");
             int keepAliveTime = queue.getInt("keep_alive_time");
             int maxPendingRequests = queue.getInt("max_pending_requests");
 
-            logManager.info(CoreLoggers.SERVER, "Creating queue '" + name + "' with '" + corePoolSize + "'/'" + maxPoolSize + "'/'" + maxPendingRequests + "'.");
-            HawaiiExecutorImpl executor = new HawaiiExecutorImpl(name, corePoolSize, maxPoolSize, maxPendingRequests, new TimeOut(keepAliveTime, TimeUnit.SECONDS), logManager);
+            // Only the pool sizes can be changed in place, other changes require a new queue.
+            JSONObject queueStructure = new JSONObject(queue.toString());
+            for (String resizable : RESIZABLE_QUEUE_SETTINGS) {
+                queueStructure.remove(resizable);
+            }
+            boolean replace = changed(applied, "queue." + name, queueStructure);
+
+            HawaiiExecutorImpl executor;
+            if (current instanceof HawaiiExecutorImpl && !replace) {
+                executor = (HawaiiExecutorImpl) current;
+                if (executor.getCorePoolSize() != corePoolSize || executor.getMaximumPoolSize() != maxPoolSize
+                        || executor.getKeepAliveTime(TimeUnit.SECONDS) != keepAliveTime) {
+                    logManager.info(CoreLoggers.SERVER, "Resizing queue '" + name + "' to '" + corePoolSize + "'/'" + maxPoolSize + "'.");
+                    executor.resize(corePoolSize, maxPoolSize, new TimeOut(keepAliveTime, TimeUnit.SECONDS));
+                }
+            } else if (queue.optBoolean("prioritized", false)) {
+                long aging = queue.optLong("priority_aging", 1000L);
+                logManager.info(CoreLoggers.SERVER, "Creating prioritized queue '" + name + "' with '" + corePoolSize + "'/'" + maxPoolSize + "'/'" + maxPendingRequests
+                        + "' and aging '" + aging + "' msec.");
+                executor = new HawaiiExecutorImpl(name, corePoolSize, maxPoolSize, new TimeOut(keepAliveTime, TimeUnit.SECONDS), new PriorityTaskQueue(
+                        maxPendingRequests, aging), new HawaiiThreadFactory(name), null, logManager);
+            } else {
+                logManager.info(CoreLoggers.SERVER, "Creating queue '" + name + "' with '" + corePoolSize + "'/'" + maxPoolSize + "'/'" + maxPendingRequests + "'.");
+                executor = new HawaiiExecutorImpl(name, corePoolSize, maxPoolSize, maxPendingRequests, new TimeOut(keepAliveTime, TimeUnit.SECONDS), logManager);
+            }
+
+            executor.setSchedulingLogPolicy(schedulingLogPolicy);
+            executor.setCallerRuns(queue.optBoolean("caller_runs", false));
+
+            JSONObject adaptiveLimit = queue.optJSONObject("adaptive_limit");
+            if (adaptiveLimit != null && (changed(applied, "adaptive_limit." + name, adaptiveLimit) || executor != current)) {
+                ConcurrencyLimiter limiter = new ConcurrencyLimiter(parseAdaptiveLimit(adaptiveLimit, maxPoolSize + maxPendingRequests));
+                logManager.info(CoreLoggers.SERVER, "Limiting queue '" + name + "' with " + limiter + ".");
+                executor.setConcurrencyLimiter(limiter);
+            }
+
+            JSONObject coDel = queue.optJSONObject("codel");
+            if (coDel != null && (changed(applied, "codel." + name, coDel) || executor != current)) {
+                CoDel shedder = new CoDel(coDel.optLong("target", 5L), coDel.optLong("interval", 100L));
+                logManager.info(CoreLoggers.SERVER, "Shedding load from queue '" + name + "' with " + shedder + ".");
+                executor.setCoDel(shedder);
+            }
 
             executors.put(name, executor);
         }
 
+        for (int i = 0; i < queues.length(); i++) {
+            JSONObject queue = queues.getJSONObject(i);
+            JSONObject hedgeBudget = queue.optJSONObject("hedge_budget");
+            if (hedgeBudget != null && changed(applied, "hedge_budget." + queue.getString("name"), hedgeBudget)) {
+                TokenBudget budget = new TokenBudget(hedgeBudget.optDouble("ratio", 0.1D), hedgeBudget.optInt("max", 10), 0);
+                logManager.info(CoreLoggers.SERVER, "Limiting hedged requests on queue '" + queue.getString("name") + "' with " + budget + ".");
+                executorServiceRepository.setHedgeBudget(queue.getString("name"), budget);
+            }
+        }
+
         JSONArray systems = json.getJSONArray("systems");
         for (int i = 0; i < systems.length(); i++) {
             JSONObject system = systems.getJSONObject(i);
             String systemName = system.getString("name");
-            Integer systemTimeOutValue = system.optInt("default_timeout", -1);
-            TimeOut systemTimeOut;
-            if (systemTimeOutValue > 0) {
-                systemTimeOut = new TimeOut(systemTimeOutValue, TimeUnit.SECONDS);
-                requestConfigurations.get(systemName).setTimeOut(systemTimeOut);
+            RequestConfiguration systemSettings = settings(settings, systemName);
+            int systemTimeOut = system.optInt("default_timeout", -1);
+            if (systemTimeOut > 0) {
+                systemSettings.setTimeOut(new TimeOut(systemTimeOut, TimeUnit.SECONDS));
+                applied.put("time_out." + systemName, String.valueOf(systemTimeOut));
             }
 
             String defaultQueue = system.optString("default_queue");
             if (StringUtils.isNotBlank(defaultQueue)) {
-                assert executors.containsKey(defaultQueue) : "The configured queue '" + defaultQueue + "' does not exist.";
                 defaultExecutors.put(systemName, defaultQueue);
             }
 
+            JSONObject connectionPool = system.optJSONObject("connection_pool");
+            if (connectionPool != null && httpClientRepository != null && changed(applied, "connection_pool." + systemName, connectionPool)) {
+                httpClientRepository.configure(systemName, parseConnectionPool(connectionPool));
+            }
+
+            if (system.optBoolean("forward_deadline", false)) {
+                systemSettings.setForwardingDeadline(true);
+                applied.put("forward_deadline." + systemName, "true");
+            }
+
+            if (system.optBoolean("coalesce", false)) {
+                systemSettings.setCoalescing(true);
+                applied.put("coalesce." + systemName, "true");
+            }
+
+            JSONObject systemCircuitBreaker = system.optJSONObject("circuit_breaker");
+            if (systemCircuitBreaker != null && changed(applied, "circuit_breaker." + systemName, systemCircuitBreaker)) {
+                systemSettings.setCircuitBreaker(parseCircuitBreaker(systemName, systemCircuitBreaker));
+            }
+
+            JSONObject systemRateLimit = system.optJSONObject("rate_limit");
+            if (systemRateLimit != null && changed(applied, "rate_limit." + systemName, systemRateLimit)) {
+                systemSettings.setRateLimiter(parseRateLimiter(systemName, systemRateLimit));
+            }
+
+            JSONObject systemRetry = system.optJSONObject("retry");
+            if (systemRetry != null && changed(applied, "retry." + systemName, systemRetry)) {
+                systemSettings.setRetryPolicy(parseRetryPolicy(systemName, systemRetry));
+            }
+
+            JSONObject retryBudget = system.optJSONObject("retry_budget");
+            if (retryBudget != null && changed(applied, "retry_budget." + systemName, retryBudget)) {
+                int max = retryBudget.optInt("max", 10);
+                TokenBudget budget = new TokenBudget(retryBudget.optDouble("ratio", 0.1D), max, max);
+                logManager.info(CoreLoggers.SERVER, "Limiting retries to system '" + systemName + "' with " + budget + ".");
+                systemSettings.setRetryBudget(budget);
+            }
+
             JSONArray calls = system.optJSONArray("calls");
             if (calls != null) {
                 for (int j = 0; j < calls.length(); j++) {
                     JSONObject call = calls.getJSONObject(j);
                     String method = call.getString("method");
-                    Integer timeOut = call.optInt("time_out", -1);
-                    String queue = call.optString("queue");
-                    if (StringUtils.isNotBlank(queue)) {
-                        assert executors.containsKey(queue) : "The configured queue '" + queue + "' does not exist.";
-                    }
+                    int timeOut = call.optInt("time_out", -1);
+                    String queue = StringUtils.isNotBlank(call.optString("queue")) ? call.optString("queue") : defaultQueue;
 
                     String lookup = createLookup(systemName, method);
-                    RequestConfiguration configuration = requestConfigurations.get(lookup);
-                    if (StringUtils.isNotBlank(defaultQueue)) {
-                        configuration.setExecutorName(defaultQueue);
-                    }
+                    RequestConfiguration configuration = settings(settings, lookup);
                     if (StringUtils.isNotBlank(queue)) {
                         configuration.setExecutorName(queue);
+                        applied.put("queue_of_call." + lookup, queue);
                     }
 
                     if (timeOut > 0) {
                         configuration.setTimeOut(new TimeOut(timeOut, TimeUnit.SECONDS));
+                        applied.put("time_out." + lookup, String.valueOf(timeOut));
+                    }
+
+                    if (call.has("priority")) {
+                        configuration.setPriority(call.getInt("priority"));
+                        applied.put("priority." + lookup, String.valueOf(configuration.getPriority()));
+                    }
+
+                    if (call.has("coalesce")) {
+                        configuration.setCoalescing(call.getBoolean("coalesce"));
+                        applied.put("coalesce." + lookup, String.valueOf(configuration.isCoalescing()));
+                    }
+
+                    if (call.has("conversion_stage")) {
+                        configuration.setConversionStage(call.getBoolean("conversion_stage"));
+                        applied.put("conversion_stage." + lookup, String.valueOf(configuration.isConversionStage()));
+                    }
+
+                    JSONObject hedge = call.optJSONObject("hedge");
+                    if (hedge != null && changed(applied, "hedge." + lookup, hedge)) {
+                        HedgingPolicy hedgingPolicy = new HedgingPolicy(hedge.optLong("delay", -1L), hedge.optInt("percentile", -1), hedge.optInt("window", 100));
+                        logManager.info(CoreLoggers.SERVER, "Hedging call '" + lookup + "' after " + hedgingPolicy + ".");
+                        configuration.setHedgingPolicy(hedgingPolicy);
+                    }
+
+                    JSONObject circuitBreaker = call.optJSONObject("circuit_breaker");
+                    if (circuitBreaker != null && changed(applied, "circuit_breaker." + lookup, circuitBreaker)) {
+                        configuration.setCircuitBreaker(parseCircuitBreaker(lookup, circuitBreaker));
+                    }
+
+                    JSONObject rateLimit = call.optJSONObject("rate_limit");
+                    if (rateLimit != null && changed(applied, "rate_limit." + lookup, rateLimit)) {
+                        configuration.setRateLimiter(parseRateLimiter(lookup, rateLimit));
+                    }
+
+                    JSONObject retry = call.optJSONObject("retry");
+                    if (retry != null && changed(applied, "retry." + lookup, retry)) {
+                        configuration.setRetryPolicy(parseRetryPolicy(lookup, retry));
+                    }
+
+                    JSONObject batch = call.optJSONObject("batch");
+                    if (batch != null && changed(applied, "batch." + lookup, batch)) {
+                        MicroBatcher microBatcher = new MicroBatcher(batch.getInt("max_size"), batch.getLong("max_wait"));
+                        logManager.info(CoreLoggers.SERVER, "Batching call '" + lookup + "' with " + microBatcher + ".");
+                        configuration.setMicroBatcher(microBatcher);
                     }
                 }
             }
         }
 
-        executors.values().forEach(executorServiceRepository::add);
+        // A setting that is no longer configured gets its default value again.
+        for (String key : appliedSettings.keySet()) {
+            if (!applied.containsKey(key)) {
+                reset(key, executors, settings);
+            }
+        }
 
-        executorServiceRepository.setDefaultExecutors(defaultExecutors);
+        // Retire the removed queues once no call is routed to them anymore.
+        Set<String> removed = new HashSet<>(configuredQueues);
+        removed.removeAll(executors.keySet());
+        for (HawaiiExecutor replaced : executorServiceRepository.reconfigure(executors.values(), removed, defaultExecutors, settings)) {
+            retire(replaced);
+        }
+        configuredQueues.clear();
+        configuredQueues.addAll(executors.keySet());
+        appliedSettings.clear();
+        appliedSettings.putAll(applied);
+    }
 
-        executorServiceRepository.configure();
+    /**
+     * @return the new settings of a call or backend system, these start as a copy of its current settings.
+     */
+    private RequestConfiguration settings(Map<String, RequestConfiguration> settings, String key) {
+        return settings.computeIfAbsent(key, k -> {
+            RequestConfiguration current = requestConfigurations.find(k);
+            return current == null ? new RequestConfiguration() : current.snapshot();
+        });
+    }
+
+    /**
+     * Reset a setting that was applied before, but is no longer configured, to its default.
+     *
+     * @param key the setting and the name of the queue, system or call it applied to (see {@link #changed(Map, String, Object)})
+     */
+    private void reset(String key, Map<String, HawaiiExecutor> executors, Map<String, RequestConfiguration> settings) {
+        int separator = key.indexOf('.');
+        String setting = key.substring(0, separator);
+        String name = key.substring(separator + 1);
+        logManager.info(CoreLoggers.SERVER, "Removing setting '" + setting + "' of '" + name + "'.");
+        HawaiiExecutor executor = executors.get(name);
+        switch (setting) {
+            case "adaptive_limit":
+                if (executor instanceof HawaiiExecutorImpl) {
+                    ((HawaiiExecutorImpl) executor).setConcurrencyLimiter(null);
+                }
+                break;
+            case "codel":
+                if (executor instanceof HawaiiExecutorImpl) {
+                    ((HawaiiExecutorImpl) executor).setCoDel(null);
+                }
+                break;
+            case "hedge_budget":
+                executorServiceRepository.removeHedgeBudget(name);
+                break;
+            case "connection_pool":
+                httpClientRepository.configure(name, new HttpClientConfiguration());
+                break;
+            case "queue_of_call":
+                settings(settings, name).setExecutorName(null);
+                break;
+            case "time_out":
+                settings(settings, name).setTimeOut(null);
+                break;
+            case "priority":
+                settings(settings, name).setPriority(0);
+                break;
+            case "coalesce":
+                settings(settings, name).setCoalescing(false);
+                break;
+            case "forward_deadline":
+                settings(settings, name).setForwardingDeadline(false);
+                break;
+            case "conversion_stage":
+                settings(settings, name).setConversionStage(false);
+                break;
+            case "hedge":
+                settings(settings, name).setHedgingPolicy(null);
+                break;
+            case "circuit_breaker":
+                settings(settings, name).setCircuitBreaker(null);
+                break;
+            case "rate_limit":
+                settings(settings, name).setRateLimiter(null);
+                break;
+            case "retry":
+                settings(settings, name).setRetryPolicy(null);
+                break;
+            case "retry_budget":
+                settings(settings, name).setRetryBudget(null);
+                break;
+            case "batch":
+                settings(settings, name).setMicroBatcher(null);
+                break;
+            default:
+                // A removed queue is retired.
+                break;
+        }
+    }
+
+    /**
+     * Shut down a queue that is no longer used (after a grace period), its pending requests are still executed.
+     */
+    private void retire(HawaiiExecutor executor) {
+        if (executor != null) {
+            logManager.info(CoreLoggers.SERVER, "Retiring queue '" + executor.getName() + "', its pending requests are still executed.");
+            executorServiceRepository.retire(executor);
+        }
+    }
+
+    /**
+     * Record the applied setting, keyed by the name of the setting followed by the name of the queue, system or call it applies to.
+     *
+     * @return true if the setting differs from the one applied before (or there was none).
+     */
+    private boolean changed(Map<String, String> applied, String key, Object setting) {
+        String value = setting.toString();
+        applied.put(key, value);
+        return !value.equals(appliedSettings.get(key));
+    }
+
+    private RateLimiter parseRateLimiter(String name, JSONObject json) throws JSONException {
+        double rate = json.getDouble("rate");
+        RateLimiter rateLimiter = new RateLimiter(rate, json.optInt("burst", (int) Math.max(1.0D, Math.ceil(rate))), json.optLong("max_wait", 0L));
+        logManager.info(CoreLoggers.SERVER, "Limiting '" + name + "' with " + rateLimiter + ".");
+        return rateLimiter;
+    }
+
+    private RetryPolicy parseRetryPolicy(String name, JSONObject json) throws JSONException {
+        Set<ResponseStatus> statuses = EnumSet.noneOf(ResponseStatus.class);
+        JSONArray statusNames = json.optJSONArray("statuses");
+        if (statusNames == null) {
+            statuses.add(ResponseStatus.BACKEND_FAILURE);
+            statuses.add(ResponseStatus.TIME_OUT);
+        } else {
+            for (int i = 0; i < statusNames.length(); i++) {
+                statuses.add(ResponseStatus.valueOf(statusNames.getString(i)));
+            }
+        }
+        Set<Integer> statusCodes = new HashSet<>();
+        JSONArray codes = json.optJSONArray("status_codes");
+        if (codes != null) {
+            for (int i = 0; i < codes.length(); i++) {
+                statusCodes.add(codes.getInt(i));
+            }
+        }
+        RetryPolicy retryPolicy = new RetryPolicy(json.optInt("max_attempts", 3), statuses, statusCodes, json.optLong("backoff", 100L),
+                json.optLong("max_backoff", 2000L), json.optDouble("multiplier", 2.0D));
+        logManager.info(CoreLoggers.SERVER, "Retrying '" + name + "' with " + retryPolicy + ".");
+        return retryPolicy;
+    }
+
+    private SchedulingLogPolicy parseSchedulingLogPolicy(JSONObject json) throws JSONException {
+        if (json == null) {
+            return SchedulingLogPolicy.all();
+        }
+        String mode = json.getString("mode");
+        switch (mode) {
+            case "all":
+                return SchedulingLogPolicy.all();
+            case "off":
+                return SchedulingLogPolicy.off();
+            case "sampled":
+                int rate = json.optInt("rate", 100);
+                if (rate < 1) {
+                    throw new JSONException("The scheduling log rate must be at least 1.");
+                }
+                return SchedulingLogPolicy.sampled(rate);
+            case "threshold":
+                return SchedulingLogPolicy.threshold(json.optInt("pending", 0), json.optInt("active", 0));
+            case "summary":
+                return SchedulingLogPolicy.summary(new TimeOut(json.optInt("interval", 60), TimeUnit.SECONDS));
+            default:
+                throw new JSONException("Unknown scheduling log mode '" + mode + "'.");
+        }
+    }
+
+    private AdaptiveLimit parseAdaptiveLimit(JSONObject json, int capacity) {
+        int maxLimit = json.optInt("max_limit", capacity);
+        int minLimit = json.optInt("min_limit", 1);
+        int initialLimit = json.optInt("initial_limit", maxLimit);
+        double backoffRatio = json.optDouble("backoff_ratio", 0.9D);
+
+        if (LIMIT_ALGORITHM_GRADIENT.equals(json.optString("algorithm"))) {
+            return new GradientLimit(initialLimit, minLimit, maxLimit, backoffRatio, json.optInt("window", 100));
+        }
+        return new AimdLimit(initialLimit, minLimit, maxLimit, backoffRatio, json.optDouble("slow_call_threshold", 0.0D));
+    }
+
+    private CircuitBreaker parseCircuitBreaker(String name, JSONObject json) {
+        int failureRateThreshold = json.optInt("failure_rate_threshold", 50);
+        int minimumCalls = json.optInt("minimum_calls", 20);
+        int windowSize = json.optInt("window_size", 100);
+        int openDuration = json.optInt("open_duration", 30);
+        int halfOpenCalls = json.optInt("half_open_calls", 5);
+
+        logManager.info(CoreLoggers.SERVER, "Creating circuit breaker '" + name + "' with '" + failureRateThreshold + "%'/'" + minimumCalls + "'/'" + windowSize
+                + "'/'" + openDuration + "'/'" + halfOpenCalls + "'.");
+        return new CircuitBreaker(name, failureRateThreshold, minimumCalls, windowSize, new TimeOut(openDuration, TimeUnit.SECONDS), halfOpenCalls, logManager);
+    }
+
+    private HttpClientConfiguration parseConnectionPool(JSONObject json) {
+        HttpClientConfiguration configuration = new HttpClientConfiguration();
+        configuration.setMaxConnectionsPerRoute(json.optInt("max_per_route", configuration.getMaxConnectionsPerRoute()));
+        configuration.setMaxConnections(json.optInt("max_total", configuration.getMaxConnections()));
+
+        int connectTimeOut = json.optInt("connect_timeout", -1);
+        if (connectTimeOut > 0) {
+            configuration.setConnectTimeOut(new TimeOut(connectTimeOut, TimeUnit.SECONDS));
+        }
+        int socketTimeOut = json.optInt("socket_timeout", -1);
+        if (socketTimeOut > 0) {
+            configuration.setSocketTimeOut(new TimeOut(socketTimeOut, TimeUnit.SECONDS));
+        }
+        int idleTimeOut = json.optInt("idle_timeout", -1);
+        if (idleTimeOut > 0) {
+            configuration.setIdleTimeOut(new TimeOut(idleTimeOut, TimeUnit.SECONDS));
+        }
+        return configuration;
     }
 
     private String createLookup(String system, String method) {
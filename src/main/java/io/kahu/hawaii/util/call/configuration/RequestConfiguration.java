@@ -17,16 +17,94 @@ package io.kahu.hawaii.util.call.configuration;
 
 import io.kahu.hawaii.util.call.RequestContext;
 import io.kahu.hawaii.util.call.TimeOut;
+import io.kahu.hawaii.util.call.dispatch.BatchMapper;
+import io.kahu.hawaii.util.call.dispatch.MicroBatcher;
+import io.kahu.hawaii.util.call.dispatch.circuit.CircuitBreaker;
+import io.kahu.hawaii.util.call.dispatch.hedge.HedgingPolicy;
+import io.kahu.hawaii.util.call.dispatch.limit.RateLimiter;
+import io.kahu.hawaii.util.call.dispatch.limit.TokenBudget;
+import io.kahu.hawaii.util.call.dispatch.retry.RetryPolicy;
 import org.apache.http.annotation.NotThreadSafe;
 
 import java.util.concurrent.TimeUnit;
 
 @NotThreadSafe
 public class RequestConfiguration {
-    private String executorName;
+    private volatile String executorName;
     private TimeOut defaultTimeOut;
-    private TimeOut timeOut = null;
+    private volatile TimeOut timeOut = null;
     private RequestContext<?> context;
+    private volatile CircuitBreaker circuitBreaker;
+    private volatile boolean coalescing = false;
+    private volatile HedgingPolicy hedgingPolicy;
+    private volatile int priority = 0;
+    private volatile RetryPolicy retryPolicy;
+    private volatile TokenBudget retryBudget;
+    private volatile boolean forwardingDeadline = false;
+    private volatile RateLimiter rateLimiter;
+    private volatile boolean conversionStage = false;
+    private volatile MicroBatcher microBatcher;
+    private volatile BatchMapper<?, ?> batchMapper;
+    private final Runnable changeListener;
+
+    public RequestConfiguration() {
+        this(null);
+    }
+
+    /**
+     * @param changeListener notified when a setting that is used to route the call changes (may be null)
+     */
+    RequestConfiguration(Runnable changeListener) {
+        this.changeListener = changeListener;
+    }
+
+    /**
+     * @return a copy of the settings of this configuration, which does not notify anyone of changes.
+     */
+    public RequestConfiguration snapshot() {
+        RequestConfiguration snapshot = new RequestConfiguration();
+        snapshot.executorName = executorName;
+        snapshot.defaultTimeOut = defaultTimeOut;
+        snapshot.timeOut = timeOut;
+        snapshot.context = context;
+        snapshot.circuitBreaker = circuitBreaker;
+        snapshot.coalescing = coalescing;
+        snapshot.hedgingPolicy = hedgingPolicy;
+        snapshot.priority = priority;
+        snapshot.retryPolicy = retryPolicy;
+        snapshot.retryBudget = retryBudget;
+        snapshot.forwardingDeadline = forwardingDeadline;
+        snapshot.rateLimiter = rateLimiter;
+        snapshot.conversionStage = conversionStage;
+        snapshot.microBatcher = microBatcher;
+        snapshot.batchMapper = batchMapper;
+        return snapshot;
+    }
+
+    /**
+     * Take over the configured settings (all but the context, default time out and batch mapper) of the given configuration, without
+     * notifying anyone of the changes.
+     */
+    void apply(RequestConfiguration settings) {
+        executorName = settings.executorName;
+        timeOut = settings.timeOut;
+        circuitBreaker = settings.circuitBreaker;
+        coalescing = settings.coalescing;
+        hedgingPolicy = settings.hedgingPolicy;
+        priority = settings.priority;
+        retryPolicy = settings.retryPolicy;
+        retryBudget = settings.retryBudget;
+        forwardingDeadline = settings.forwardingDeadline;
+        rateLimiter = settings.rateLimiter;
+        conversionStage = settings.conversionStage;
+        microBatcher = settings.microBatcher;
+    }
+
+    private void changed() {
+        if (changeListener != null) {
+            changeListener.run();
+        }
+    }
 
     public String getExecutorName() {
         return executorName;
@@ -34,6 +112,7 @@ public class RequestConfiguration {
 
     public void setExecutorName(String executorName) {
         this.executorName = executorName;
+        changed();
     }
 
     public TimeOut getTimeOut() {
@@ -42,6 +121,7 @@ public class RequestConfiguration {
 
     public void setTimeOut(TimeOut timeOut) {
         this.timeOut = timeOut;
+        changed();
     }
 
     public TimeOut getDefaultTimeOut() {
@@ -69,4 +149,119 @@ public class RequestConfiguration {
     public void setContext(RequestContext<?> context) {
         this.context = context;
     }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+        changed();
+    }
+
+    public boolean isCoalescing() {
+        return coalescing;
+    }
+
+    public void setCoalescing(boolean coalescing) {
+        this.coalescing = coalescing;
+        changed();
+    }
+
+    public HedgingPolicy getHedgingPolicy() {
+        return hedgingPolicy;
+    }
+
+    public void setHedgingPolicy(HedgingPolicy hedgingPolicy) {
+        this.hedgingPolicy = hedgingPolicy;
+        changed();
+    }
+
+    /**
+     * @return the priority of this call on a prioritized queue, higher is more urgent (default 0).
+     */
+    public int getPriority() {
+        return priority;
+    }
+
+    public void setPriority(int priority) {
+        this.priority = priority;
+    }
+
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+        changed();
+    }
+
+    /**
+     * @return the retry budget of the backend system, only set on the configuration of a backend system.
+     */
+    public TokenBudget getRetryBudget() {
+        return retryBudget;
+    }
+
+    public void setRetryBudget(TokenBudget retryBudget) {
+        this.retryBudget = retryBudget;
+        changed();
+    }
+
+    /**
+     * @return true if the time left until the deadline of a request is sent to the backend (as header 'X-Hawaii-Deadline', in
+     *         milliseconds), only set on the configuration of a backend system.
+     */
+    public boolean isForwardingDeadline() {
+        return forwardingDeadline;
+    }
+
+    public void setForwardingDeadline(boolean forwardingDeadline) {
+        this.forwardingDeadline = forwardingDeadline;
+        changed();
+    }
+
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    public void setRateLimiter(RateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+        changed();
+    }
+
+    /**
+     * @return true if the response is converted on the conversion stage instead of on the thread of the queue that executes the call.
+     */
+    public boolean isConversionStage() {
+        return conversionStage;
+    }
+
+    public void setConversionStage(boolean conversionStage) {
+        this.conversionStage = conversionStage;
+        changed();
+    }
+
+    public MicroBatcher getMicroBatcher() {
+        return microBatcher;
+    }
+
+    public void setMicroBatcher(MicroBatcher microBatcher) {
+        this.microBatcher = microBatcher;
+        changed();
+    }
+
+    public BatchMapper<?, ?> getBatchMapper() {
+        return batchMapper;
+    }
+
+    /**
+     * Set the mapper of the batches of this call to the bulk endpoint of the backend, the call is only batched if a micro batcher is
+     * configured as well.
+     */
+    public void setBatchMapper(BatchMapper<?, ?> batchMapper) {
+        this.batchMapper = batchMapper;
+        changed();
+    }
 }
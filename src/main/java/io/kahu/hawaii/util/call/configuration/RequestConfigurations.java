@@ -16,30 +16,122 @@
 package io.kahu.hawaii.util.call.configuration;
 
 import io.kahu.hawaii.util.call.TimeOut;
+import io.kahu.hawaii.util.call.dispatch.MicroBatcher;
+import io.kahu.hawaii.util.call.dispatch.circuit.CircuitBreaker;
+import io.kahu.hawaii.util.call.dispatch.limit.TokenBudget;
 import io.kahu.hawaii.util.call.http.HttpRequestContext;
 import org.jolokia.jmx.JsonMBean;
 
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
 @JsonMBean
 public class RequestConfigurations {
-    private final Map<String, RequestConfiguration> configurations = new HashMap<>();
+    private final Map<String, RequestConfiguration> configurations = new ConcurrentHashMap<>();
+    private final Map<String, TokenBudget> defaultRetryBudgets = new ConcurrentHashMap<>();
+    private volatile Runnable changeListener;
 
     public RequestConfiguration get(String key) {
-        RequestConfiguration configuration = configurations.get(key);
-        if (configuration == null) {
-            configuration = new RequestConfiguration();
-            configurations.put(key, configuration);
+        return configurations.computeIfAbsent(key, k -> new RequestConfiguration(this::changed));
+    }
+
+    /**
+     * @return all configurations by key (read only)
+     */
+    public Map<String, RequestConfiguration> getConfigurations() {
+        return Collections.unmodifiableMap(configurations);
+    }
+
+    /**
+     * The listener is notified when a setting of a call or backend system changes, for instance over JMX.
+     */
+    public void setChangeListener(Runnable changeListener) {
+        this.changeListener = changeListener;
+    }
+
+    private void changed() {
+        Runnable listener = changeListener;
+        if (listener != null) {
+            listener.run();
+        }
+    }
+
+    /**
+     * Apply the settings of many calls and backend systems at once (for instance a reloaded configuration file), the change listener is
+     * notified once, afterwards.
+     */
+    public void apply(Map<String, RequestConfiguration> settings) {
+        for (Map.Entry<String, RequestConfiguration> entry : settings.entrySet()) {
+            get(entry.getKey()).apply(entry.getValue());
+        }
+        changed();
+    }
+
+    /**
+     * @return the configuration for the given key or null if there is none (unlike {@link #get(String)} no configuration is created).
+     */
+    public RequestConfiguration find(String key) {
+        return configurations.get(key);
+    }
+
+    /**
+     * @return the retry budget of a backend system that has no retry budget configured, at most 10% of its requests are retried.
+     */
+    public TokenBudget getDefaultRetryBudget(String system) {
+        return defaultRetryBudgets.computeIfAbsent(system, key -> new TokenBudget(0.1D, 10, 10));
+    }
+
+    private CircuitBreaker getCircuitBreaker(String key) {
+        RequestConfiguration configuration = find(key);
+        return configuration == null ? null : configuration.getCircuitBreaker();
+    }
+
+    public Map<String, String> getCircuitBreakerStates() {
+        Map<String, String> states = new TreeMap<>();
+        for (Map.Entry<String, RequestConfiguration> entry : configurations.entrySet()) {
+            CircuitBreaker circuitBreaker = entry.getValue().getCircuitBreaker();
+            if (circuitBreaker != null) {
+                states.put(entry.getKey(), circuitBreaker.toString());
+            }
+        }
+        return states;
+    }
+
+    /**
+     * @return the batch size and wait time (in milliseconds) histograms of the batched calls.
+     */
+    public Map<String, Map<String, String>> getBatchStatistics() {
+        Map<String, Map<String, String>> statistics = new TreeMap<>();
+        for (Map.Entry<String, RequestConfiguration> entry : configurations.entrySet()) {
+            MicroBatcher microBatcher = entry.getValue().getMicroBatcher();
+            if (microBatcher != null) {
+                Map<String, String> statistic = new TreeMap<>();
+                statistic.put("batch_size", microBatcher.getBatchSizes().toString());
+                statistic.put("wait_time", microBatcher.getWaitTimes().toString());
+                statistics.put(entry.getKey(), statistic);
+            }
+        }
+        return statistics;
+    }
+
+    public void resetCircuitBreaker(String key) {
+        CircuitBreaker circuitBreaker = getCircuitBreaker(key);
+        if (circuitBreaker != null) {
+            circuitBreaker.reset();
         }
-        return configuration;
     }
 
     public void setTimeOut(String key, int timeOut) {
         get(key).setTimeOut(new TimeOut(timeOut, TimeUnit.SECONDS));
     }
 
+    public void setCoalescing(String key, boolean coalescing) {
+        get(key).setCoalescing(coalescing);
+    }
+
     public void setExecutorName(String key, String queue) {
         get(key).setExecutorName(queue);
     }
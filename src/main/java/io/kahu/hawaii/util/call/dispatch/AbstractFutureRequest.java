@@ -0,0 +1,138 @@
+/**
+ * Copyright 2014-2018 Q24
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kahu.hawaii.util.call.dispatch;
+
+import io.kahu.hawaii.util.call.AbortableRequest;
+import io.kahu.hawaii.util.call.Response;
+import io.kahu.hawaii.util.call.configuration.RequestConfiguration;
+import io.kahu.hawaii.util.call.statistics.RequestStatistic;
+import org.apache.http.annotation.NotThreadSafe;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Base class of the tasks that wrap an {@link AbortableRequest} to use inside an executor service.
+ * @param <T>
+ */
+@NotThreadSafe
+public abstract class AbstractFutureRequest<T> extends FutureTask<Response<T>> {
+    private final AbortableRequest<T> abortableRequest;
+    private final long submitted = System.nanoTime();
+    private volatile Runnable doneListener;
+    private volatile boolean shed = false;
+
+    protected AbstractFutureRequest(Callable<Response<T>> callable, AbortableRequest<T> abortableRequest) {
+        super(callable);
+        this.abortableRequest = abortableRequest;
+    }
+
+    /**
+     * @return the time in nanoseconds between submitting the task and 'now'
+     */
+    public long getSojournTime(long now) {
+        return now - submitted;
+    }
+
+    /**
+     * Reject the request instead of executing it once the task runs, see {@link io.kahu.hawaii.util.call.dispatch.limit.CoDel}.
+     */
+    void shed() {
+        shed = true;
+    }
+
+    boolean isShed() {
+        return shed;
+    }
+
+    /**
+     * @return this task as handed out by the executors, whose callers only wait for it or cancel it (the response is read from the
+     *         request).
+     */
+    @SuppressWarnings("unchecked")
+    FutureTask<T> asTask() {
+        return (FutureTask<T>) (FutureTask<?>) this;
+    }
+
+    @Override
+    public void run() {
+        if (shed) {
+            if (!isDone()) {
+                reject();
+            }
+            return;
+        }
+        super.run();
+    }
+
+    /**
+     * A response that is converted on the conversion stage completes this task once it is converted, the thread of the queue is released
+     * right away.
+     */
+    @Override
+    protected void set(Response<T> response) {
+        CompletableFuture<Void> conversion = abortableRequest.getConversion();
+        if (conversion == null || conversion.isDone()) {
+            super.set(response);
+        } else {
+            conversion.whenComplete((result, t) -> super.set(response));
+        }
+    }
+
+    /**
+     * Reject the request and complete this task with its (rejected) response.
+     */
+    protected void reject() {
+        abortableRequest.reject();
+        set(abortableRequest.getResponse());
+    }
+
+    public RequestStatistic getStatistic() {
+        return abortableRequest.getStatistic();
+    }
+
+    /**
+     * @return the priority of the call of this task (higher is more urgent), 0 if the call has no configuration.
+     */
+    public int getPriority() {
+        RequestConfiguration configuration = abortableRequest.getContext().getConfiguration();
+        return configuration == null ? 0 : configuration.getPriority();
+    }
+
+    /**
+     * Run the listener once the task is done (immediately if it is done already). The listener may run more than once.
+     */
+    public void whenDone(Runnable listener) {
+        this.doneListener = listener;
+        if (isDone()) {
+            listener.run();
+        }
+    }
+
+    @Override
+    protected void done() {
+        Runnable listener = doneListener;
+        if (listener != null) {
+            listener.run();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return abortableRequest.getCallName() + " @ " + abortableRequest.getId();
+    }
+}
@@ -0,0 +1,377 @@
+/**
+ * Copyright 2014-2018 Q24
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kahu.hawaii.util.call.dispatch;
+
+import io.kahu.hawaii.util.call.AbortableRequest;
+import io.kahu.hawaii.util.call.Response;
+import io.kahu.hawaii.util.call.ResponseStatus;
+import io.kahu.hawaii.util.call.TimeOut;
+import io.kahu.hawaii.util.call.dispatch.circuit.CircuitBreaker;
+import io.kahu.hawaii.util.call.dispatch.limit.TokenBudget;
+import io.kahu.hawaii.util.call.dispatch.retry.RetryPolicy;
+import io.kahu.hawaii.util.exception.ServerError;
+import io.kahu.hawaii.util.exception.ServerException;
+import org.apache.http.annotation.ThreadSafe;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Non blocking (asynchronous) execution of a request. The request is executed directly by its executor, no thread waits for it. The request
+ * is finished by whichever comes first: the worker finishing the request or the time out of the request.
+ *
+ * The timer only cancels and aborts a request that times out, the request is finished (logged, its callback and listeners invoked) by the
+ * completer.
+ *
+ * With a retry policy the request itself is not executed, copies of it are: one per attempt, as {@link RetryingExecution} does. The
+ * backoff between attempts and the wait for a rate limit are delays of the timer, no thread waits for them.
+ */
+@ThreadSafe
+class AsyncExecution<T> {
+    private final AbortableRequest<T> request;
+    private final CircuitBreaker circuitBreaker;
+    private final Runnable onFinish;
+    private final Executor completer;
+    private final AtomicBoolean finished = new AtomicBoolean(false);
+
+    private RetryPolicy retryPolicy;
+    private TokenBudget retryBudget;
+
+    private volatile HawaiiExecutor executor;
+    private volatile TimerWheel timer;
+    private volatile FutureTask<T> task;
+    private volatile TimerWheel.Handle timeOutTask;
+    private volatile TimerWheel.Handle delayTask;
+    private volatile AbortableRequest<T> attempt;
+    private volatile int number = 1;
+    private volatile long deadline;
+
+    /**
+     * @param circuitBreaker the circuit breaker to report the outcome to (optional)
+     * @param onFinish invoked just before the request is finished (optional)
+     * @param completer finishes the requests that time out
+     */
+    AsyncExecution(AbortableRequest<T> request, CircuitBreaker circuitBreaker, Runnable onFinish, Executor completer) {
+        this.request = request;
+        this.circuitBreaker = circuitBreaker;
+        this.onFinish = onFinish;
+        this.completer = completer;
+    }
+
+    /**
+     * Retry the request with the policy, within the budget. Must be invoked before {@link #start(HawaiiExecutor, TimerWheel, long)}.
+     * Requests that cannot be copied are executed without retries.
+     */
+    void retry(RetryPolicy retryPolicy, TokenBudget retryBudget) {
+        this.retryPolicy = retryPolicy;
+        this.retryBudget = retryBudget;
+    }
+
+    /**
+     * Start the request on the executor.
+     *
+     * @throws java.util.concurrent.RejectedExecutionException if the executor rejects the request
+     * @throws ServerException if the executor does not support asynchronous execution
+     */
+    void start(HawaiiExecutor executor, TimerWheel timer) throws ServerException {
+        start(executor, timer, 0L);
+    }
+
+    /**
+     * Start the request on the executor after a delay (e.g. the wait for a rate limit), which counts in the time out of the request.
+     *
+     * @throws java.util.concurrent.RejectedExecutionException if the executor rejects the request (right away)
+     * @throws ServerException if the executor does not support asynchronous execution
+     */
+    void start(HawaiiExecutor executor, TimerWheel timer, long delayNanos) throws ServerException {
+        if (!executor.isNotifyingWhenDone()) {
+            throw new ServerException(ServerError.ILLEGAL_ARGUMENT, "Executor '" + executor.getName() + "' does not support asynchronous execution.");
+        }
+        this.executor = executor;
+        this.timer = timer;
+        if (retryPolicy != null) {
+            attempt = request.copy();
+            if (attempt != null) {
+                retryBudget.onRequest();
+                request.getStatistic().startBackendRequest();
+            }
+        }
+        request.getResponse().setAbortHandler(this::aborted);
+        scheduleTimeOut(timer);
+        if (delayNanos > 0L) {
+            delayTask = timer.schedule(() -> hand(this::submitLater), delayNanos, TimeUnit.NANOSECONDS);
+        } else {
+            submit();
+        }
+    }
+
+    /**
+     * Wait for the response of an identical request in flight (see {@link RequestCoalescer}) instead of executing the request.
+     */
+    @SuppressWarnings("unchecked")
+    void follow(Response<?> leader, TimerWheel timer) {
+        request.getStatistic().setCoalesced(true);
+        request.getStatistic().startBackendRequest();
+        request.getResponse().setAbortHandler(this::aborted);
+        scheduleTimeOut(timer);
+        leader.toCompletionStage().thenAccept(leaderResponse -> {
+            if (claim()) {
+                request.getStatistic().endBackendRequest();
+                request.getResponse().copy((Response<T>) leaderResponse);
+                request.doCallback();
+                finish();
+            }
+        });
+    }
+
+    /**
+     * Wait for the batch the request joined (see {@link MicroBatcher}) instead of executing the request, see {@link #complete(Consumer)}.
+     */
+    void batch(TimerWheel timer) {
+        request.getStatistic().startBackendRequest();
+        request.getResponse().setAbortHandler(this::aborted);
+        scheduleTimeOut(timer);
+    }
+
+    /**
+     * Complete the response with the outcome of the batch of the request, unless the request is finished already (for instance timed out).
+     */
+    void complete(Consumer<Response<T>> outcome) {
+        if (claim()) {
+            request.getStatistic().endBackendRequest();
+            outcome.accept(request.getResponse());
+            request.doCallback();
+            finish();
+        }
+    }
+
+    AbortableRequest<T> getRequest() {
+        return request;
+    }
+
+    boolean isFinished() {
+        return finished.get();
+    }
+
+    void reject() {
+        if (claim()) {
+            request.reject();
+            finish();
+        }
+    }
+
+    void fail(Throwable t) {
+        if (claim()) {
+            request.getResponse().setStatus(ResponseStatus.INTERNAL_FAILURE, "Unexpected exception", t);
+            finish();
+        }
+    }
+
+    private void scheduleTimeOut(TimerWheel timer) {
+        TimeOut timeOut = request.getTimeOut();
+        deadline = System.nanoTime() + timeOut.getUnit().toNanos(timeOut.getDuration());
+        timeOutTask = timer.schedule(this::expire, timeOut.getDuration(), timeOut.getUnit());
+    }
+
+    /**
+     * Execute the request (or its current attempt) on the executor, unless it is finished already.
+     */
+    private void submit() {
+        if (finished.get()) {
+            return;
+        }
+        AbortableRequest<T> attempt = this.attempt;
+        AbortableRequest<T> target = attempt == null ? request : attempt;
+        if (attempt != null) {
+            attempt.getStatistic().setAttempt(number);
+        }
+        FutureTask<T> task = executor.execute(target, target.getResponse());
+        if (attempt != null && number == 1) {
+            request.setQueueStatistic(attempt.getStatistic().getQueueStatistic());
+        }
+        this.task = task;
+        if (finished.get()) {
+            // Aborted while it was submitted.
+            executor.cancel(task);
+            return;
+        }
+        // The listener may run more than once, an attempt is handled once.
+        AtomicBoolean handled = new AtomicBoolean(false);
+        ((AbstractFutureRequest<?>) task).whenDone(() -> {
+            if (handled.compareAndSet(false, true)) {
+                done();
+            }
+        });
+    }
+
+    /**
+     * A delayed start or the next attempt, on the completer.
+     */
+    private void submitLater() {
+        try {
+            submit();
+        } catch (RejectedExecutionException e) {
+            reject();
+        } catch (Throwable t) {
+            fail(t);
+        }
+    }
+
+    private void nextAttempt() {
+        if (finished.get()) {
+            return;
+        }
+        attempt = request.copy();
+        number++;
+        submitLater();
+    }
+
+    /**
+     * Schedule the next attempt after the backoff if the (done) attempt is retryable and the policy, the budget and the time out allow it.
+     */
+    private boolean retryLater() {
+        AbortableRequest<T> attempt = this.attempt;
+        if (attempt == null || finished.get() || number >= retryPolicy.getMaxAttempts()) {
+            return false;
+        }
+        try {
+            task.get();
+        } catch (ExecutionException | InterruptedException | CancellationException e) {
+            return false;
+        }
+        if (!retryPolicy.isRetryable(attempt.getResponse())) {
+            return false;
+        }
+        long backoff = TimeUnit.MILLISECONDS.toNanos(retryPolicy.getBackoff(number));
+        if (backoff >= deadline - System.nanoTime() || !retryBudget.tryAcquire()) {
+            return false;
+        }
+        try {
+            delayTask = timer.schedule(() -> hand(this::nextAttempt), backoff, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            // The dispatcher is stopped.
+            return false;
+        }
+        // The failed attempt is logged on its own.
+        attempt.finish();
+        return true;
+    }
+
+    private void done() {
+        if (retryLater() || !claim()) {
+            return;
+        }
+        AbortableRequest<T> attempt = this.attempt;
+        try {
+            task.get();
+            if (attempt != null) {
+                request.getResponse().copy(attempt.getResponse());
+                request.doCallback();
+            }
+        } catch (ExecutionException e) {
+            // Catches all exceptions from within the executor
+            request.getResponse().setStatus(ResponseStatus.INTERNAL_FAILURE, "Execution exception", e.getCause());
+        } catch (InterruptedException | CancellationException e) {
+            request.getResponse().setStatus(ResponseStatus.INTERNAL_FAILURE, "Interrupted", e);
+        }
+        finish();
+    }
+
+    /**
+     * The time out, on the thread of the timer.
+     */
+    private void expire() {
+        if (abort(ResponseStatus.TIME_OUT)) {
+            hand(this::finish);
+        }
+    }
+
+    /**
+     * Hand work from the thread of the timer to the completer.
+     */
+    private void hand(Runnable work) {
+        try {
+            completer.execute(work);
+        } catch (RejectedExecutionException e) {
+            // The dispatcher is stopped.
+            work.run();
+        }
+    }
+
+    /**
+     * An abort of the response, see {@link Response#abort()} and {@link Response#cancel()}.
+     */
+    private void aborted(ResponseStatus status) {
+        if (abort(status)) {
+            finish();
+        }
+    }
+
+    private boolean abort(ResponseStatus status) {
+        if (!claim()) {
+            return false;
+        }
+        FutureTask<T> task = this.task;
+        if (task != null) {
+            executor.cancel(task);
+        }
+        AbortableRequest<T> attempt = this.attempt;
+        if (attempt != null) {
+            attempt.cancel();
+        }
+        if (status == ResponseStatus.CANCELLED) {
+            request.abandon();
+        } else {
+            request.abort();
+        }
+        return true;
+    }
+
+    private boolean claim() {
+        if (!finished.compareAndSet(false, true)) {
+            return false;
+        }
+        TimerWheel.Handle timeOutTask = this.timeOutTask;
+        if (timeOutTask != null) {
+            timeOutTask.cancel();
+        }
+        TimerWheel.Handle delayTask = this.delayTask;
+        if (delayTask != null) {
+            delayTask.cancel();
+        }
+        if (attempt != null) {
+            request.getStatistic().endBackendRequest();
+            request.getStatistic().setAttempt(number);
+        }
+        return true;
+    }
+
+    private void finish() {
+        if (circuitBreaker != null) {
+            circuitBreaker.onResult(request.getResponse().getStatus());
+        }
+        if (onFinish != null) {
+            onFinish.run();
+        }
+        request.finish();
+    }
+}
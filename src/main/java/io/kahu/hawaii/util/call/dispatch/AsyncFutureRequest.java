@@ -19,8 +19,6 @@ import io.kahu.hawaii.util.call.AbortableRequest;
 import io.kahu.hawaii.util.call.Response;
 import org.apache.http.annotation.NotThreadSafe;
 
-import java.util.concurrent.FutureTask;
-
 /**
  * This class wraps an {@link AbortableRequest} to use inside an executor service.
  *
@@ -28,10 +26,21 @@ import java.util.concurrent.FutureTask;
  * @param <T>
  */
 @NotThreadSafe
-public class AsyncFutureRequest<T> extends FutureTask<Response<T>> {
+public class AsyncFutureRequest<T> extends AbstractFutureRequest<T> {
+    private final AbortableRequest<T> abortableRequest;
 
     public AsyncFutureRequest(AbortableRequest<T> abortableRequest, RequestDispatcher requestDispatcher) {
-        super(new AsyncCallableRequest<>(abortableRequest, requestDispatcher));
+        super(new AsyncCallableRequest<>(abortableRequest, requestDispatcher), abortableRequest);
+        this.abortableRequest = abortableRequest;
+    }
+
+    /**
+     * Nobody waits for this task, so the request is finished here.
+     */
+    @Override
+    protected void reject() {
+        super.reject();
+        abortableRequest.finish();
     }
 
 }
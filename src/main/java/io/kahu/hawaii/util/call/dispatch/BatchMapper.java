@@ -0,0 +1,42 @@
+/**
+ * Copyright 2014-2018 Q24
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kahu.hawaii.util.call.dispatch;
+
+import io.kahu.hawaii.util.call.AbortableRequest;
+
+import java.util.List;
+
+/**
+ * Maps a batch of individual requests of a call onto one request to a bulk endpoint of the backend (e.g. get many by ids) and splits the
+ * response of the bulk request back into the responses of the individual requests. See {@link MicroBatcher}.
+ *
+ * @param <T> the response type of the individual requests
+ * @param <B> the response type of the bulk request
+ */
+public interface BatchMapper<T, B> {
+    /**
+     * @return the bulk request for the batch, it is executed (asynchronously) as any other request. It must be a request of another call
+     * than the requests of the batch.
+     */
+    AbortableRequest<B> toBatchRequest(List<AbortableRequest<T>> requests);
+
+    /**
+     * Invoked only if the bulk request succeeded, on the thread that finished the bulk request, so it must not block.
+     *
+     * @return the response payload of each request of the batch, in the order of the requests.
+     */
+    List<T> split(B batchResponse, List<AbortableRequest<T>> requests);
+}
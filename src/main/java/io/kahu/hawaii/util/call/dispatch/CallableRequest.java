@@ -16,6 +16,7 @@
 package io.kahu.hawaii.util.call.dispatch;
 
 import io.kahu.hawaii.util.call.AbortableRequest;
+import io.kahu.hawaii.util.call.Deadline;
 import io.kahu.hawaii.util.call.Response;
 import io.kahu.hawaii.util.exception.ServerError;
 import io.kahu.hawaii.util.exception.ServerException;
@@ -36,7 +37,18 @@ public class CallableRequest<T> implements Callable<Response<T>> {
     public Response<T> call() throws Exception {
         LoggingContext.remove();
         try {
+            Deadline deadline = abortableRequest.getDeadline();
+            if (deadline != null && deadline.isExpired()) {
+                // The deadline passed while the request was queued, nobody is waiting for the response anymore.
+                abortableRequest.abort();
+                return response;
+            }
+
             abortableRequest.doExecute();
+            if (abortableRequest.getConversion() != null) {
+                // The conversion stage converts the response and does the callback.
+                return response;
+            }
             if (abortableRequest.getResponse().getStatus() == null) {
                 throw new ServerException(ServerError.METHOD_ERROR, "Response handler did not set the response status.");
             }
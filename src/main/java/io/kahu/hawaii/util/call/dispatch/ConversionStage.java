@@ -0,0 +1,102 @@
+/**
+ * Copyright 2014-2018 Q24
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kahu.hawaii.util.call.dispatch;
+
+import io.kahu.hawaii.util.logger.CoreLoggers;
+import io.kahu.hawaii.util.logger.LogManager;
+import org.apache.http.annotation.ThreadSafe;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Converts responses (see {@link io.kahu.hawaii.util.call.ResponseHandler}) on a pool sized for CPU bound work, so the threads of the
+ * queues are only used to wait for the backend systems.
+ *
+ * The stage also completes the requests that time out, so the thread of the timer does not run their logging, callbacks and listeners.
+ */
+@ThreadSafe
+public class ConversionStage implements Executor {
+    private final String name;
+    private final ForkJoinPool pool;
+
+    public ConversionStage(String name, int parallelism, LogManager logManager) {
+        this.name = name;
+        this.pool = new ForkJoinPool(parallelism, new ConversionThreadFactory(name),
+                (thread, t) -> logManager.warn(CoreLoggers.SERVER, "Conversion on '" + thread.getName() + "' failed.", t), true);
+    }
+
+    /**
+     * @return the conversion, completed once the conversion ran (the conversion handles its own errors).
+     */
+    public CompletableFuture<Void> convert(Runnable conversion) {
+        return CompletableFuture.runAsync(conversion, pool);
+    }
+
+    /**
+     * Run a short, non blocking task on the stage, such as completing a request that timed out.
+     *
+     * @throws java.util.concurrent.RejectedExecutionException if the stage has been stopped
+     */
+    @Override
+    public void execute(Runnable task) {
+        pool.execute(task);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    /**
+     * @return the number of conversions waiting for a thread (an estimate).
+     */
+    public long getQueuedConversionCount() {
+        return pool.getQueuedSubmissionCount() + pool.getQueuedTaskCount();
+    }
+
+    public void stop() {
+        pool.shutdown();
+        try {
+            pool.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class ConversionThreadFactory implements ForkJoinPool.ForkJoinWorkerThreadFactory {
+        private final String threadPrefix;
+        private final AtomicInteger nrThreads = new AtomicInteger(0);
+
+        private ConversionThreadFactory(String threadPrefix) {
+            this.threadPrefix = threadPrefix;
+        }
+
+        @Override
+        public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName(threadPrefix + "-" + nrThreads.incrementAndGet());
+            return thread;
+        }
+    }
+}
@@ -15,56 +15,167 @@
  */
 package io.kahu.hawaii.util.call.dispatch;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.http.annotation.ThreadSafe;
 
 import io.kahu.hawaii.util.call.AbortableRequest;
-import io.kahu.hawaii.util.call.RequestContext;
+import io.kahu.hawaii.util.call.TimeOut;
 import io.kahu.hawaii.util.call.configuration.RequestConfiguration;
 import io.kahu.hawaii.util.call.configuration.RequestConfigurations;
+import io.kahu.hawaii.util.call.dispatch.limit.TokenBudget;
 import io.kahu.hawaii.util.logger.LogManager;
 
 @ThreadSafe
 public class ExecutorRepository {
-    private final Map<String, String> defaultExecutors = new HashMap<>();
-    private final Map<String, HawaiiExecutor> executors = new HashMap<>();
-    private RequestConfigurations requestConfigurations;
+    private volatile Map<String, String> defaultExecutors = new HashMap<>();
+    private final Map<String, HawaiiExecutor> executors = new ConcurrentHashMap<>();
+    private final Map<String, TokenBudget> hedgeBudgets = new ConcurrentHashMap<>();
+    private volatile RequestConfigurations requestConfigurations;
+    private volatile RoutingTable routingTable = RoutingTable.build(Collections.emptyMap(), Collections.emptyMap(), null);
 
     public static final String DEFAULT_EXECUTOR_NAME = "default";
     public static final String DEFAULT_ASYNC_EXECUTOR_NAME = "async_executor_guard";
 
+    private static final long RETIRE_GRACE_PERIOD_MILLIS = 1000L;
+
+    private final Set<HawaiiExecutor> retiring = ConcurrentHashMap.newKeySet();
+    private ScheduledExecutorService retirer;
+
     private final LogManager logManager;
 
     public ExecutorRepository(final LogManager logManager) {
         this.logManager = logManager;
     }
 
+    public void setHedgeBudget(String executorName, TokenBudget hedgeBudget) {
+        hedgeBudgets.put(executorName, hedgeBudget);
+    }
+
+    /**
+     * Remove the configured hedge budget of the executor, it gets the default budget again.
+     */
+    public void removeHedgeBudget(String executorName) {
+        hedgeBudgets.remove(executorName);
+    }
+
+    /**
+     * @return the hedge budget of the executor, if none is configured at most 10% of the requests are hedged.
+     */
+    public TokenBudget getHedgeBudget(String executorName) {
+        return hedgeBudgets.computeIfAbsent(executorName, name -> new TokenBudget(0.1D, 10, 0));
+    }
+
+    public RequestConfigurations getRequestConfigurations() {
+        return requestConfigurations;
+    }
+
     public void setRequestConfigurations(RequestConfigurations requestConfigurations) {
         this.requestConfigurations = requestConfigurations;
+        requestConfigurations.setChangeListener(this::updateRoutingTable);
+        updateRoutingTable();
     }
 
-    public void add(HawaiiExecutor executor) {
-        this.executors.put(executor.getName(), executor);
+    /**
+     * Rebuild the routing table after the executors or the configurations changed. The new table replaces the current one at once.
+     */
+    public synchronized void updateRoutingTable() {
+        routingTable = RoutingTable.build(executors, defaultExecutors, requestConfigurations);
     }
 
-    public void addDefaultExecutor(String systemName, String executorName) {
+    public RoutingTable getRoutingTable() {
+        return routingTable;
+    }
+
+    /**
+     * Add the executor, an existing executor with the same name is replaced.
+     *
+     * @return the replaced executor, null if there was none.
+     */
+    public HawaiiExecutor add(HawaiiExecutor executor) {
+        HawaiiExecutor replaced = this.executors.put(executor.getName(), executor);
+        updateRoutingTable();
+        return replaced;
+    }
+
+    /**
+     * Remove the executor with the given name, the executor is not shut down.
+     */
+    public HawaiiExecutor remove(String name) {
+        HawaiiExecutor removed = this.executors.remove(name);
+        updateRoutingTable();
+        return removed;
+    }
+
+    public synchronized void addDefaultExecutor(String systemName, String executorName) {
         assert executors.containsKey(executorName) : "The queue with name '" + executorName + "' is not defined.";
-        defaultExecutors.put(systemName, executorName);
+        Map<String, String> copy = new HashMap<>(this.defaultExecutors);
+        copy.put(systemName, executorName);
+        this.defaultExecutors = copy;
+        updateRoutingTable();
     }
 
-    public void setDefaultExecutors(Map<String, String> defaultExecutors) {
-        this.defaultExecutors.clear();
+    /**
+     * Replace all default executors at once.
+     */
+    public synchronized void setDefaultExecutors(Map<String, String> defaultExecutors) {
         for (Entry<String, String> entry : defaultExecutors.entrySet()) {
-            addDefaultExecutor(entry.getKey(), entry.getValue());
+            assert executors.containsKey(entry.getValue()) : "The queue with name '" + entry.getValue() + "' is not defined.";
+        }
+        this.defaultExecutors = new HashMap<>(defaultExecutors);
+        updateRoutingTable();
+    }
+
+    /**
+     * Apply a new configuration at once: add (or replace) the executors, remove the executors with the given names, replace the default
+     * executors and apply the settings of the calls and backend systems. The routing table is rebuilt once, after everything is applied,
+     * so no call is routed with half of the new configuration.
+     *
+     * @return the executors that are replaced or removed, these are not shut down.
+     */
+    public synchronized List<HawaiiExecutor> reconfigure(Collection<HawaiiExecutor> executors, Collection<String> removed,
+            Map<String, String> defaultExecutors, Map<String, RequestConfiguration> settings) {
+        List<HawaiiExecutor> replaced = new ArrayList<>();
+        for (HawaiiExecutor executor : executors) {
+            HawaiiExecutor previous = this.executors.put(executor.getName(), executor);
+            if (previous != null && previous != executor) {
+                replaced.add(previous);
+            }
         }
+        for (String name : removed) {
+            HawaiiExecutor previous = this.executors.remove(name);
+            if (previous != null) {
+                replaced.add(previous);
+            }
+        }
+        for (String executorName : defaultExecutors.values()) {
+            assert this.executors.containsKey(executorName) : "The queue with name '" + executorName + "' is not defined.";
+        }
+        assert this.executors.containsKey(DEFAULT_EXECUTOR_NAME) : "The system queue with name '" + DEFAULT_EXECUTOR_NAME + "' is not defined.";
+        this.defaultExecutors = new HashMap<>(defaultExecutors);
+        if (requestConfigurations == null) {
+            updateRoutingTable();
+        } else {
+            // Notifies the change listener, which rebuilds the routing table.
+            requestConfigurations.apply(settings);
+        }
+        return replaced;
     }
 
     public void configure() {
         assert executors.containsKey(DEFAULT_EXECUTOR_NAME) : "The system queue with name '" + DEFAULT_EXECUTOR_NAME + "' is not defined.";
-        assert executors.containsKey(DEFAULT_ASYNC_EXECUTOR_NAME) : "The system queue with name '" + DEFAULT_ASYNC_EXECUTOR_NAME + "' is not defined.";
+        updateRoutingTable();
     }
 
     public HawaiiExecutor getExecutorByName(final String name) {
@@ -72,39 +183,58 @@ public class ExecutorRepository {
     }
 
     public <T> HawaiiExecutor getExecutor(AbortableRequest<T> request) {
-        RequestContext<T> context = request.getContext();
-
-        HawaiiExecutor executor = executors.get(context.getExecutorName());
-        if (executor == null) {
-            // The configured (in the request) executor does not exist (or is empty).
-            // Get the external configuration and add the configuration to the request
-            RequestConfiguration configuration = requestConfigurations.get(request.getCallName());
-            executor = executors.get(configuration.getExecutorName());
-
-            if (executor == null) {
-                // See if there is a default executor for the backend system.
-                String executorName = defaultExecutors.get(context.getBackendSystem());
-                executor = executors.get(executorName);
+        return getRoute(request).getExecutor();
+    }
 
-                if (executor == null) {
-                    // Use the trusty old default pool.
-                    executor = executors.get(DEFAULT_EXECUTOR_NAME);
-                }
+    /**
+     * @return the route of the request: its executor and everything else configured for its call.
+     */
+    public <T> RoutingTable.Route getRoute(AbortableRequest<T> request) {
+        return routingTable.getRoute(request.getContext());
+    }
 
-            }
+    /**
+     * @return the time out configured for the call of the request, null if the time out of its context applies.
+     */
+    public <T> TimeOut getTimeOut(AbortableRequest<T> request) {
+        return getRoute(request).getTimeOut();
+    }
 
-            configuration.setExecutorName(executor.getName());
-            request.getContext().setConfiguration(configuration);
+    /**
+     * @return the executor that waits for asynchronous requests that need a waiting thread (hedged and retried requests), the default executor if there
+     * is no async executor guard.
+     */
+    public <T> HawaiiExecutor getAsyncExecutor(AbortableRequest<T> request) {
+        HawaiiExecutor executor = executors.get(DEFAULT_ASYNC_EXECUTOR_NAME);
+        if (executor == null) {
+            executor = executors.get(DEFAULT_EXECUTOR_NAME);
         }
-
         return executor;
     }
 
-    public <T> HawaiiExecutor getAsyncExecutor(AbortableRequest<T> request) {
-        return executors.get(DEFAULT_ASYNC_EXECUTOR_NAME);
+    /**
+     * Shut down an executor that has been replaced or removed. This is done after a grace period, so requests that were routed to the
+     * executor just before it was replaced can still be submitted to it. Its pending requests are still executed.
+     */
+    public synchronized void retire(HawaiiExecutor executor) {
+        if (retirer == null) {
+            retirer = Executors.newSingleThreadScheduledExecutor(new HawaiiThreadFactory("queue-retirer"));
+        }
+        retiring.add(executor);
+        retirer.schedule(() -> {
+            retiring.remove(executor);
+            executor.shutdown();
+        }, RETIRE_GRACE_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
     }
 
-    public void stop() {
+    public synchronized void stop() {
+        if (retirer != null) {
+            retirer.shutdownNow();
+        }
+        for (HawaiiExecutor executor : retiring) {
+            executor.shutdown();
+        }
+        retiring.clear();
         for (HawaiiExecutor executor : executors.values()) {
             executor.shutdown();
         }
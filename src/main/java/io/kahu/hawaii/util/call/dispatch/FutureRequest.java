@@ -19,8 +19,6 @@ import io.kahu.hawaii.util.call.AbortableRequest;
 import io.kahu.hawaii.util.call.Response;
 import org.apache.http.annotation.NotThreadSafe;
 
-import java.util.concurrent.FutureTask;
-
 /**
  * This class wraps an {@link AbortableRequest} to use inside an executor service.
  *
@@ -28,16 +26,9 @@ import java.util.concurrent.FutureTask;
  * @param <T>
  */
 @NotThreadSafe
-public class FutureRequest<T> extends FutureTask<Response<T>> {
-    private final AbortableRequest<T> abortableRequest;
+public class FutureRequest<T> extends AbstractFutureRequest<T> {
 
     public FutureRequest(AbortableRequest<T> abortableRequest, Response<T> response) {
-        super(new CallableRequest<>(abortableRequest, response));
-        this.abortableRequest = abortableRequest;
-    }
-
-    @Override
-    public String toString() {
-        return abortableRequest.getCallName() + " @ " + abortableRequest.getId();
+        super(new CallableRequest<>(abortableRequest, response), abortableRequest);
     }
 }
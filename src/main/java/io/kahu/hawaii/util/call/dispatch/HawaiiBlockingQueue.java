@@ -21,15 +21,30 @@ import java.util.Collection;
 import java.util.Iterator;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Queue of a {@link HawaiiExecutorImpl}, it never accepts an offer so the executor starts a thread (up to its maximum pool size) before
+ * tasks are queued.
+ *
+ * The depth of the queue is counted as tasks are added and removed, so it can be read without taking the lock of the queue.
+ */
 @ThreadSafe
 public class HawaiiBlockingQueue<E> implements BlockingQueue<E> {
     private final BlockingQueue<E> delegate;
+    private final AtomicInteger depth = new AtomicInteger(0);
 
     public HawaiiBlockingQueue(BlockingQueue<E> delegate) {
         this.delegate = delegate;
     }
 
+    /**
+     * @return the number of queued tasks, without taking the lock of the queue
+     */
+    public int getDepth() {
+        return Math.max(0, depth.get());
+    }
+
     @Override
     public int size() {
         return delegate.size();
@@ -42,17 +57,48 @@ public class HawaiiBlockingQueue<E> implements BlockingQueue<E> {
 
     @Override
     public boolean add(E e) {
-        return delegate.add(e);
+        boolean added = delegate.add(e);
+        depth.incrementAndGet();
+        return added;
     }
 
+    /**
+     * Removing via the iterator removes the task from the queue (if a thread did not take it meanwhile), see {@link #remove(Object)}.
+     */
     @Override
     public Iterator<E> iterator() {
-        return delegate.iterator();
+        Iterator<E> iterator = delegate.iterator();
+        return new Iterator<E>() {
+            private E last;
+
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public E next() {
+                last = iterator.next();
+                return last;
+            }
+
+            @Override
+            public void remove() {
+                if (last == null) {
+                    throw new IllegalStateException();
+                }
+                E e = last;
+                last = null;
+                HawaiiBlockingQueue.this.remove(e);
+            }
+        };
     }
 
     @Override
     public E remove() {
-        return delegate.remove();
+        E e = delegate.remove();
+        depth.decrementAndGet();
+        return e;
     }
 
     @Override
@@ -62,7 +108,7 @@ public class HawaiiBlockingQueue<E> implements BlockingQueue<E> {
 
     @Override
     public E poll() {
-        return delegate.poll();
+        return dequeued(delegate.poll());
     }
 
     @Override
@@ -88,21 +134,26 @@ public class HawaiiBlockingQueue<E> implements BlockingQueue<E> {
     @Override
     public void put(E e) throws InterruptedException {
         delegate.put(e);
+        depth.incrementAndGet();
     }
 
     @Override
     public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
-        return delegate.offer(e, timeout, unit);
+        boolean offered = delegate.offer(e, timeout, unit);
+        if (offered) {
+            depth.incrementAndGet();
+        }
+        return offered;
     }
 
     @Override
     public E take() throws InterruptedException {
-        return delegate.take();
+        return dequeued(delegate.take());
     }
 
     @Override
     public E poll(long timeout, TimeUnit unit) throws InterruptedException {
-        return delegate.poll(timeout, unit);
+        return dequeued(delegate.poll(timeout, unit));
     }
 
     @Override
@@ -112,7 +163,11 @@ public class HawaiiBlockingQueue<E> implements BlockingQueue<E> {
 
     @Override
     public boolean remove(Object o) {
-        return delegate.remove(o);
+        boolean removed = delegate.remove(o);
+        if (removed) {
+            depth.decrementAndGet();
+        }
+        return removed;
     }
 
     @Override
@@ -122,7 +177,9 @@ public class HawaiiBlockingQueue<E> implements BlockingQueue<E> {
 
     @Override
     public int drainTo(Collection<? super E> c) {
-        return delegate.drainTo(c);
+        int drained = delegate.drainTo(c);
+        depth.addAndGet(-drained);
+        return drained;
     }
 
     @Override
@@ -132,27 +189,42 @@ public class HawaiiBlockingQueue<E> implements BlockingQueue<E> {
 
     @Override
     public int drainTo(Collection<? super E> c, int maxElements) {
-        return delegate.drainTo(c, maxElements);
+        int drained = delegate.drainTo(c, maxElements);
+        depth.addAndGet(-drained);
+        return drained;
     }
 
     @Override
     public boolean addAll(Collection<? extends E> c) {
-        return delegate.addAll(c);
+        try {
+            return delegate.addAll(c);
+        } finally {
+            recount();
+        }
     }
 
     @Override
     public boolean removeAll(Collection<?> c) {
-        return delegate.removeAll(c);
+        try {
+            return delegate.removeAll(c);
+        } finally {
+            recount();
+        }
     }
 
     @Override
     public boolean retainAll(Collection<?> c) {
-        return delegate.retainAll(c);
+        try {
+            return delegate.retainAll(c);
+        } finally {
+            recount();
+        }
     }
 
     @Override
     public void clear() {
         delegate.clear();
+        recount();
     }
 
     @Override
@@ -165,4 +237,18 @@ public class HawaiiBlockingQueue<E> implements BlockingQueue<E> {
         return delegate.hashCode();
     }
 
+    private E dequeued(E e) {
+        if (e != null) {
+            depth.decrementAndGet();
+        }
+        return e;
+    }
+
+    /**
+     * Bulk operations are rare (e.g. on shutdown), after them the depth is taken from the queue itself.
+     */
+    private void recount() {
+        depth.set(delegate.size());
+    }
+
 }
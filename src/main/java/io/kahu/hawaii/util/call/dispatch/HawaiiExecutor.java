@@ -29,9 +29,51 @@ public interface HawaiiExecutor {
 
     QueueStatistic getQueueStatistic();
 
+    /**
+     * Set which scheduling events of this executor are logged, all by default. Executors that do not log scheduling events ignore it.
+     */
+    default void setSchedulingLogPolicy(SchedulingLogPolicy policy) {
+        // Nothing is logged.
+    }
+
     <T> FutureTask<T> execute(AbortableRequest<T> request, Response<T> response);
 
+    /**
+     * @return true if the tasks returned by {@link #execute(AbortableRequest, Response)} tell when they are done (they are
+     *         {@link AbstractFutureRequest}s), which asynchronous and hedged execution need.
+     */
+    default boolean isNotifyingWhenDone() {
+        return false;
+    }
+
     <T> FutureTask<T> executeAsync(AbortableRequest<T> request, RequestDispatcher dispatcher);
 
+    /**
+     * @return true if this executor runs synchronous requests on the calling thread when it can, see
+     *         {@link #executeOnCaller(AbortableRequest, Response)}.
+     */
+    default boolean isCallerRuns() {
+        return false;
+    }
+
+    /**
+     * Execute the request on the calling thread instead of a thread of this executor, if this executor runs the requests of its callers and
+     * could have run the request right away (nothing is queued and a thread and concurrency permit are available). The request counts in
+     * the statistics of this executor as any other request.
+     *
+     * @return the task (done) or null if the request has to be executed by a thread of this executor
+     */
+    default <T> FutureTask<T> executeOnCaller(AbortableRequest<T> request, Response<T> response) {
+        return null;
+    }
+
+    /**
+     * Cancel a task of this executor, without interrupting it if it runs already. A task that has not started yet never runs, it is counted
+     * as cancelled before start.
+     */
+    default void cancel(FutureTask<?> task) {
+        task.cancel(false);
+    }
+
     void shutdown();
 }
@@ -18,24 +18,43 @@ package io.kahu.hawaii.util.call.dispatch;
 import io.kahu.hawaii.util.call.AbortableRequest;
 import io.kahu.hawaii.util.call.Response;
 import io.kahu.hawaii.util.call.TimeOut;
+import io.kahu.hawaii.util.call.dispatch.limit.CoDel;
+import io.kahu.hawaii.util.call.dispatch.limit.ConcurrencyLimiter;
+import io.kahu.hawaii.util.call.statistics.PriorityQueueStatistic;
 import io.kahu.hawaii.util.call.statistics.QueueStatistic;
 import io.kahu.hawaii.util.call.statistics.QueueStatisticImpl;
-import io.kahu.hawaii.util.logger.CoreLoggers;
 import io.kahu.hawaii.util.logger.LogManager;
 import io.kahu.hawaii.util.logger.LoggingContext;
 import org.apache.http.annotation.ThreadSafe;
 
+import java.util.Collections;
+import java.util.Map;
 import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Implementation of an ThreadPoolExecutor that first adds new threads and then queues tasks.
  */
 @ThreadSafe
 public class HawaiiExecutorImpl extends ThreadPoolExecutor implements HawaiiExecutor {
-    private final AtomicLong rejected = new AtomicLong(0L);
+    private final LongAdder active = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder cancelled = new LongAdder();
+    private final AtomicInteger running = new AtomicInteger(0);
+    private final AtomicInteger waitingForPermit = new AtomicInteger(0);
+    private final Object permitReleased = new Object();
+    // Set on a thread of the pool that runs a task without a permit (it was interrupted while waiting for one).
+    private final ThreadLocal<Boolean> withoutPermit = new ThreadLocal<>();
+    private final PoolThreadFactory threadFactory;
     private final String name;
-    private final LogManager logManager;
+    private final SchedulingLogger schedulingLogger;
+    private final BlockingQueue<Runnable> workQueue;
+    private final HawaiiBlockingQueue<Runnable> queue;
+    private volatile ConcurrencyLimiter concurrencyLimiter;
+    private volatile CoDel coDel;
+    private volatile boolean callerRuns = false;
 
     public HawaiiExecutorImpl(String name, int corePoolSize, int maximumPoolSize, int queueSize, TimeOut threadKeepAlive, LogManager logManager) {
         this(name, corePoolSize, maximumPoolSize, threadKeepAlive, new ArrayBlockingQueue<>(queueSize), new HawaiiThreadFactory(name), null, logManager);
@@ -43,16 +62,81 @@ public class HawaiiExecutorImpl extends ThreadPoolExecutor implements HawaiiExec
 
     public HawaiiExecutorImpl(String name, int corePoolSize, int maximumPoolSize, TimeOut threadKeepAlive,
                               BlockingQueue<Runnable> workQueue, ThreadFactory factory, RejectedExecutionHandler handler, LogManager logManager) {
+        this(name, corePoolSize, maximumPoolSize, threadKeepAlive, workQueue, new PoolThreadFactory(factory), handler, logManager);
+    }
+
+    private HawaiiExecutorImpl(String name, int corePoolSize, int maximumPoolSize, TimeOut threadKeepAlive,
+                               BlockingQueue<Runnable> workQueue, PoolThreadFactory factory, RejectedExecutionHandler handler, LogManager logManager) {
         super(corePoolSize, maximumPoolSize, threadKeepAlive.getDuration(), threadKeepAlive.getUnit(), new HawaiiBlockingQueue<>(workQueue), factory, new HawaiiRejectedExecutionHandler(logManager,
                 handler));
+        this.threadFactory = factory;
         this.name = name;
-        this.logManager = logManager;
+        this.workQueue = workQueue;
+        this.queue = (HawaiiBlockingQueue<Runnable>) getQueue();
+        this.schedulingLogger = new SchedulingLogger(logManager);
     }
 
     public void execute(Runnable command) {
         super.execute(command);
     }
 
+    /**
+     * Resize the thread pool, running and queued tasks are not affected. Surplus threads end once they are idle.
+     */
+    public void resize(int corePoolSize, int maximumPoolSize, TimeOut threadKeepAlive) {
+        if (corePoolSize > getMaximumPoolSize()) {
+            setMaximumPoolSize(maximumPoolSize);
+            setCorePoolSize(corePoolSize);
+        } else {
+            setCorePoolSize(corePoolSize);
+            setMaximumPoolSize(maximumPoolSize);
+        }
+        setKeepAliveTime(threadKeepAlive.getDuration(), threadKeepAlive.getUnit());
+    }
+
+    /**
+     * Limit the number of requests in flight (queued or executing) with an adaptive limit. Requests over the limit are rejected.
+     */
+    public void setConcurrencyLimiter(ConcurrencyLimiter concurrencyLimiter) {
+        this.concurrencyLimiter = concurrencyLimiter;
+    }
+
+    public ConcurrencyLimiter getConcurrencyLimiter() {
+        return concurrencyLimiter;
+    }
+
+    /**
+     * Shed requests taken from the queue once the queue delay stays too long, see {@link CoDel}. Shed requests are rejected.
+     */
+    public void setCoDel(CoDel coDel) {
+        this.coDel = coDel;
+    }
+
+    public CoDel getCoDel() {
+        return coDel;
+    }
+
+    /**
+     * Run synchronous requests on the calling thread instead of handing them to a thread of the pool (and parking the caller) whenever the
+     * pool could have run them right away, see {@link #executeOnCaller(AbortableRequest, Response)}.
+     *
+     * The callers and the threads of the pool share the permits to run a request, at most the maximum pool size, so together they never
+     * run more requests than the pool could.
+     */
+    public void setCallerRuns(boolean callerRuns) {
+        this.callerRuns = callerRuns;
+    }
+
+    @Override
+    public boolean isCallerRuns() {
+        return callerRuns;
+    }
+
+    @Override
+    public void setSchedulingLogPolicy(SchedulingLogPolicy policy) {
+        schedulingLogger.setPolicy(policy);
+    }
+
     @Override
     public String getName() {
         return name;
@@ -60,25 +144,50 @@ public class HawaiiExecutorImpl extends ThreadPoolExecutor implements HawaiiExec
 
     @Override
     public void rejectTask() {
-        rejected.incrementAndGet();
+        rejected.increment();
     }
 
     public Long getRejectedTaskCount() {
-        return rejected.get();
+        return rejected.sum();
+    }
+
+    public Long getCancelledTaskCount() {
+        return cancelled.sum();
+    }
+
+    /**
+     * @return the queue statistics per priority if this executor uses a {@link PriorityTaskQueue}, an empty map otherwise.
+     */
+    public Map<Integer, PriorityQueueStatistic> getPriorityStatistics() {
+        if (workQueue instanceof PriorityTaskQueue) {
+            return ((PriorityTaskQueue) workQueue).getPriorityStatistics();
+        }
+        return Collections.emptyMap();
     }
 
+    /**
+     * The statistics are kept up to date by the worker threads, taking them does not take the main lock of the pool (unlike
+     * {@link #getPoolSize()}, {@link #getActiveCount()}, etc.) nor the lock of the queue, so submitting threads do not contend on them. The
+     * statistics per priority are taken once they are asked for.
+     */
     @Override
     public QueueStatistic getQueueStatistic() {
-        return new QueueStatisticImpl(this);
+        return new QueueStatisticImpl(name, threadFactory.poolSize.get(), getCorePoolSize(), getMaximumPoolSize(), threadFactory.largestPoolSize.get(),
+                queue.getDepth(), active.intValue(), completed.sum(), rejected.sum(), cancelled.sum(), this::getPriorityStatistics);
     }
 
     public <T> FutureTask<T> execute(AbortableRequest<T> request, Response<T> response) {
         QueueStatistic queueStatistics = getQueueStatistic();
         request.setQueueStatistic(queueStatistics);
 
-        logScheduleStart(request, queueStatistics);
+        schedulingLogger.logScheduleStart(request, queueStatistics);
 
-        return doExecute(new FutureRequest(request, response));
+        return submit(new FutureRequest<>(request, response));
+    }
+
+    @Override
+    public boolean isNotifyingWhenDone() {
+        return true;
     }
 
 
@@ -86,30 +195,229 @@ public class HawaiiExecutorImpl extends ThreadPoolExecutor implements HawaiiExec
         QueueStatistic queueStatistics = getQueueStatistic();
         request.setQueueStatistic(queueStatistics);
 
-        logScheduleStart(request, queueStatistics);
+        schedulingLogger.logScheduleStart(request, queueStatistics);
 
-        return doExecute(new AsyncFutureRequest(request, dispatcher));
+        return submit(new AsyncFutureRequest<>(request, dispatcher));
     }
 
 
+    @Override
+    public <T> FutureTask<T> executeOnCaller(AbortableRequest<T> request, Response<T> response) {
+        if (!callerRuns || isShutdown() || queue.getDepth() > 0 || !tryAcquirePermit()) {
+            return null;
+        }
+        try {
+            ConcurrencyLimiter limiter = concurrencyLimiter;
+            if (limiter != null && !limiter.tryAcquire()) {
+                // Let the pool reject it.
+                return null;
+            }
+
+            QueueStatistic queueStatistics = getQueueStatistic();
+            request.setQueueStatistic(queueStatistics);
+            schedulingLogger.logScheduleStart(request, queueStatistics);
+
+            FutureRequest<T> task = new FutureRequest<>(request, response);
+            // The task clears the logging context of the thread it runs on, the caller keeps its own.
+            LoggingContext callerContext = LoggingContext.get();
+            started(task);
+            try {
+                task.run();
+            } finally {
+                LoggingContext.set(callerContext);
+                finished(task);
+            }
+            return task.asTask();
+        } finally {
+            releasePermit();
+        }
+    }
+
+    /**
+     * A request may run if fewer requests than the maximum pool size are running, on threads of the pool or on callers.
+     */
+    private boolean tryAcquirePermit() {
+        int maximumPoolSize = getMaximumPoolSize();
+        int current;
+        do {
+            current = running.get();
+            if (current >= maximumPoolSize) {
+                return false;
+            }
+        } while (!running.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    /**
+     * A thread of the pool waits for a permit, this only happens while callers (or threads of a larger pool before a resize) hold them.
+     *
+     * @return false if the thread was interrupted (the pool is shutting down) before it got a permit
+     */
+    private boolean acquirePermit() {
+        if (tryAcquirePermit()) {
+            return true;
+        }
+        synchronized (permitReleased) {
+            waitingForPermit.incrementAndGet();
+            try {
+                while (!tryAcquirePermit()) {
+                    permitReleased.wait();
+                }
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } finally {
+                waitingForPermit.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * A task that got no permit does not run: a request is rejected, another future is cancelled. Other tasks cannot be skipped once a
+     * thread took them, they are rejected by throwing (the thread is replaced).
+     */
+    private void rejectWithoutPermit(Runnable r) {
+        if (r instanceof AbstractFutureRequest) {
+            ((AbstractFutureRequest<?>) r).shed();
+            rejected.increment();
+        } else if (r instanceof Future) {
+            ((Future<?>) r).cancel(false);
+            cancelled.increment();
+        } else {
+            throw new RejectedExecutionException("Interrupted while waiting for a permit to run '" + r + "'.");
+        }
+        withoutPermit.set(Boolean.TRUE);
+    }
+
+    private void releasePermit() {
+        running.decrementAndGet();
+        if (waitingForPermit.get() > 0) {
+            synchronized (permitReleased) {
+                permitReleased.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * A task still in the queue is removed from it right away, so it does not take a place in the queue until a thread gets to it.
+     */
+    @Override
+    public void cancel(FutureTask<?> task) {
+        if (task.cancel(false) && remove(task)) {
+            cancelled.increment();
+            ConcurrencyLimiter limiter = concurrencyLimiter;
+            if (limiter != null && task instanceof AbstractFutureRequest) {
+                // Nothing was executed, so there is no sample.
+                limiter.release();
+            }
+        }
+    }
+
     public <T> FutureTask<T> doExecute(FutureTask<T> task) {
         super.execute(task);
         return task;
     }
 
-    private <T> void logScheduleStart(AbortableRequest<T> request, QueueStatistic queueStatistics) {
-        try (LoggingContext.PopResource pushContext = logManager.pushContext()) {
-            logManager.putContext("queue.name", getName());
+    private <T> FutureTask<T> submit(AbstractFutureRequest<T> task) {
+        ConcurrencyLimiter limiter = concurrencyLimiter;
+        if (limiter == null) {
+            doExecute(task);
+            return task.asTask();
+        }
+
+        if (!limiter.tryAcquire()) {
+            ((HawaiiRejectedExecutionHandler) getRejectedExecutionHandler()).reject(task, this,
+                    "the concurrency limit of '" + limiter.getLimit() + "' has been reached");
+        }
+        try {
+            doExecute(task);
+            return task.asTask();
+        } catch (RejectedExecutionException e) {
+            limiter.release();
+            throw e;
+        }
+    }
 
-            logManager.putContext("pool.size.current", queueStatistics.getPoolSize());
-            logManager.putContext("pool.size.max", queueStatistics.getMaximumPoolSize());
-            logManager.putContext("pool.size.largest", queueStatistics.getLargestPoolSize());
-            logManager.putContext("pool.task.pending", queueStatistics.getQueueSize());
-            logManager.putContext("pool.task.active", queueStatistics.getActiveTaskCount());
-            logManager.putContext("pool.task.completed", queueStatistics.getCompletedTaskCount());
-            logManager.putContext("pool.task.rejected", queueStatistics.getRejectedTaskCount());
+    @Override
+    protected void beforeExecute(Thread t, Runnable r) {
+        super.beforeExecute(t, r);
+        if (!acquirePermit()) {
+            rejectWithoutPermit(r);
+        }
+        started(r);
+    }
+
+    private void started(Runnable r) {
+        active.increment();
+        if (!(r instanceof AbstractFutureRequest)) {
+            return;
+        }
+        AbstractFutureRequest<?> task = (AbstractFutureRequest<?>) r;
+        if (task.isCancelled()) {
+            // Cancelled while a thread was taking it from the queue, it does not run (just like a shed task).
+            cancelled.increment();
+            task.shed();
+            return;
+        }
+        CoDel coDel = this.coDel;
+        if (coDel != null && !task.isShed()) {
+            long now = System.nanoTime();
+            if (coDel.shouldShed(task.getSojournTime(now), queue.getDepth() == 0, now)) {
+                task.shed();
+                rejected.increment();
+            }
+        }
+    }
+
+    @Override
+    protected void afterExecute(Runnable r, Throwable t) {
+        super.afterExecute(r, t);
+        finished(r);
+        if (withoutPermit.get() == null) {
+            releasePermit();
+        } else {
+            withoutPermit.remove();
+        }
+    }
+
+    private void finished(Runnable r) {
+        active.decrement();
+        completed.increment();
+        ConcurrencyLimiter limiter = concurrencyLimiter;
+        if (limiter != null && r instanceof AbstractFutureRequest) {
+            AbstractFutureRequest<?> task = (AbstractFutureRequest<?>) r;
+            if (task.isShed()) {
+                // Nothing was executed, so there is no sample.
+                limiter.release();
+            } else {
+                limiter.release(task.getStatistic());
+            }
+        }
+    }
+
+    /**
+     * Counts the threads of the pool as they start and end.
+     */
+    private static final class PoolThreadFactory implements ThreadFactory {
+        private final ThreadFactory delegate;
+        private final AtomicInteger poolSize = new AtomicInteger(0);
+        private final AtomicInteger largestPoolSize = new AtomicInteger(0);
+
+        private PoolThreadFactory(ThreadFactory delegate) {
+            this.delegate = delegate;
+        }
 
-            logManager.info(CoreLoggers.SERVER, "Scheduling " + (request.isAsync() ? "asynchronous " : "") + "request '" + request.getCallName() + "' with id '" + request.getId() + "'.");
+        @Override
+        public Thread newThread(Runnable worker) {
+            return delegate.newThread(() -> {
+                largestPoolSize.accumulateAndGet(poolSize.incrementAndGet(), Math::max);
+                try {
+                    worker.run();
+                } finally {
+                    poolSize.decrementAndGet();
+                }
+            });
         }
     }
 }
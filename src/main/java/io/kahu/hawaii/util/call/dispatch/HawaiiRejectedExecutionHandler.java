@@ -35,6 +35,10 @@ public class HawaiiRejectedExecutionHandler implements RejectedExecutionHandler
 
     @Override
     public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+        if (executor.isShutdown()) {
+            // A queue that has been retired would never run the task.
+            reject(task, executor, "the queue has been shut down");
+        }
         /*
          * This does the actual put into the queue. Once the max threads have
          * been reached, the tasks will then queue up.
@@ -42,17 +46,23 @@ public class HawaiiRejectedExecutionHandler implements RejectedExecutionHandler
         try {
             executor.getQueue().add(task);
         } catch (IllegalStateException e) {
-            try {
-                ((HawaiiExecutorImpl) executor).rejectTask();
-                if (delegate != null) {
-                    delegate.rejectedExecution(task, executor);
-                }
-            }
-            finally {
-                logManager.info(CoreLoggers.SERVER, "Rejected '" + task + "' since the pool and queue size has been exceeded.");
-                throw new RejectedExecutionException();
-            }
+            reject(task, executor, "the pool and queue size has been exceeded");
+        }
+    }
 
+    /**
+     * Reject the task, without trying to queue it.
+     */
+    public void reject(Runnable task, ThreadPoolExecutor executor, String reason) {
+        try {
+            ((HawaiiExecutorImpl) executor).rejectTask();
+            if (delegate != null) {
+                delegate.rejectedExecution(task, executor);
+            }
+        }
+        finally {
+            logManager.info(CoreLoggers.SERVER, "Rejected '" + task + "' since " + reason + ".");
+            throw new RejectedExecutionException();
         }
     }
 
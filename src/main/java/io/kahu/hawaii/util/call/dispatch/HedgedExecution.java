@@ -0,0 +1,165 @@
+/**
+ * Copyright 2014-2018 Q24
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kahu.hawaii.util.call.dispatch;
+
+import io.kahu.hawaii.util.call.AbortableRequest;
+import io.kahu.hawaii.util.call.TimeOut;
+import io.kahu.hawaii.util.call.dispatch.hedge.HedgingPolicy;
+import io.kahu.hawaii.util.call.dispatch.limit.TokenBudget;
+import io.kahu.hawaii.util.exception.ServerError;
+import io.kahu.hawaii.util.exception.ServerException;
+import org.apache.http.annotation.NotThreadSafe;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Executes a request with hedging. The request itself is not executed, a copy of it is. If that copy does not answer within the hedge delay
+ * (and the hedge budget of the queue allows it) a second copy is dispatched. The first copy that finishes wins: its response is copied
+ * into the response of the request and the other copy is cancelled. The copies that do not win are logged on their own.
+ *
+ * Requests that cannot be copied are executed without hedging.
+ */
+@NotThreadSafe
+class HedgedExecution<T> {
+    private final HawaiiExecutor executor;
+    private final AbortableRequest<T> request;
+    private final HedgingPolicy policy;
+    private final TokenBudget budget;
+    private final CountDownLatch done = new CountDownLatch(1);
+    private volatile long firstDoneNano = 0L;
+
+    HedgedExecution(HawaiiExecutor executor, AbortableRequest<T> request, HedgingPolicy policy, TokenBudget budget) {
+        this.executor = executor;
+        this.request = request;
+        this.policy = policy;
+        this.budget = budget;
+    }
+
+    /**
+     * Same contract as FutureTask#get(long, TimeUnit) with the time out of the request.
+     */
+    void execute() throws InterruptedException, ExecutionException, TimeoutException, ServerException {
+        TimeOut timeOut = request.getTimeOut();
+        if (!executor.isNotifyingWhenDone()) {
+            throw new ServerException(ServerError.ILLEGAL_ARGUMENT, "Executor '" + executor.getName() + "' does not support hedging.");
+        }
+        AbortableRequest<T> first = request.copy();
+        if (first == null) {
+            executor.execute(request, request.getResponse()).get(timeOut.getDuration(), timeOut.getUnit());
+            return;
+        }
+
+        long deadline = System.nanoTime() + timeOut.getUnit().toNanos(timeOut.getDuration());
+        budget.onRequest();
+        request.getStatistic().startBackendRequest();
+        long startNano = System.nanoTime();
+        FutureTask<T> firstTask = start(first, () -> {
+            if (firstDoneNano == 0L) {
+                firstDoneNano = System.nanoTime();
+            }
+        });
+        request.setQueueStatistic(first.getStatistic().getQueueStatistic());
+
+        AbortableRequest<T> second = null;
+        FutureTask<T> secondTask = null;
+        long delay = policy.getDelay();
+        boolean finished;
+        if (delay >= 0) {
+            finished = done.await(Math.min(TimeUnit.MILLISECONDS.toNanos(delay), remaining(deadline)), TimeUnit.NANOSECONDS);
+            if (!finished && remaining(deadline) > 0 && budget.tryAcquire()) {
+                try {
+                    second = request.copy();
+                    secondTask = start(second, null);
+                    request.getStatistic().setHedged(true);
+                } catch (RejectedExecutionException e) {
+                    // The queue is full, do not hedge.
+                    second = null;
+                }
+            }
+        }
+        finished = done.await(remaining(deadline), TimeUnit.NANOSECONDS);
+        request.getStatistic().endBackendRequest();
+        recordFirst(firstTask, startNano);
+
+        if (!finished) {
+            discard(first, firstTask, true);
+            discard(second, secondTask, true);
+            throw new TimeoutException();
+        }
+
+        AbortableRequest<T> winner = first;
+        FutureTask<T> winnerTask = firstTask;
+        if (!firstTask.isDone()) {
+            winner = second;
+            winnerTask = secondTask;
+            discard(first, firstTask, false);
+        } else {
+            discard(second, secondTask, false);
+        }
+
+        winnerTask.get();
+        request.getResponse().copy(winner.getResponse());
+        request.doCallback();
+    }
+
+    private FutureTask<T> start(AbortableRequest<T> copy, Runnable onDone) {
+        FutureTask<T> task = executor.execute(copy, copy.getResponse());
+        ((AbstractFutureRequest<?>) task).whenDone(() -> {
+            if (onDone != null) {
+                onDone.run();
+            }
+            done.countDown();
+        });
+        return task;
+    }
+
+    /**
+     * Record the time the first copy took, whether it won or not, so the hedge delay follows the call times of all requests and not only
+     * of the fast ones. A first copy that is still running (it is about to be cancelled) took at least the time elapsed so far.
+     */
+    private void recordFirst(FutureTask<T> firstTask, long startNano) {
+        long endNano = firstTask.isDone() && firstDoneNano != 0L ? firstDoneNano : System.nanoTime();
+        policy.record((endNano - startNano) / 1000000.0D);
+    }
+
+    /**
+     * Cancel a copy that did not win if it is still running (aborted if the request timed out, cancelled otherwise) and finish it, so its
+     * backend call is logged.
+     */
+    private void discard(AbortableRequest<T> copy, FutureTask<T> task, boolean timedOut) {
+        if (copy == null) {
+            return;
+        }
+        if (!task.isDone()) {
+            executor.cancel(task);
+            if (timedOut) {
+                copy.abort();
+            } else {
+                copy.abandon();
+            }
+        }
+        copy.finish();
+    }
+
+    private long remaining(long deadline) {
+        return Math.max(0L, deadline - System.nanoTime());
+    }
+}
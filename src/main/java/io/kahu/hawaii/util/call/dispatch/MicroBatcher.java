@@ -0,0 +1,149 @@
+/**
+ * Copyright 2014-2018 Q24
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kahu.hawaii.util.call.dispatch;
+
+import io.kahu.hawaii.util.call.statistics.Histogram;
+import org.apache.http.annotation.ThreadSafe;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Collects the individual requests of a call into batches, so a backend with a bulk endpoint gets one request per batch (see
+ * {@link BatchMapper}). A batch is dispatched once it holds 'maxSize' requests or 'maxWait' milliseconds after its first request joined,
+ * whichever comes first.
+ *
+ * The size of the dispatched batches and the time (in milliseconds) the requests waited for their batch are kept in histograms.
+ */
+@ThreadSafe
+public class MicroBatcher {
+    private final int maxSize;
+    private final long maxWait;
+    private final Histogram batchSizes = new Histogram();
+    private final Histogram waitTimes = new Histogram();
+
+    // Guarded by this.
+    private Batch<?> open;
+
+    /**
+     * @param maxSize the maximum number of requests in a batch
+     * @param maxWait the maximum time in milliseconds a request waits for its batch to fill up
+     */
+    public MicroBatcher(int maxSize, long maxWait) {
+        this.maxSize = maxSize;
+        this.maxWait = maxWait;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getMaxWait() {
+        return maxWait;
+    }
+
+    public Histogram getBatchSizes() {
+        return batchSizes;
+    }
+
+    public Histogram getWaitTimes() {
+        return waitTimes;
+    }
+
+    /**
+     * Add the request to the open batch. The batch is handed to the dispatcher by the thread that fills it up, or by the executor once the
+     * batch waited long enough (the timer only closes the batch). The dispatcher should not block.
+     */
+    @SuppressWarnings("unchecked")
+    <T> void add(AsyncExecution<T> execution, TimerWheel timer, Executor executor, Consumer<List<AsyncExecution<T>>> dispatcher) {
+        Batch<T> opened = null;
+        Batch<T> full = null;
+        synchronized (this) {
+            if (open == null) {
+                opened = new Batch<>(dispatcher);
+                open = opened;
+            }
+            Batch<T> batch = (Batch<T>) open;
+            batch.add(execution);
+            if (batch.executions.size() >= maxSize) {
+                full = batch;
+                open = null;
+            }
+        }
+
+        if (full != null) {
+            dispatch(full);
+        } else if (opened != null) {
+            Batch<T> batch = opened;
+            opened.timeOutTask = timer.schedule(() -> {
+                if (close(batch)) {
+                    try {
+                        executor.execute(() -> dispatch(batch));
+                    } catch (RejectedExecutionException e) {
+                        // The dispatcher is stopped.
+                        dispatch(batch);
+                    }
+                }
+            }, maxWait, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private synchronized boolean close(Batch<?> batch) {
+        if (open != batch) {
+            return false;
+        }
+        open = null;
+        return true;
+    }
+
+    private <T> void dispatch(Batch<T> batch) {
+        TimerWheel.Handle timeOutTask = batch.timeOutTask;
+        if (timeOutTask != null) {
+            timeOutTask.cancel();
+        }
+        long now = System.nanoTime();
+        batchSizes.record(batch.executions.size());
+        for (long joined : batch.joined) {
+            waitTimes.record(TimeUnit.NANOSECONDS.toMillis(now - joined));
+        }
+        batch.dispatcher.accept(batch.executions);
+    }
+
+    @Override
+    public String toString() {
+        return "micro batcher of max '" + maxSize + "' requests / '" + maxWait + "' msec";
+    }
+
+    private static final class Batch<T> {
+        private final Consumer<List<AsyncExecution<T>>> dispatcher;
+        private final List<AsyncExecution<T>> executions = new ArrayList<>();
+        private final List<Long> joined = new ArrayList<>();
+        private volatile TimerWheel.Handle timeOutTask;
+
+        private Batch(Consumer<List<AsyncExecution<T>>> dispatcher) {
+            this.dispatcher = dispatcher;
+        }
+
+        private void add(AsyncExecution<T> execution) {
+            executions.add(execution);
+            joined.add(System.nanoTime());
+        }
+    }
+}
@@ -0,0 +1,335 @@
+/**
+ * Copyright 2014-2018 Q24
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kahu.hawaii.util.call.dispatch;
+
+import io.kahu.hawaii.util.call.statistics.PriorityQueueStatistic;
+import org.apache.http.annotation.ThreadSafe;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded queue that orders requests by the priority of their call (higher first), see
+ * {@link io.kahu.hawaii.util.call.configuration.RequestConfiguration#getPriority()}.
+ *
+ * To prevent starvation of low priority requests, requests age: a request is ordered as if it was queued 'aging' milliseconds earlier for
+ * each priority level. So a request with priority 0 that waited for 3 aging periods goes before a new request with priority 2.
+ */
+@ThreadSafe
+public class PriorityTaskQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable> {
+    private final int capacity;
+    private final long agingNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final PriorityQueue<Entry> queue = new PriorityQueue<>();
+    private final Map<Integer, Counters> counters = new TreeMap<>();
+    private long sequence = 0L;
+
+    public PriorityTaskQueue(int capacity, long agingMillis) {
+        this.capacity = capacity;
+        this.agingNanos = TimeUnit.MILLISECONDS.toNanos(agingMillis);
+    }
+
+    @Override
+    public boolean offer(Runnable task) {
+        lock.lock();
+        try {
+            if (queue.size() >= capacity) {
+                return false;
+            }
+            enqueue(task);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void put(Runnable task) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (queue.size() >= capacity) {
+                notFull.await();
+            }
+            enqueue(task);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean offer(Runnable task, long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (queue.size() >= capacity) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = notFull.awaitNanos(nanos);
+            }
+            enqueue(task);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable poll() {
+        lock.lock();
+        try {
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (queue.isEmpty()) {
+                notEmpty.await();
+            }
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (queue.isEmpty()) {
+                if (nanos <= 0) {
+                    return null;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable peek() {
+        lock.lock();
+        try {
+            Entry entry = queue.peek();
+            return entry == null ? null : entry.task;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return capacity - size();
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        lock.lock();
+        try {
+            Iterator<Entry> iterator = queue.iterator();
+            while (iterator.hasNext()) {
+                Entry entry = iterator.next();
+                if (entry.task.equals(o)) {
+                    iterator.remove();
+                    getCounters(entry.priority).queued--;
+                    notFull.signal();
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int drainTo(Collection<? super Runnable> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super Runnable> c, int maxElements) {
+        lock.lock();
+        try {
+            int drained = 0;
+            while (drained < maxElements && !queue.isEmpty()) {
+                c.add(dequeue());
+                drained++;
+            }
+            return drained;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Iterates over a snapshot of the queue, in no particular order. Removing via the iterator removes the task from the queue (if a thread
+     * did not take it meanwhile).
+     */
+    @Override
+    public Iterator<Runnable> iterator() {
+        List<Runnable> tasks;
+        lock.lock();
+        try {
+            tasks = new ArrayList<>(queue.size());
+            for (Entry entry : queue) {
+                tasks.add(entry.task);
+            }
+        } finally {
+            lock.unlock();
+        }
+        Iterator<Runnable> snapshot = tasks.iterator();
+        return new Iterator<Runnable>() {
+            private Runnable last;
+
+            @Override
+            public boolean hasNext() {
+                return snapshot.hasNext();
+            }
+
+            @Override
+            public Runnable next() {
+                last = snapshot.next();
+                return last;
+            }
+
+            @Override
+            public void remove() {
+                if (last == null) {
+                    throw new IllegalStateException();
+                }
+                Runnable task = last;
+                last = null;
+                PriorityTaskQueue.this.remove(task);
+            }
+        };
+    }
+
+    public Map<Integer, PriorityQueueStatistic> getPriorityStatistics() {
+        lock.lock();
+        try {
+            Map<Integer, PriorityQueueStatistic> statistics = new TreeMap<>();
+            for (Map.Entry<Integer, Counters> entry : counters.entrySet()) {
+                Counters c = entry.getValue();
+                double average = c.dequeued == 0 ? 0.0D : c.totalQueueNanos / 1E6 / c.dequeued;
+                statistics.put(entry.getKey(), new PriorityQueueStatistic(entry.getKey(), c.queued, c.dequeued, average, c.maxQueueNanos / 1E6));
+            }
+            return statistics;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void enqueue(Runnable task) {
+        if (task == null) {
+            throw new NullPointerException();
+        }
+        int priority = getPriority(task);
+        long now = System.nanoTime();
+        queue.add(new Entry(task, priority, now, now - priority * agingNanos, sequence++));
+        getCounters(priority).queued++;
+        notEmpty.signal();
+    }
+
+    private Runnable dequeue() {
+        Entry entry = queue.poll();
+        if (entry == null) {
+            return null;
+        }
+        long queueTime = System.nanoTime() - entry.enqueued;
+        Counters c = getCounters(entry.priority);
+        c.queued--;
+        c.dequeued++;
+        c.totalQueueNanos += queueTime;
+        c.maxQueueNanos = Math.max(c.maxQueueNanos, queueTime);
+        notFull.signal();
+        return entry.task;
+    }
+
+    private Counters getCounters(int priority) {
+        return counters.computeIfAbsent(priority, p -> new Counters());
+    }
+
+    private int getPriority(Runnable task) {
+        if (task instanceof AbstractFutureRequest) {
+            return ((AbstractFutureRequest<?>) task).getPriority();
+        }
+        return 0;
+    }
+
+    private static final class Counters {
+        private int queued;
+        private long dequeued;
+        private long totalQueueNanos;
+        private long maxQueueNanos;
+    }
+
+    private static final class Entry implements Comparable<Entry> {
+        private final Runnable task;
+        private final int priority;
+        private final long enqueued;
+        private final long key;
+        private final long sequence;
+
+        private Entry(Runnable task, int priority, long enqueued, long key, long sequence) {
+            this.task = task;
+            this.priority = priority;
+            this.enqueued = enqueued;
+            this.key = key;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            long diff = key - other.key;
+            if (diff != 0) {
+                return diff < 0 ? -1 : 1;
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+}
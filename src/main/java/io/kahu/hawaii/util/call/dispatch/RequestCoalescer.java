@@ -0,0 +1,86 @@
+/**
+ * Copyright 2014-2018 Q24
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kahu.hawaii.util.call.dispatch;
+
+import io.kahu.hawaii.util.call.AbortableRequest;
+import io.kahu.hawaii.util.call.Response;
+import io.kahu.hawaii.util.call.TimeOut;
+import org.apache.http.annotation.ThreadSafe;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Coalesces identical requests that are in flight at the same time (single flight). The first request (the leader) is executed, requests
+ * with the same call name and fingerprint that arrive while the leader is in flight (the followers) wait for the response of the leader
+ * instead of being executed themselves.
+ *
+ * Each follower still has its own response, statistic and logging.
+ */
+@ThreadSafe
+public class RequestCoalescer {
+    private final Map<String, Response<?>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * @return the key under which the request can be coalesced, or null if the request cannot be coalesced.
+     */
+    public <T> String getKey(AbortableRequest<T> request) {
+        String fingerprint = request.getFingerprint();
+        if (fingerprint == null) {
+            return null;
+        }
+        return request.getCallName() + " " + fingerprint;
+    }
+
+    /**
+     * Register the response of a leader.
+     *
+     * @return the response of the request already in flight for the key, or null if the request is the leader.
+     */
+    public <T> Response<?> join(String key, Response<T> response) {
+        return inFlight.putIfAbsent(key, response);
+    }
+
+    /**
+     * Unregister the response of a leader, must be invoked once the leader is done.
+     */
+    public <T> void leave(String key, Response<T> response) {
+        inFlight.remove(key, response);
+    }
+
+    /**
+     * Wait (at most the time out of the request) for the response of the leader and copy it into the response of the follower.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> void follow(AbortableRequest<T> request, Response<?> leader) throws InterruptedException {
+        Response<T> response = request.getResponse();
+        response.getStatistic().setCoalesced(true);
+        response.getStatistic().startBackendRequest();
+
+        TimeOut timeOut = request.getTimeOut();
+        if (leader.await(timeOut.getDuration(), timeOut.getUnit())) {
+            response.getStatistic().endBackendRequest();
+            response.copy((Response<T>) leader);
+            request.doCallback();
+        } else {
+            request.abort();
+        }
+    }
+
+    public int getInFlight() {
+        return inFlight.size();
+    }
+}
@@ -16,22 +16,40 @@
 package io.kahu.hawaii.util.call.dispatch;
 
 import io.kahu.hawaii.util.call.*;
+import io.kahu.hawaii.util.call.dispatch.circuit.CircuitBreaker;
+import io.kahu.hawaii.util.call.dispatch.hedge.HedgingPolicy;
+import io.kahu.hawaii.util.call.dispatch.limit.RateLimiter;
 import io.kahu.hawaii.util.call.dispatch.listener.RequestDispatchedListener;
+import io.kahu.hawaii.util.call.dispatch.retry.RetryPolicy;
+import io.kahu.hawaii.util.call.http.HttpClientRepository;
+import io.kahu.hawaii.util.exception.ServerError;
 import io.kahu.hawaii.util.exception.ServerException;
 import io.kahu.hawaii.util.logger.LogManager;
 
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.http.annotation.ThreadSafe;
 
 @ThreadSafe
 public class RequestDispatcher {
+    private static final long TIMER_TICK_MILLIS = 10L;
+    private static final int TIMER_TICKS_PER_WHEEL = 512;
+    private static final long TIMER_GRACE_NANOS = TimeUnit.MILLISECONDS.toNanos(3 * TIMER_TICK_MILLIS);
+
     private final LogManager logManager;
     private final ExecutorRepository executorServiceRepository;
+    private final HttpClientRepository httpClientRepository;
+    private final boolean ownsHttpClientRepository;
+    private final RequestCoalescer requestCoalescer = new RequestCoalescer();
+    private final TimerWheel timer;
+    private final ConversionStage conversionStage;
+    private volatile RequestIdGenerator requestIdGenerator = new RandomRequestIdGenerator();
 
     private final List<RequestDispatchedListener> listeners = new ArrayList<>();
 
@@ -42,13 +60,36 @@ public class RequestDispatcher {
      *
      * So please be very careful what listeners you register.
      *
+     * The HTTP clients are pooled in an HttpClientRepository of this dispatcher, which is stopped by {@link #stop()}.
+     *
      * @param executorServiceRepository
      * @param logManager
      * @param listeners
      */
     public RequestDispatcher(ExecutorRepository executorServiceRepository, LogManager logManager, RequestDispatchedListener... listeners) {
+        this(executorServiceRepository, new HttpClientRepository(logManager), true, logManager, listeners);
+    }
+
+    /**
+     * @param executorServiceRepository
+     * @param httpClientRepository the (pooled) HTTP clients used by the HTTP requests dispatched by this dispatcher
+     * @param logManager
+     * @param listeners
+     * @see #RequestDispatcher(ExecutorRepository, LogManager, RequestDispatchedListener...)
+     */
+    public RequestDispatcher(ExecutorRepository executorServiceRepository, HttpClientRepository httpClientRepository, LogManager logManager,
+            RequestDispatchedListener... listeners) {
+        this(executorServiceRepository, httpClientRepository, false, logManager, listeners);
+    }
+
+    private RequestDispatcher(ExecutorRepository executorServiceRepository, HttpClientRepository httpClientRepository, boolean ownsHttpClientRepository,
+            LogManager logManager, RequestDispatchedListener... listeners) {
         this.executorServiceRepository = executorServiceRepository;
+        this.httpClientRepository = httpClientRepository;
+        this.ownsHttpClientRepository = ownsHttpClientRepository;
         this.logManager = logManager;
+        this.timer = new TimerWheel("hawaii-request-timer", TIMER_TICK_MILLIS, TimeUnit.MILLISECONDS, TIMER_TICKS_PER_WHEEL, logManager);
+        this.conversionStage = new ConversionStage("hawaii-conversion", Runtime.getRuntime().availableProcessors(), logManager);
         if (listeners != null) {
             for (RequestDispatchedListener listener : listeners) {
                 this.listeners.add(listener);
@@ -56,8 +97,58 @@ public class RequestDispatcher {
         }
     }
 
+    public HttpClientRepository getHttpClientRepository() {
+        return httpClientRepository;
+    }
+
+    public RequestIdGenerator getRequestIdGenerator() {
+        return requestIdGenerator;
+    }
+
+    /**
+     * Replace the generator of the ids of the requests dispatched by this dispatcher, by default random UUIDs are generated.
+     */
+    public void setRequestIdGenerator(RequestIdGenerator requestIdGenerator) {
+        this.requestIdGenerator = requestIdGenerator;
+    }
+
+    /**
+     * @return the time out of the request: the time out configured for its call, or else the time out of its context.
+     */
+    public <T> TimeOut getTimeOut(AbortableRequest<T> request) {
+        TimeOut timeOut = getRoute(request).getTimeOut();
+        return timeOut == null ? request.getContext().getTimeOut() : timeOut;
+    }
+
+    /**
+     * @return the route of the request: its executor and everything else configured for its call, see {@link RoutingTable}.
+     */
+    public <T> RoutingTable.Route getRoute(AbortableRequest<T> request) {
+        RoutingTable.Route route = request.getRoute();
+        return route == null ? executorServiceRepository.getRoute(request) : route;
+    }
+
+    /**
+     * @return the stage that converts the responses of the calls configured to be converted off the threads of the queues.
+     */
+    public ConversionStage getConversionStage() {
+        return conversionStage;
+    }
+
+    /**
+     * Stop the timer and conversion stage of this dispatcher, and the HttpClientRepository if this dispatcher created it. A repository
+     * passed to the constructor is stopped by its owner.
+     */
+    public void stop() {
+        timer.stop();
+        conversionStage.stop();
+        if (ownsHttpClientRepository) {
+            httpClientRepository.stop();
+        }
+    }
+
     public <T> Set<Response<T>> execute(RequestFactory<T> requestFactory, boolean waitForAnswers) throws ServerException {
-        Set<Response<T>> responses = new HashSet<>();
+        Set<Response<T>> responses = new LinkedHashSet<>();
         CountDownLatch latch = new CountDownLatch(requestFactory.getNumberOfRequests());
         AbortableRequest<T> request = requestFactory.getNextRequest();
         while (request != null) {
@@ -70,8 +161,8 @@ public class RequestDispatcher {
             try {
                 latch.await();
             } catch (InterruptedException e) {
-                // TODO Auto-generated catch block
-                e.printStackTrace();
+                Thread.currentThread().interrupt();
+                throw new ServerException(ServerError.UNEXPECTED_EXCEPTION, "Interrupted while waiting for the responses.", e);
             }
         }
 
@@ -79,7 +170,79 @@ public class RequestDispatcher {
     }
 
     /**
-     * Non blocking (asynchronous) execute of the request.
+     * Publish the responses of the requests of the factory with backpressure, the subscriber's demand controls how many requests are
+     * executed and at most 'concurrency' requests are in flight.
+     *
+     * @see ResponsePublisher
+     */
+    public <T> ResponsePublisher<T> publish(RequestFactory<T> requestFactory, int concurrency) {
+        return new ResponsePublisher<>(this, requestFactory, concurrency);
+    }
+
+    /**
+     * Scatter-gather, all requests are executed asynchronously and gathered within one overall deadline.
+     *
+     * @see #scatterGather(List, TimeOut, int)
+     */
+    public <T> ScatterGatherResult<T> scatterGather(List<? extends Request<T>> requests, TimeOut deadline) throws ServerException {
+        return scatterGather(requests, deadline, requests.size());
+    }
+
+    /**
+     * Scatter-gather, all requests are executed asynchronously. This method returns as soon as 'firstSuccessful' requests completed
+     * successfully, all requests completed, or the deadline passed, whichever comes first. The requests still in flight at that moment are
+     * cancelled (see {@link Response#cancel()}), as are the requests already started if one of the requests cannot be executed.
+     *
+     * Each request keeps its own time out as well. Only asynchronous requests that are executed by their executor (so not hedged requests)
+     * can be aborted before their own time out.
+     *
+     * @param requests the requests to execute
+     * @param deadline the overall deadline
+     * @param firstSuccessful the number of successful responses needed
+     */
+    public <T> ScatterGatherResult<T> scatterGather(List<? extends Request<T>> requests, TimeOut deadline, int firstSuccessful) throws ServerException {
+        long deadlineNanos = System.nanoTime() + deadline.getUnit().toNanos(deadline.getDuration());
+        BlockingQueue<Response<T>> done = new LinkedBlockingQueue<>();
+        List<Response<T>> responses = new ArrayList<>(requests.size());
+        try {
+            for (Request<T> request : requests) {
+                Response<T> response = request.executeAsync();
+                responses.add(response);
+                response.toCompletionStage().thenAccept(done::add);
+            }
+        } catch (ServerException | RuntimeException e) {
+            responses.forEach(Response::cancel);
+            throw e;
+        }
+
+        List<Response<T>> completed = new ArrayList<>(requests.size());
+        int successes = 0;
+        try {
+            while (completed.size() < responses.size() && successes < firstSuccessful) {
+                Response<T> response = done.poll(Math.max(0L, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+                if (response == null) {
+                    break;
+                }
+                completed.add(response);
+                if (response.getStatus() == ResponseStatus.SUCCESS) {
+                    successes++;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            responses.forEach(Response::cancel);
+            throw new ServerException(ServerError.UNEXPECTED_EXCEPTION, "Interrupted while waiting for the responses.", e);
+        }
+
+        boolean deadlinePassed = completed.size() < responses.size() && successes < firstSuccessful;
+        // Cancel the stragglers, the responses that are done already are not affected.
+        responses.forEach(Response::cancel);
+        return new ScatterGatherResult<>(responses, completed, deadlinePassed);
+    }
+
+    /**
+     * Non blocking (asynchronous) execute of the request. The request is executed directly by its executor, the response is finished by the
+     * worker (or by the time out), see {@link Response#toCompletionStage()}.
      *
      * @param request
      * @param <T>
@@ -87,6 +250,120 @@ public class RequestDispatcher {
      * @throws ServerException
      */
     public <T> Response<T> executeAsync(AbortableRequest<T> request) throws ServerException {
+        Response<T> response = request.getResponse();
+        RoutingTable.Route route = getRoute(request);
+        if (route.getMicroBatcher() != null) {
+            return executeBatched(request, route);
+        }
+
+        if (route.getHedgingPolicy() != null) {
+            // Hedging waits for the first answer, this needs a thread of the async executor.
+            return executeAsyncViaGuard(request);
+        }
+
+        String coalescingKey = route.isCoalescing() ? requestCoalescer.getKey(request) : null;
+        if (coalescingKey != null) {
+            Response<?> leader = requestCoalescer.join(coalescingKey, response);
+            if (leader != null) {
+                new AsyncExecution<>(request, null, null, conversionStage).follow(leader, timer);
+                return response;
+            }
+        }
+
+        CircuitBreaker circuitBreaker = route.getCircuitBreaker();
+        if (circuitBreaker != null && !circuitBreaker.tryAcquirePermission()) {
+            // The backend is failing, short circuit.
+            if (coalescingKey != null) {
+                requestCoalescer.leave(coalescingKey, response);
+            }
+            request.reject();
+            request.finish();
+            return response;
+        }
+
+        Runnable onFinish = coalescingKey == null ? null : () -> requestCoalescer.leave(coalescingKey, response);
+        AsyncExecution<T> execution = new AsyncExecution<>(request, circuitBreaker, onFinish, conversionStage);
+        if (route.getRetryPolicy() != null) {
+            // The backoff between the attempts is a delay of the timer.
+            execution.retry(route.getRetryPolicy(), route.getRetryBudget());
+        }
+        try {
+            // The wait for a rate limit is a delay of the timer as well.
+            long waitNanos = reserveRateLimits(request, route.getRateLimiters(), route.isWaitingForRateLimit());
+
+            HawaiiExecutor executor = route.getExecutor();
+
+            notifyListeners(request, executor);
+
+            execution.start(executor, timer, waitNanos);
+        } catch (RejectedExecutionException e) {
+            // Executor is too busy (no threads available nor is there a place in the queue) or the rate limit has been reached.
+            execution.reject();
+        } catch (Throwable t) {
+            execution.fail(t);
+        }
+        return response;
+    }
+
+    /**
+     * Add the request to the open batch of its call, the response is completed once the bulk request of the batch is done (or by the time
+     * out of the request).
+     */
+    @SuppressWarnings("unchecked")
+    private <T> Response<T> executeBatched(AbortableRequest<T> request, RoutingTable.Route route) {
+        BatchMapper<T, Object> batchMapper = (BatchMapper<T, Object>) route.getBatchMapper();
+        AsyncExecution<T> execution = new AsyncExecution<>(request, null, null, conversionStage);
+        execution.batch(timer);
+        route.getMicroBatcher().add(execution, timer, conversionStage, batch -> dispatchBatch(batchMapper, batch));
+        return request.getResponse();
+    }
+
+    private <T, B> void dispatchBatch(BatchMapper<T, B> batchMapper, List<AsyncExecution<T>> batch) {
+        List<AsyncExecution<T>> executions = new ArrayList<>(batch.size());
+        List<AbortableRequest<T>> requests = new ArrayList<>(batch.size());
+        for (AsyncExecution<T> execution : batch) {
+            // Requests that timed out while waiting for the batch are left out.
+            if (!execution.isFinished()) {
+                executions.add(execution);
+                requests.add(execution.getRequest());
+            }
+        }
+        if (requests.isEmpty()) {
+            return;
+        }
+
+        try {
+            batchMapper.toBatchRequest(requests).executeAsync().onComplete(batchResponse -> split(batchMapper, executions, requests, batchResponse));
+        } catch (Throwable t) {
+            executions.forEach(execution -> execution.fail(t));
+        }
+    }
+
+    private <T, B> void split(BatchMapper<T, B> batchMapper, List<AsyncExecution<T>> executions, List<AbortableRequest<T>> requests,
+            Response<B> batchResponse) {
+        if (batchResponse.getStatus() != ResponseStatus.SUCCESS) {
+            executions.forEach(execution -> execution.complete(
+                    response -> response.setStatus(batchResponse.getStatus(), batchResponse.getMessage(), batchResponse.getThrowable())));
+            return;
+        }
+
+        List<T> payloads;
+        try {
+            payloads = batchMapper.split(batchResponse.getResponsePayload(), requests);
+            if (payloads.size() != requests.size()) {
+                throw new IllegalStateException("Got '" + payloads.size() + "' responses for a batch of '" + requests.size() + "' requests.");
+            }
+        } catch (Throwable t) {
+            executions.forEach(execution -> execution.fail(t));
+            return;
+        }
+        for (int i = 0; i < executions.size(); i++) {
+            T payload = payloads.get(i);
+            executions.get(i).complete(response -> response.set(payload));
+        }
+    }
+
+    private <T> Response<T> executeAsyncViaGuard(AbortableRequest<T> request) {
         try {
             executorServiceRepository.getAsyncExecutor(request).executeAsync(request, this);
         } catch (RejectedExecutionException e) {
@@ -105,27 +382,118 @@ public class RequestDispatcher {
      * @throws ServerException
      */
     public <T> Response<T> execute(AbortableRequest<T> request) throws ServerException {
+        RoutingTable.Route route = getRoute(request);
+        if (route.getMicroBatcher() != null) {
+            return awaitBatched(request, route);
+        }
+
+        String coalescingKey = route.isCoalescing() ? requestCoalescer.getKey(request) : null;
+        if (coalescingKey == null) {
+            return doExecute(request, route);
+        }
+
+        Response<?> leader = requestCoalescer.join(coalescingKey, request.getResponse());
+        if (leader != null) {
+            return follow(request, leader);
+        }
+        try {
+            return doExecute(request, route);
+        } finally {
+            requestCoalescer.leave(coalescingKey, request.getResponse());
+        }
+    }
+
+    private <T> Response<T> awaitBatched(AbortableRequest<T> request, RoutingTable.Route route) {
+        Response<T> response = executeBatched(request, route);
+        TimeOut timeOut = request.getTimeOut();
+        try {
+            if (!response.await(timeOut.getDuration(), timeOut.getUnit())) {
+                // The timer is about to time out the request, do not wait for it.
+                response.abort();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            response.abort();
+        }
+        return response;
+    }
+
+    private <T> Response<T> follow(AbortableRequest<T> request, Response<?> leader) {
+        Response<T> response = request.getResponse();
+        try {
+            requestCoalescer.follow(request, leader);
+        } catch (InterruptedException e) {
+            response.setStatus(ResponseStatus.INTERNAL_FAILURE, "Interrupted", e);
+        } catch (Throwable t) {
+            response.setStatus(ResponseStatus.INTERNAL_FAILURE, "Unexpected exception", t);
+        } finally {
+            request.finish();
+        }
+        return response;
+    }
+
+    private <T> Response<T> doExecute(AbortableRequest<T> request, RoutingTable.Route route) throws ServerException {
         Response<T> response = request.getResponse();
 
+        CircuitBreaker circuitBreaker = route.getCircuitBreaker();
+        if (circuitBreaker != null && !circuitBreaker.tryAcquirePermission()) {
+            // The backend is failing, short circuit.
+            request.reject();
+            request.finish();
+            return response;
+        }
+
         try {
-            HawaiiExecutor executor = executorServiceRepository.getExecutor(request);
+            long waitNanos = reserveRateLimits(request, route.getRateLimiters(), true);
+            if (waitNanos > 0L) {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            }
+
+            HawaiiExecutor executor = route.getExecutor();
 
             notifyListeners(request, executor);
 
 
-            FutureTask<T> task = executor.execute(request, response);
+            HedgingPolicy hedgingPolicy = route.getHedgingPolicy();
+            RetryPolicy retryPolicy = hedgingPolicy == null ? route.getRetryPolicy() : null;
+            if (hedgingPolicy != null) {
+                new HedgedExecution<>(executor, request, hedgingPolicy, executorServiceRepository.getHedgeBudget(executor.getName())).execute();
+            } else if (retryPolicy != null) {
+                new RetryingExecution<>(executor, request, retryPolicy, route.getRetryBudget()).execute();
+            } else if (!executor.isCallerRuns() || !executeOnCaller(executor, request, response)) {
+                // The time out is scheduled before the task is submitted, so a stopped timer rejects the request before it runs.
+                TimeOut timeOut = request.getTimeOut();
+                AtomicReference<FutureTask<T>> submitted = new AtomicReference<>();
+                TimerWheel.Handle timeOutTask = timer.schedule(() -> {
+                    FutureTask<T> task = submitted.get();
+                    if (task != null) {
+                        executor.cancel(task);
+                    }
+                }, timeOut.getDuration(), timeOut.getUnit());
+                try {
+                    FutureTask<T> task = executor.execute(request, response);
+                    submitted.set(task);
 
-            /*
-             * Block until data is retrieved, but with a time out.
-             */
-            TimeOut timeOut = request.getTimeOut();
-            task.get(timeOut.getDuration(), timeOut.getUnit());
+                    /*
+                     * Block until data is retrieved. The timer cancels the task at the time out, which releases this thread. The wait
+                     * is bounded as well (a few ticks later), in case the timer stalls.
+                     */
+                    try {
+                        task.get(timeOut.getUnit().toNanos(timeOut.getDuration()) + TIMER_GRACE_NANOS, TimeUnit.NANOSECONDS);
+                    } catch (TimeoutException e) {
+                        executor.cancel(task);
+                        throw e;
+                    }
+                } finally {
+                    timeOutTask.cancel();
+                }
+            }
 
         } catch (RejectedExecutionException e) {
-            // Executor is too busy (no threads available nor is there a place in the queue).
+            // Executor is too busy (no threads available nor is there a place in the queue) or the rate limit has been reached.
             request.reject();
-        } catch (TimeoutException e) {
-            // The task.get( ... ) is timed out. The execution takes too long.
+        } catch (CancellationException | TimeoutException e) {
+            // The task is cancelled (or timed out) by the timer. The execution takes too long.
             request.abort();
         } catch (InterruptedException e) {
             // ..
@@ -137,12 +505,85 @@ public class RequestDispatcher {
             // Catches all exceptions outside the executor
             response.setStatus(ResponseStatus.INTERNAL_FAILURE, "Unexpected exception", t);
         } finally {
+            if (circuitBreaker != null) {
+                circuitBreaker.onResult(response.getStatus());
+            }
             request.finish();
         }
 
         return response;
     }
 
+    /**
+     * Execute the request on the calling thread, the timer aborts the request at its time out.
+     *
+     * @return false if the request has to be executed by a thread of the executor, see
+     *         {@link HawaiiExecutor#executeOnCaller(AbortableRequest, Response)}.
+     */
+    private <T> boolean executeOnCaller(HawaiiExecutor executor, AbortableRequest<T> request, Response<T> response) throws Exception {
+        AtomicBoolean done = new AtomicBoolean(false);
+        CountDownLatch aborted = new CountDownLatch(1);
+        TimeOut timeOut = request.getTimeOut();
+        TimerWheel.Handle abortTask = timer.schedule(() -> {
+            if (done.compareAndSet(false, true)) {
+                try {
+                    request.abort();
+                } finally {
+                    aborted.countDown();
+                }
+            }
+        }, timeOut.getDuration(), timeOut.getUnit());
+
+        FutureTask<T> task;
+        try {
+            task = executor.executeOnCaller(request, response);
+        } finally {
+            abortTask.cancel();
+        }
+
+        if (!done.compareAndSet(false, true)) {
+            // The timer aborted the request, wait until it is done with it.
+            aborted.await();
+            return true;
+        }
+        if (task == null) {
+            return false;
+        }
+        task.get();
+        return true;
+    }
+
+    /**
+     * Reserve a token of each rate limiter of the request. The tokens are reserved on all limiters first, if one of them rejects the
+     * request the tokens already reserved are given back. The request may wait for its tokens only if allowed and at most its remaining
+     * time.
+     *
+     * @return the time in nanoseconds the request has to wait for its tokens before it is executed
+     * @throws RejectedExecutionException if a rate limiter rejects the request
+     */
+    private <T> long reserveRateLimits(AbortableRequest<T> request, List<RateLimiter> rateLimiters, boolean wait) {
+        if (rateLimiters.isEmpty()) {
+            return 0L;
+        }
+        long maxWaitNanos = 0L;
+        if (wait) {
+            Deadline deadline = request.getDeadline();
+            TimeOut timeOut = request.getTimeOut();
+            maxWaitNanos = deadline != null ? deadline.remaining(TimeUnit.NANOSECONDS) : timeOut.getUnit().toNanos(timeOut.getDuration());
+        }
+        long waitNanos = 0L;
+        for (int i = 0; i < rateLimiters.size(); i++) {
+            long reserved = rateLimiters.get(i).reserve(maxWaitNanos, TimeUnit.NANOSECONDS);
+            if (reserved < 0L) {
+                for (int j = 0; j < i; j++) {
+                    rateLimiters.get(j).release();
+                }
+                throw new RejectedExecutionException("The " + rateLimiters.get(i) + " has been reached.");
+            }
+            waitNanos = Math.max(waitNanos, reserved);
+        }
+        return waitNanos;
+    }
 
 
     private <T> void notifyListeners(AbortableRequest<T> request, HawaiiExecutor executor) {
@@ -0,0 +1,213 @@
+/**
+ * Copyright 2014-2018 Q24
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kahu.hawaii.util.call.dispatch;
+
+import io.kahu.hawaii.util.call.AbortableRequest;
+import io.kahu.hawaii.util.call.Response;
+import org.apache.http.annotation.ThreadSafe;
+
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes the responses of the requests of a {@link RequestFactory} with backpressure: a request is only executed once the subscriber
+ * asked for its response, and at most 'concurrency' requests are in flight. So a large request set streams through the queues instead of
+ * flooding them (see {@link RequestDispatcher#execute(RequestFactory, boolean)}, which submits all requests at once).
+ *
+ * The subscriber and subscription follow the contract of the Reactive Streams / java.util.concurrent.Flow interfaces. Responses are
+ * published in the order the requests complete, also the responses of failed requests (check the status). The requests are executed
+ * asynchronously, the subscriber is signalled on the thread that completes a request (or on the thread that asks for more). That can be
+ * the thread that times out all requests of the dispatcher, so onNext must not block.
+ *
+ * A publisher can be subscribed to once. Cancelling the subscription cancels the requests in flight (see {@link Response#cancel()}).
+ */
+@ThreadSafe
+public class ResponsePublisher<T> {
+    private final RequestDispatcher dispatcher;
+    private final RequestFactory<T> requestFactory;
+    private final int concurrency;
+    private final AtomicBoolean subscribed = new AtomicBoolean(false);
+
+    ResponsePublisher(RequestDispatcher dispatcher, RequestFactory<T> requestFactory, int concurrency) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("The concurrency must be at least 1.");
+        }
+        this.dispatcher = dispatcher;
+        this.requestFactory = requestFactory;
+        this.concurrency = concurrency;
+    }
+
+    public void subscribe(Subscriber<? super Response<T>> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("The subscriber is null.");
+        }
+        if (!subscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(new Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException("The responses of a request factory can only be published once."));
+            return;
+        }
+        ResponseSubscription subscription = new ResponseSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+    }
+
+    /**
+     * Receives the responses, see java.util.concurrent.Flow.Subscriber.
+     */
+    public interface Subscriber<R> {
+        void onSubscribe(Subscription subscription);
+
+        void onNext(R item);
+
+        void onError(Throwable throwable);
+
+        void onComplete();
+    }
+
+    /**
+     * See java.util.concurrent.Flow.Subscription.
+     */
+    public interface Subscription {
+        /**
+         * Ask for (at most) n more responses, n must be positive.
+         */
+        void request(long n);
+
+        /**
+         * Stop publishing, the requests in flight are cancelled.
+         */
+        void cancel();
+    }
+
+    private final class ResponseSubscription implements Subscription {
+        private final Subscriber<? super Response<T>> subscriber;
+        private final AtomicLong requested = new AtomicLong(0L);
+        private final AtomicInteger wip = new AtomicInteger(0);
+        private final Queue<Response<T>> done = new ConcurrentLinkedQueue<>();
+        private final Set<Response<T>> inFlight = ConcurrentHashMap.newKeySet();
+        private volatile boolean cancelled = false;
+        private volatile Throwable error;
+
+        // Only used by the thread in drain().
+        private long started = 0L;
+        private int executing = 0;
+        private boolean exhausted = false;
+
+        private ResponseSubscription(Subscriber<? super Response<T>> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0L) {
+                error = new IllegalArgumentException("The number of requested responses must be positive, not '" + n + "'.");
+            } else {
+                requested.accumulateAndGet(n, (current, more) -> current + more < 0L ? Long.MAX_VALUE : current + more);
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            drain();
+        }
+
+        /**
+         * Publish the completed responses and start new requests as far as the demand and the concurrency allow. Only one thread drains at
+         * a time, a thread that finds another one draining leaves the work to that thread.
+         */
+        private void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                if (!cancelled && error == null) {
+                    publish();
+                }
+                if (!cancelled && error != null) {
+                    cancelled = true;
+                    subscriber.onError(error);
+                }
+                if (cancelled) {
+                    inFlight.forEach(Response::cancel);
+                    inFlight.clear();
+                    done.clear();
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void publish() {
+            Response<T> response;
+            while (!cancelled && (response = done.poll()) != null) {
+                executing--;
+                try {
+                    subscriber.onNext(response);
+                } catch (Throwable t) {
+                    // A subscriber may not throw, consider the subscription cancelled.
+                    cancelled = true;
+                    return;
+                }
+            }
+
+            try {
+                // Each request started reserves one requested response, so responses never have to wait for demand.
+                while (!cancelled && !exhausted && executing < concurrency && started < requested.get()) {
+                    AbortableRequest<T> request = requestFactory.getNextRequest();
+                    if (request == null) {
+                        exhausted = true;
+                        break;
+                    }
+                    started++;
+                    executing++;
+                    response = dispatcher.executeAsync(request);
+                    inFlight.add(response);
+                    response.onComplete(this::completed);
+                }
+            } catch (Throwable t) {
+                error = t;
+                return;
+            }
+
+            if (!cancelled && exhausted && executing == 0) {
+                // Completed, no more signals.
+                cancelled = true;
+                subscriber.onComplete();
+            }
+        }
+
+        private void completed(Response<T> response) {
+            if (inFlight.remove(response)) {
+                done.add(response);
+                drain();
+            }
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyright 2014-2018 Q24
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kahu.hawaii.util.call.dispatch;
+
+import io.kahu.hawaii.util.call.AbortableRequest;
+import io.kahu.hawaii.util.call.TimeOut;
+import io.kahu.hawaii.util.call.dispatch.limit.TokenBudget;
+import io.kahu.hawaii.util.call.dispatch.retry.RetryPolicy;
+import org.apache.http.annotation.NotThreadSafe;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Executes a request with retries. The request itself is not executed, copies of it are: one per attempt. An attempt with a retryable
+ * response is logged and followed by another attempt after a backoff, as long as the retry policy, the retry budget of the backend system
+ * and the time out of the request allow it. The response of the last attempt is copied into the response of the request.
+ *
+ * Requests that cannot be copied are executed without retries.
+ */
+@NotThreadSafe
+class RetryingExecution<T> {
+    private final HawaiiExecutor executor;
+    private final AbortableRequest<T> request;
+    private final RetryPolicy policy;
+    private final TokenBudget budget;
+
+    RetryingExecution(HawaiiExecutor executor, AbortableRequest<T> request, RetryPolicy policy, TokenBudget budget) {
+        this.executor = executor;
+        this.request = request;
+        this.policy = policy;
+        this.budget = budget;
+    }
+
+    /**
+     * Same contract as FutureTask#get(long, TimeUnit) with the time out of the request.
+     */
+    void execute() throws InterruptedException, ExecutionException, TimeoutException {
+        TimeOut timeOut = request.getTimeOut();
+        AbortableRequest<T> attempt = request.copy();
+        if (attempt == null) {
+            executor.execute(request, request.getResponse()).get(timeOut.getDuration(), timeOut.getUnit());
+            return;
+        }
+
+        long deadline = System.nanoTime() + timeOut.getUnit().toNanos(timeOut.getDuration());
+        budget.onRequest();
+        request.getStatistic().startBackendRequest();
+        int number = 1;
+        try {
+            while (true) {
+                attempt.getStatistic().setAttempt(number);
+                FutureTask<T> task = executor.execute(attempt, attempt.getResponse());
+                if (number == 1) {
+                    request.setQueueStatistic(attempt.getStatistic().getQueueStatistic());
+                }
+                try {
+                    task.get(remaining(deadline), TimeUnit.NANOSECONDS);
+                } catch (TimeoutException e) {
+                    executor.cancel(task);
+                    attempt.cancel();
+                    throw e;
+                }
+
+                if (number >= policy.getMaxAttempts() || !policy.isRetryable(attempt.getResponse())) {
+                    break;
+                }
+                long backoff = TimeUnit.MILLISECONDS.toNanos(policy.getBackoff(number));
+                if (backoff >= remaining(deadline) || !budget.tryAcquire()) {
+                    break;
+                }
+
+                // The failed attempt is logged on its own.
+                attempt.finish();
+                TimeUnit.NANOSECONDS.sleep(backoff);
+                attempt = request.copy();
+                number++;
+            }
+        } finally {
+            request.getStatistic().endBackendRequest();
+            request.getStatistic().setAttempt(number);
+        }
+
+        request.getResponse().copy(attempt.getResponse());
+        request.doCallback();
+    }
+
+    private long remaining(long deadline) {
+        return Math.max(0L, deadline - System.nanoTime());
+    }
+}
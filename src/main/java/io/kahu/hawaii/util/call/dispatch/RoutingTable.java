@@ -0,0 +1,310 @@
+/**
+ * Copyright 2014-2018 Q24
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kahu.hawaii.util.call.dispatch;
+
+import io.kahu.hawaii.util.call.RequestContext;
+import io.kahu.hawaii.util.call.TimeOut;
+import io.kahu.hawaii.util.call.configuration.RequestConfiguration;
+import io.kahu.hawaii.util.call.configuration.RequestConfigurations;
+import io.kahu.hawaii.util.call.dispatch.circuit.CircuitBreaker;
+import io.kahu.hawaii.util.call.dispatch.hedge.HedgingPolicy;
+import io.kahu.hawaii.util.call.dispatch.limit.RateLimiter;
+import io.kahu.hawaii.util.call.dispatch.limit.TokenBudget;
+import io.kahu.hawaii.util.call.dispatch.retry.RetryPolicy;
+import org.apache.http.annotation.Immutable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Routes calls to their executor and resolves everything else the dispatcher needs to know about a call: its time out, circuit breaker,
+ * rate limiters, hedging and retry policy, micro batcher and whether it is coalesced. The table is built from a snapshot of the
+ * configuration whenever the configuration changes and is never changed afterwards, so dispatching a call takes one lookup and no locks.
+ *
+ * The route of a call combines the configuration of the call with the one of its backend system. It is resolved the first time the call
+ * is dispatched and kept in the table.
+ */
+@Immutable
+public final class RoutingTable {
+    private final Map<String, RequestConfiguration> configurations;
+    private final Map<String, HawaiiExecutor> executors;
+    private final Map<String, HawaiiExecutor> systemExecutors;
+    private final HawaiiExecutor defaultExecutor;
+    private final RequestConfigurations requestConfigurations;
+    private final Map<String, Route> routes = new ConcurrentHashMap<>();
+
+    private RoutingTable(Map<String, RequestConfiguration> configurations, Map<String, HawaiiExecutor> executors,
+            Map<String, HawaiiExecutor> systemExecutors, HawaiiExecutor defaultExecutor, RequestConfigurations requestConfigurations) {
+        this.configurations = configurations;
+        this.executors = executors;
+        this.systemExecutors = systemExecutors;
+        this.defaultExecutor = defaultExecutor;
+        this.requestConfigurations = requestConfigurations;
+    }
+
+    /**
+     * @param executors the executors by name
+     * @param defaultExecutors the name of the default executor by backend system
+     * @param requestConfigurations the configurations of the calls and backend systems (may be null)
+     */
+    static RoutingTable build(Map<String, HawaiiExecutor> executors, Map<String, String> defaultExecutors,
+            RequestConfigurations requestConfigurations) {
+        Map<String, HawaiiExecutor> executorsCopy = new HashMap<>(executors);
+        HawaiiExecutor defaultExecutor = executorsCopy.get(ExecutorRepository.DEFAULT_EXECUTOR_NAME);
+
+        Map<String, HawaiiExecutor> systemExecutors = new HashMap<>();
+        for (Map.Entry<String, String> entry : defaultExecutors.entrySet()) {
+            HawaiiExecutor executor = executorsCopy.get(entry.getValue());
+            if (executor != null) {
+                systemExecutors.put(entry.getKey(), executor);
+            }
+        }
+
+        Map<String, RequestConfiguration> configurations = new HashMap<>();
+        if (requestConfigurations != null) {
+            for (Map.Entry<String, RequestConfiguration> entry : requestConfigurations.getConfigurations().entrySet()) {
+                configurations.put(entry.getKey(), entry.getValue().snapshot());
+            }
+        }
+
+        return new RoutingTable(configurations, executorsCopy, systemExecutors, defaultExecutor, requestConfigurations);
+    }
+
+    /**
+     * @return the route of the call, never null.
+     */
+    public Route getRoute(RequestContext<?> context) {
+        // The name of the call is kept by its context.
+        String callName = context.toString();
+        Route route = routes.get(callName);
+        if (route == null) {
+            route = routes.computeIfAbsent(callName, name -> resolve(context.getBackendSystem(), name));
+        }
+        if (route.configured || context.getExecutorName() == null) {
+            return route;
+        }
+        // A call that is not configured can set its queue in its request context.
+        HawaiiExecutor executor = executors.get(context.getExecutorName());
+        return executor == null ? route : new Route(route, executor);
+    }
+
+    /**
+     * @return the executor of the call. In order: the queue configured for the call, the queue set in the context of a call that is not
+     * configured, the default queue of the backend system and the 'default' queue.
+     */
+    public HawaiiExecutor getExecutor(RequestContext<?> context) {
+        return getRoute(context).getExecutor();
+    }
+
+    private Route resolve(String system, String callName) {
+        RequestConfiguration call = configurations.get(callName);
+        RequestConfiguration systemConfiguration = configurations.get(system);
+
+        HawaiiExecutor executor = call == null || call.getExecutorName() == null ? null : executors.get(call.getExecutorName());
+        if (executor == null) {
+            executor = systemExecutors.get(system);
+        }
+        if (executor == null) {
+            executor = defaultExecutor;
+        }
+
+        CircuitBreaker circuitBreaker = call == null ? null : call.getCircuitBreaker();
+        RetryPolicy retryPolicy = call == null ? null : call.getRetryPolicy();
+        boolean coalescing = call != null && call.isCoalescing();
+        List<RateLimiter> rateLimiters = new ArrayList<>(2);
+        if (call != null && call.getRateLimiter() != null) {
+            rateLimiters.add(call.getRateLimiter());
+        }
+        if (systemConfiguration != null) {
+            if (circuitBreaker == null) {
+                circuitBreaker = systemConfiguration.getCircuitBreaker();
+            }
+            if (retryPolicy == null) {
+                retryPolicy = systemConfiguration.getRetryPolicy();
+            }
+            coalescing |= systemConfiguration.isCoalescing();
+            if (systemConfiguration.getRateLimiter() != null) {
+                rateLimiters.add(systemConfiguration.getRateLimiter());
+            }
+        }
+        TokenBudget retryBudget = null;
+        if (retryPolicy != null) {
+            retryBudget = systemConfiguration == null ? null : systemConfiguration.getRetryBudget();
+            if (retryBudget == null) {
+                retryBudget = requestConfigurations.getDefaultRetryBudget(system);
+            }
+        }
+
+        Route route = new Route(call != null, executor, call == null ? null : call.getTimeOut());
+        route.circuitBreaker = circuitBreaker;
+        route.rateLimiters = rateLimiters.isEmpty() ? Collections.emptyList() : Collections.unmodifiableList(rateLimiters);
+        route.waitingForRateLimit = rateLimiters.stream().anyMatch(RateLimiter::isWaiting);
+        route.hedgingPolicy = call == null ? null : call.getHedgingPolicy();
+        route.retryPolicy = retryPolicy;
+        route.retryBudget = retryBudget;
+        route.batchMapper = call == null ? null : call.getBatchMapper();
+        route.microBatcher = route.batchMapper == null ? null : call.getMicroBatcher();
+        route.coalescing = coalescing;
+        route.forwardingDeadline = systemConfiguration != null && systemConfiguration.isForwardingDeadline();
+        return route;
+    }
+
+    /**
+     * @return the configured routes (call name to queue and time out), for monitoring.
+     */
+    public Map<String, String> getRoutes() {
+        Map<String, String> description = new TreeMap<>();
+        for (Map.Entry<String, RequestConfiguration> entry : configurations.entrySet()) {
+            String executorName = entry.getValue().getExecutorName();
+            TimeOut timeOut = entry.getValue().getTimeOut();
+            description.put(entry.getKey(), "queue '" + (executorName == null ? "<system default>" : executorName) + "' time out '"
+                    + (timeOut == null ? "<default>" : timeOut) + "'");
+        }
+        return Collections.unmodifiableMap(description);
+    }
+
+    /**
+     * Everything configured for a call, resolved from the configuration of the call and the one of its backend system.
+     */
+    @Immutable
+    public static final class Route {
+        private final boolean configured;
+        private final HawaiiExecutor executor;
+        private final TimeOut timeOut;
+        // Only set while the route is resolved.
+        private CircuitBreaker circuitBreaker;
+        private List<RateLimiter> rateLimiters;
+        private boolean waitingForRateLimit;
+        private HedgingPolicy hedgingPolicy;
+        private RetryPolicy retryPolicy;
+        private TokenBudget retryBudget;
+        private MicroBatcher microBatcher;
+        private BatchMapper<?, ?> batchMapper;
+        private boolean coalescing;
+        private boolean forwardingDeadline;
+
+        private Route(boolean configured, HawaiiExecutor executor, TimeOut timeOut) {
+            this.configured = configured;
+            this.executor = executor;
+            this.timeOut = timeOut;
+        }
+
+        private Route(Route route, HawaiiExecutor executor) {
+            this(route.configured, executor, route.timeOut);
+            this.circuitBreaker = route.circuitBreaker;
+            this.rateLimiters = route.rateLimiters;
+            this.waitingForRateLimit = route.waitingForRateLimit;
+            this.hedgingPolicy = route.hedgingPolicy;
+            this.retryPolicy = route.retryPolicy;
+            this.retryBudget = route.retryBudget;
+            this.microBatcher = route.microBatcher;
+            this.batchMapper = route.batchMapper;
+            this.coalescing = route.coalescing;
+            this.forwardingDeadline = route.forwardingDeadline;
+        }
+
+        /**
+         * @return the executor of the call.
+         */
+        public HawaiiExecutor getExecutor() {
+            return executor;
+        }
+
+        /**
+         * @return the configured time out, null if the time out of the request context is used.
+         */
+        public TimeOut getTimeOut() {
+            return timeOut;
+        }
+
+        /**
+         * @return the circuit breaker of the call or else of its backend system, null if there is none.
+         */
+        public CircuitBreaker getCircuitBreaker() {
+            return circuitBreaker;
+        }
+
+        /**
+         * @return the rate limiters a request has to pass, the one of the call (if any) followed by the one of the backend system (if any).
+         */
+        public List<RateLimiter> getRateLimiters() {
+            return rateLimiters;
+        }
+
+        /**
+         * @return true if a rate limiter of the call lets requests wait for a token.
+         */
+        public boolean isWaitingForRateLimit() {
+            return waitingForRateLimit;
+        }
+
+        /**
+         * @return the hedging policy of the call, null if the call is not hedged.
+         */
+        public HedgingPolicy getHedgingPolicy() {
+            return hedgingPolicy;
+        }
+
+        /**
+         * @return the retry policy of the call or else of its backend system, null if the call is not retried.
+         */
+        public RetryPolicy getRetryPolicy() {
+            return retryPolicy;
+        }
+
+        /**
+         * @return the retry budget of the backend system, null if the call is not retried.
+         */
+        public TokenBudget getRetryBudget() {
+            return retryBudget;
+        }
+
+        /**
+         * @return the micro batcher of the call, null if the call is not batched (no micro batcher or no batch mapper is set).
+         */
+        public MicroBatcher getMicroBatcher() {
+            return microBatcher;
+        }
+
+        public BatchMapper<?, ?> getBatchMapper() {
+            return batchMapper;
+        }
+
+        /**
+         * @return true if identical requests in flight are coalesced, either for the call or for the whole backend system.
+         */
+        public boolean isCoalescing() {
+            return coalescing;
+        }
+
+        /**
+         * @return true if the time left until the deadline of a request is sent to the backend system.
+         */
+        public boolean isForwardingDeadline() {
+            return forwardingDeadline;
+        }
+
+        @Override
+        public String toString() {
+            return "queue '" + (executor == null ? "<none>" : executor.getName()) + "' time out '" + (timeOut == null ? "<default>" : timeOut) + "'";
+        }
+    }
+}
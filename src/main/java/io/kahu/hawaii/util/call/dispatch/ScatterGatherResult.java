@@ -0,0 +1,72 @@
+/**
+ * Copyright 2014-2018 Q24
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kahu.hawaii.util.call.dispatch;
+
+import io.kahu.hawaii.util.call.Response;
+import io.kahu.hawaii.util.call.ResponseStatus;
+import org.apache.http.annotation.NotThreadSafe;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The result of a scatter-gather, see {@link RequestDispatcher#scatterGather(List, io.kahu.hawaii.util.call.TimeOut, int)}.
+ * @param <T>
+ */
+@NotThreadSafe
+public class ScatterGatherResult<T> {
+    private final List<Response<T>> responses;
+    private final List<Response<T>> completed;
+    private final boolean deadlinePassed;
+
+    public ScatterGatherResult(List<Response<T>> responses, List<Response<T>> completed, boolean deadlinePassed) {
+        this.responses = Collections.unmodifiableList(responses);
+        this.completed = Collections.unmodifiableList(completed);
+        this.deadlinePassed = deadlinePassed;
+    }
+
+    /**
+     * @return the responses of all requests, in the order of the requests. The responses of requests that did not complete in time are
+     * cancelled (and may not be done yet).
+     */
+    public List<Response<T>> getResponses() {
+        return responses;
+    }
+
+    /**
+     * @return the responses of the requests that completed in time, in the order of completion.
+     */
+    public List<Response<T>> getCompleted() {
+        return completed;
+    }
+
+    public int getNumberOfSuccesses() {
+        int successes = 0;
+        for (Response<T> response : completed) {
+            if (response.getStatus() == ResponseStatus.SUCCESS) {
+                successes++;
+            }
+        }
+        return successes;
+    }
+
+    /**
+     * @return true if the deadline passed before all (or the requested number of successful) requests completed.
+     */
+    public boolean isDeadlinePassed() {
+        return deadlinePassed;
+    }
+}
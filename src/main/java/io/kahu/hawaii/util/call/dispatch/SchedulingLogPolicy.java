@@ -0,0 +1,126 @@
+/**
+ * Copyright 2014-2018 Q24
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kahu.hawaii.util.call.dispatch;
+
+import io.kahu.hawaii.util.call.TimeOut;
+import org.apache.http.annotation.ThreadSafe;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides which scheduling events of a queue are logged, see {@link SchedulingLogger}.
+ */
+@ThreadSafe
+public final class SchedulingLogPolicy {
+    public enum Mode {
+        /**
+         * Log each scheduled request (the default).
+         */
+        ALL,
+        /**
+         * Log nothing.
+         */
+        OFF,
+        /**
+         * Log one in 'rate' scheduled requests (at random).
+         */
+        SAMPLED,
+        /**
+         * Log a scheduled request only if the number of pending or active tasks reached its threshold.
+         */
+        THRESHOLD,
+        /**
+         * Log a summary of the scheduled requests once per interval.
+         */
+        SUMMARY
+    }
+
+    private static final SchedulingLogPolicy ALL = new SchedulingLogPolicy(Mode.ALL, 1, 0, 0, 0L);
+    private static final SchedulingLogPolicy OFF = new SchedulingLogPolicy(Mode.OFF, 1, 0, 0, 0L);
+
+    private final Mode mode;
+    private final int rate;
+    private final int pendingThreshold;
+    private final int activeThreshold;
+    private final long intervalNanos;
+
+    private SchedulingLogPolicy(Mode mode, int rate, int pendingThreshold, int activeThreshold, long intervalNanos) {
+        this.mode = mode;
+        this.rate = rate;
+        this.pendingThreshold = pendingThreshold;
+        this.activeThreshold = activeThreshold;
+        this.intervalNanos = intervalNanos;
+    }
+
+    public static SchedulingLogPolicy all() {
+        return ALL;
+    }
+
+    public static SchedulingLogPolicy off() {
+        return OFF;
+    }
+
+    public static SchedulingLogPolicy sampled(int rate) {
+        assert rate > 0 : "The sample rate must be positive.";
+        return new SchedulingLogPolicy(Mode.SAMPLED, rate, 0, 0, 0L);
+    }
+
+    /**
+     * @param pendingThreshold the number of pending tasks from which requests are logged, 0 to ignore pending tasks.
+     * @param activeThreshold the number of active tasks from which requests are logged, 0 to ignore active tasks.
+     */
+    public static SchedulingLogPolicy threshold(int pendingThreshold, int activeThreshold) {
+        return new SchedulingLogPolicy(Mode.THRESHOLD, 1, pendingThreshold, activeThreshold, 0L);
+    }
+
+    public static SchedulingLogPolicy summary(TimeOut interval) {
+        return new SchedulingLogPolicy(Mode.SUMMARY, 1, 0, 0, interval.getUnit().toNanos(interval.getDuration()));
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public int getRate() {
+        return rate;
+    }
+
+    public int getPendingThreshold() {
+        return pendingThreshold;
+    }
+
+    public int getActiveThreshold() {
+        return activeThreshold;
+    }
+
+    public long getInterval(TimeUnit unit) {
+        return unit.convert(intervalNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public String toString() {
+        switch (mode) {
+            case SAMPLED:
+                return "sampled 1 in '" + rate + "'";
+            case THRESHOLD:
+                return "threshold pending '" + pendingThreshold + "' active '" + activeThreshold + "'";
+            case SUMMARY:
+                return "summary every '" + getInterval(TimeUnit.SECONDS) + "' sec";
+            default:
+                return mode.name().toLowerCase();
+        }
+    }
+}
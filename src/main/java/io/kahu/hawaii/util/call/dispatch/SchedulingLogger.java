@@ -0,0 +1,135 @@
+/**
+ * Copyright 2014-2018 Q24
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kahu.hawaii.util.call.dispatch;
+
+import io.kahu.hawaii.util.call.AbortableRequest;
+import io.kahu.hawaii.util.call.statistics.QueueStatistic;
+import io.kahu.hawaii.util.logger.CoreLoggers;
+import io.kahu.hawaii.util.logger.LogManager;
+import io.kahu.hawaii.util.logger.LoggingContext;
+import org.apache.http.annotation.ThreadSafe;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Logs the scheduling of a request on an executor, together with the statistics of its queue, as far as its
+ * {@link SchedulingLogPolicy} allows. The logging context is only touched for events that are actually logged.
+ */
+@ThreadSafe
+class SchedulingLogger {
+    private final LogManager logManager;
+    private volatile SchedulingLogPolicy policy = SchedulingLogPolicy.all();
+
+    private final LongAdder scheduled = new LongAdder();
+    private final LongAccumulator maxPending = new LongAccumulator(Math::max, 0L);
+    private final LongAccumulator maxActive = new LongAccumulator(Math::max, 0L);
+    private final AtomicLong nextSummary = new AtomicLong(System.nanoTime());
+
+    SchedulingLogger(LogManager logManager) {
+        this.logManager = logManager;
+    }
+
+    void setPolicy(SchedulingLogPolicy policy) {
+        this.policy = policy;
+        nextSummary.set(System.nanoTime() + policy.getInterval(TimeUnit.NANOSECONDS));
+    }
+
+    SchedulingLogPolicy getPolicy() {
+        return policy;
+    }
+
+    <T> void logScheduleStart(AbortableRequest<T> request, QueueStatistic queueStatistics) {
+        SchedulingLogPolicy current = policy;
+        switch (current.getMode()) {
+            case OFF:
+                return;
+            case SAMPLED:
+                if (ThreadLocalRandom.current().nextInt(current.getRate()) == 0) {
+                    log(request, queueStatistics);
+                }
+                return;
+            case THRESHOLD:
+                if (reached(queueStatistics.getQueueSize(), current.getPendingThreshold())
+                        || reached(queueStatistics.getActiveTaskCount(), current.getActiveThreshold())) {
+                    log(request, queueStatistics);
+                }
+                return;
+            case SUMMARY:
+                summarize(current, queueStatistics);
+                return;
+            default:
+                log(request, queueStatistics);
+        }
+    }
+
+    private boolean reached(int value, int threshold) {
+        return threshold > 0 && value >= threshold;
+    }
+
+    private <T> void log(AbortableRequest<T> request, QueueStatistic queueStatistics) {
+        try (LoggingContext.PopResource pushContext = logManager.pushContext()) {
+            putQueueStatistics(queueStatistics);
+
+            logManager.info(CoreLoggers.SERVER, "Scheduling " + (request.isAsync() ? "asynchronous " : "") + "request '" + request.getCallName() + "' with id '" + request.getId() + "'.");
+        }
+    }
+
+    /**
+     * Count the scheduled request, the summary is logged by the first request scheduled after the interval passed.
+     */
+    private void summarize(SchedulingLogPolicy current, QueueStatistic queueStatistics) {
+        scheduled.increment();
+        maxPending.accumulate(queueStatistics.getQueueSize());
+        maxActive.accumulate(queueStatistics.getActiveTaskCount());
+
+        long now = System.nanoTime();
+        long next = nextSummary.get();
+        long interval = current.getInterval(TimeUnit.NANOSECONDS);
+        if (now - next < 0 || !nextSummary.compareAndSet(next, now + interval)) {
+            return;
+        }
+        long elapsed = TimeUnit.NANOSECONDS.toSeconds(now - next + interval);
+
+        long count = scheduled.sumThenReset();
+        long pending = maxPending.getThenReset();
+        long active = maxActive.getThenReset();
+        try (LoggingContext.PopResource pushContext = logManager.pushContext()) {
+            putQueueStatistics(queueStatistics);
+            logManager.putContext("pool.task.pending.max", pending);
+            logManager.putContext("pool.task.active.max", active);
+
+            logManager.info(CoreLoggers.SERVER, "Scheduled '" + count + "' requests on queue '" + queueStatistics.getQueueName() + "' in the last '" + elapsed
+                    + "' sec.");
+        }
+    }
+
+    private void putQueueStatistics(QueueStatistic queueStatistics) {
+        logManager.putContext("queue.name", queueStatistics.getQueueName());
+
+        logManager.putContext("pool.size.current", queueStatistics.getPoolSize());
+        logManager.putContext("pool.size.max", queueStatistics.getMaximumPoolSize());
+        logManager.putContext("pool.size.largest", queueStatistics.getLargestPoolSize());
+        logManager.putContext("pool.task.pending", queueStatistics.getQueueSize());
+        logManager.putContext("pool.task.active", queueStatistics.getActiveTaskCount());
+        logManager.putContext("pool.task.completed", queueStatistics.getCompletedTaskCount());
+        logManager.putContext("pool.task.rejected", queueStatistics.getRejectedTaskCount());
+        logManager.putContext("pool.task.cancelled", queueStatistics.getCancelledTaskCount());
+    }
+}
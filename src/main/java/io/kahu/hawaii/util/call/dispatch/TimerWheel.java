@@ -0,0 +1,255 @@
+/**
+ * Copyright 2014-2018 Q24
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kahu.hawaii.util.call.dispatch;
+
+import io.kahu.hawaii.util.logger.CoreLoggers;
+import io.kahu.hawaii.util.logger.LogManager;
+import org.apache.http.annotation.ThreadSafe;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hashed wheel timer: a single thread that runs (short) tasks after a delay, for instance to time out requests.
+ *
+ * Scheduling and cancelling are O(1): new and cancelled tasks are queued and handed to the wheel by its thread once per tick, so callers
+ * never contend on the wheel itself. A task runs at most one tick late.
+ */
+@ThreadSafe
+public class TimerWheel {
+    private final String name;
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final long startTime;
+    private final LogManager logManager;
+
+    private final Queue<Handle> scheduled = new ConcurrentLinkedQueue<>();
+    private final Queue<Handle> cancelled = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger(0);
+    private final Thread worker;
+    private volatile boolean running = true;
+
+    // Only used by the worker thread.
+    private long tick = 0L;
+
+    /**
+     * @param tickDuration the duration of one tick, the precision of the timer
+     * @param ticksPerWheel the number of buckets of the wheel (rounded up to a power of two)
+     */
+    public TimerWheel(String name, long tickDuration, TimeUnit unit, int ticksPerWheel, LogManager logManager) {
+        this.name = name;
+        this.tickNanos = unit.toNanos(tickDuration);
+        int size = 1;
+        while (size < ticksPerWheel) {
+            size <<= 1;
+        }
+        this.wheel = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Bucket();
+        }
+        this.mask = size - 1;
+        this.logManager = logManager;
+        this.startTime = System.nanoTime();
+        this.worker = new HawaiiThreadFactory(name).newThread(this::run);
+        this.worker.start();
+    }
+
+    /**
+     * Run the task after the delay, on the thread of this timer.
+     *
+     * @throws RejectedExecutionException if the timer has been stopped.
+     */
+    public Handle schedule(Runnable task, long delay, TimeUnit unit) {
+        if (!running) {
+            throw new RejectedExecutionException("Timer '" + name + "' has been stopped.");
+        }
+        Handle handle = new Handle(this, task, System.nanoTime() + unit.toNanos(delay) - startTime);
+        pending.incrementAndGet();
+        scheduled.add(handle);
+        return handle;
+    }
+
+    /**
+     * @return the number of tasks scheduled that did not run yet and are not cancelled.
+     */
+    public int getPending() {
+        return pending.get();
+    }
+
+    /**
+     * Stop the timer, tasks that did not run yet never will.
+     */
+    public void stop() {
+        running = false;
+        LockSupport.unpark(worker);
+    }
+
+    private void run() {
+        while (running) {
+            long deadline = (tick + 1) * tickNanos;
+            long sleep = deadline - (System.nanoTime() - startTime);
+            if (sleep > 0) {
+                LockSupport.parkNanos(this, sleep);
+                continue;
+            }
+
+            removeCancelled();
+            transferScheduled();
+            wheel[(int) (tick & mask)].expire(deadline);
+            tick++;
+        }
+    }
+
+    private void removeCancelled() {
+        Handle handle;
+        while ((handle = cancelled.poll()) != null) {
+            if (handle.bucket != null) {
+                handle.bucket.remove(handle);
+            }
+        }
+    }
+
+    private void transferScheduled() {
+        Handle handle;
+        while ((handle = scheduled.poll()) != null) {
+            if (handle.state.get() != Handle.WAITING) {
+                continue;
+            }
+            long due = handle.deadline / tickNanos;
+            handle.remainingRounds = Math.max(0L, (due - tick) / wheel.length);
+            // Tasks that are overdue go in the current bucket.
+            wheel[(int) (Math.max(due, tick) & mask)].add(handle);
+        }
+    }
+
+    private void runTask(Handle handle) {
+        pending.decrementAndGet();
+        try {
+            handle.task.run();
+        } catch (Throwable t) {
+            logManager.warn(CoreLoggers.SERVER, "Task of timer '" + name + "' failed.", t);
+        }
+    }
+
+    /**
+     * A scheduled task.
+     */
+    @ThreadSafe
+    public static final class Handle {
+        private static final int WAITING = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+
+        private final TimerWheel timer;
+        private final Runnable task;
+        private final long deadline;
+        private final AtomicInteger state = new AtomicInteger(WAITING);
+
+        // Only used by the worker thread.
+        private long remainingRounds;
+        private Bucket bucket;
+        private Handle next;
+        private Handle previous;
+
+        private Handle(TimerWheel timer, Runnable task, long deadline) {
+            this.timer = timer;
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * @return true if the task was cancelled, false if it ran (or was cancelled) already.
+         */
+        public boolean cancel() {
+            if (!state.compareAndSet(WAITING, CANCELLED)) {
+                return false;
+            }
+            timer.pending.decrementAndGet();
+            timer.cancelled.add(this);
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+
+        public boolean isExpired() {
+            return state.get() == EXPIRED;
+        }
+    }
+
+    /**
+     * Doubly linked list of the handles of one slot of the wheel, only used by the worker thread.
+     */
+    private final class Bucket {
+        private Handle head;
+        private Handle tail;
+
+        private void add(Handle handle) {
+            handle.bucket = this;
+            if (head == null) {
+                head = handle;
+                tail = handle;
+            } else {
+                tail.next = handle;
+                handle.previous = tail;
+                tail = handle;
+            }
+        }
+
+        private void expire(long deadline) {
+            Handle handle = head;
+            while (handle != null) {
+                Handle next = handle.next;
+                if (handle.remainingRounds <= 0 && handle.deadline <= deadline) {
+                    remove(handle);
+                    if (handle.state.compareAndSet(Handle.WAITING, Handle.EXPIRED)) {
+                        runTask(handle);
+                    }
+                } else if (handle.state.get() == Handle.CANCELLED) {
+                    remove(handle);
+                } else {
+                    handle.remainingRounds--;
+                }
+                handle = next;
+            }
+        }
+
+        private void remove(Handle handle) {
+            if (handle.bucket != this) {
+                return;
+            }
+            if (handle.previous == null) {
+                head = handle.next;
+            } else {
+                handle.previous.next = handle.next;
+            }
+            if (handle.next == null) {
+                tail = handle.previous;
+            } else {
+                handle.next.previous = handle.previous;
+            }
+            handle.next = null;
+            handle.previous = null;
+            handle.bucket = null;
+        }
+    }
+}
@@ -0,0 +1,255 @@
+/**
+ * Copyright 2014-2018 Q24
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kahu.hawaii.util.call.dispatch;
+
+import io.kahu.hawaii.util.call.AbortableRequest;
+import io.kahu.hawaii.util.call.Response;
+import io.kahu.hawaii.util.call.statistics.QueueStatistic;
+import io.kahu.hawaii.util.call.statistics.QueueStatisticImpl;
+import io.kahu.hawaii.util.logger.CoreLoggers;
+import io.kahu.hawaii.util.logger.LogManager;
+import org.apache.http.annotation.ThreadSafe;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Executor that runs each task on its own (virtual) thread.
+ *
+ * Instead of a pool size and a queue, the number of tasks is limited by a semaphore. At most 'maxConcurrentRequests' tasks are running,
+ * 'maxPendingRequests' more tasks may wait for a permit. Tasks beyond that are rejected.
+ *
+ * Virtual threads require a JDK 21+ runtime. On older runtimes each task gets a new (daemon) platform thread, the limits still apply.
+ */
+@ThreadSafe
+public class VirtualThreadExecutor implements HawaiiExecutor, Executor {
+    private final String name;
+    private final int maxConcurrentRequests;
+    private final ExecutorService delegate;
+    private final SchedulingLogger schedulingLogger;
+    private final LogManager logManager;
+
+    private final Semaphore admitted;
+    private final Semaphore running;
+
+    private final AtomicInteger active = new AtomicInteger(0);
+    private final AtomicInteger pending = new AtomicInteger(0);
+    private final AtomicInteger largest = new AtomicInteger(0);
+    private final AtomicLong completed = new AtomicLong(0L);
+    private final AtomicLong rejected = new AtomicLong(0L);
+    private final AtomicLong cancelled = new AtomicLong(0L);
+    // The admitted tasks that wait for a permit. Either the thread of a task or a cancel removes it, only that one counts it.
+    private final Set<Runnable> waiting = ConcurrentHashMap.newKeySet();
+
+    public VirtualThreadExecutor(String name, int maxConcurrentRequests, int maxPendingRequests, LogManager logManager) {
+        this.name = name;
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        this.admitted = new Semaphore(maxConcurrentRequests + maxPendingRequests);
+        this.running = new Semaphore(maxConcurrentRequests);
+        this.schedulingLogger = new SchedulingLogger(logManager);
+        this.logManager = logManager;
+
+        ExecutorService virtual = newVirtualThreadPerTaskExecutor(name);
+        if (virtual == null) {
+            logManager.warn(CoreLoggers.SERVER, "Virtual threads are not supported by this JVM, queue '" + name + "' uses platform threads.");
+            virtual = Executors.newCachedThreadPool(new HawaiiThreadFactory(name));
+        }
+        this.delegate = virtual;
+    }
+
+    @Override
+    public void setSchedulingLogPolicy(SchedulingLogPolicy policy) {
+        schedulingLogger.setPolicy(policy);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void rejectTask() {
+        rejected.incrementAndGet();
+    }
+
+    public Long getRejectedTaskCount() {
+        return rejected.get();
+    }
+
+    public Long getCancelledTaskCount() {
+        return cancelled.get();
+    }
+
+    @Override
+    public QueueStatistic getQueueStatistic() {
+        int activeCount = active.get();
+        return new QueueStatisticImpl(name, activeCount, 0, maxConcurrentRequests, largest.get(), pending.get(), activeCount, completed.get(), rejected.get(),
+                cancelled.get(), Collections.emptyMap());
+    }
+
+    @Override
+    public <T> FutureTask<T> execute(AbortableRequest<T> request, Response<T> response) {
+        QueueStatistic queueStatistics = getQueueStatistic();
+        request.setQueueStatistic(queueStatistics);
+
+        schedulingLogger.logScheduleStart(request, queueStatistics);
+
+        FutureRequest<T> task = new FutureRequest<>(request, response);
+        doExecute(task);
+        return task.asTask();
+    }
+
+    @Override
+    public boolean isNotifyingWhenDone() {
+        return true;
+    }
+
+    @Override
+    public <T> FutureTask<T> executeAsync(AbortableRequest<T> request, RequestDispatcher dispatcher) {
+        QueueStatistic queueStatistics = getQueueStatistic();
+        request.setQueueStatistic(queueStatistics);
+
+        schedulingLogger.logScheduleStart(request, queueStatistics);
+
+        AsyncFutureRequest<T> task = new AsyncFutureRequest<>(request, dispatcher);
+        doExecute(task);
+        return task.asTask();
+    }
+
+    public <T> FutureTask<T> doExecute(FutureTask<T> task) {
+        execute(task);
+        return task;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (!admitted.tryAcquire()) {
+            rejectTask();
+            logManager.info(CoreLoggers.SERVER, "Rejected '" + command + "' since the maximum number of concurrent and pending requests has been exceeded.");
+            throw new RejectedExecutionException();
+        }
+        pending.incrementAndGet();
+        waiting.add(command);
+        try {
+            delegate.execute(() -> run(command));
+        } catch (RejectedExecutionException e) {
+            leave(command);
+            admitted.release();
+            rejectTask();
+            throw e;
+        }
+    }
+
+    /**
+     * A task cancelled while it waits for a permit gives back its place right away and is counted as cancelled. Its thread still waits for a
+     * permit, it then ends without running the task.
+     */
+    @Override
+    public void cancel(FutureTask<?> task) {
+        if (task.cancel(false) && leave(task)) {
+            admitted.release();
+            cancelled.incrementAndGet();
+        }
+    }
+
+    /**
+     * A task stops waiting for a permit.
+     *
+     * @return false if it stopped waiting already
+     */
+    private boolean leave(Runnable command) {
+        if (!waiting.remove(command)) {
+            return false;
+        }
+        pending.decrementAndGet();
+        return true;
+    }
+
+    private void run(Runnable command) {
+        try {
+            running.acquire();
+        } catch (InterruptedException e) {
+            if (leave(command)) {
+                admitted.release();
+            }
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        if (!leave(command)) {
+            // Cancelled while waiting for the permit, see cancel(FutureTask).
+            running.release();
+            return;
+        }
+        // A task cancelled otherwise (without this executor) is only noticed now, it does not run.
+        if (command instanceof Future && ((Future<?>) command).isCancelled()) {
+            cancelled.incrementAndGet();
+            running.release();
+            admitted.release();
+            return;
+        }
+        updateLargest(active.incrementAndGet());
+        try {
+            command.run();
+        } finally {
+            active.decrementAndGet();
+            completed.incrementAndGet();
+            running.release();
+            admitted.release();
+        }
+    }
+
+    private void updateLargest(int current) {
+        int max = largest.get();
+        while (current > max && !largest.compareAndSet(max, current)) {
+            max = largest.get();
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    /*
+     * Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 1).factory()), resolved reflectively so this compiles and runs
+     * on runtimes without virtual threads.
+     */
+    private static ExecutorService newVirtualThreadPerTaskExecutor(String name) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, name + "-", 1L);
+            ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            Method newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            return (ExecutorService) newThreadPerTaskExecutor.invoke(null, factory);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+}
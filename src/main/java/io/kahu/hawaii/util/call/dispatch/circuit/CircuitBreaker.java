@@ -0,0 +1,188 @@
+/**
+ * Copyright 2014-2018 Q24
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kahu.hawaii.util.call.dispatch.circuit;
+
+import io.kahu.hawaii.util.call.ResponseStatus;
+import io.kahu.hawaii.util.call.TimeOut;
+import io.kahu.hawaii.util.logger.CoreLoggers;
+import io.kahu.hawaii.util.logger.LogManager;
+import org.apache.http.annotation.ThreadSafe;
+
+/**
+ * Circuit breaker for a backend system (or a single call of a backend system).
+ *
+ * While closed, the outcome of the last 'windowSize' requests is kept. Once at least 'minimumRequests' requests are recorded and the
+ * percentage of failures (time outs and backend failures) reaches the 'failureRateThreshold' the circuit opens. While open, requests are
+ * not permitted. After 'openDuration' the circuit becomes half open and permits 'halfOpenRequests' trial requests. If all of them succeed
+ * the circuit closes again, otherwise it opens again.
+ */
+@ThreadSafe
+public class CircuitBreaker {
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String name;
+    private final int failureRateThreshold;
+    private final int minimumRequests;
+    private final long openDurationNanos;
+    private final int halfOpenRequests;
+    private final LogManager logManager;
+
+    private final boolean[] window;
+    private int windowIndex = 0;
+    private int windowCount = 0;
+    private int windowFailures = 0;
+
+    private State state = State.CLOSED;
+    private long openedAt;
+    private int halfOpenPermitted = 0;
+    private int halfOpenSucceeded = 0;
+
+    public CircuitBreaker(String name, int failureRateThreshold, int minimumRequests, int windowSize, TimeOut openDuration, int halfOpenRequests,
+            LogManager logManager) {
+        assert windowSize > 0 : "The window size must be positive.";
+        this.name = name;
+        this.failureRateThreshold = failureRateThreshold;
+        this.minimumRequests = Math.min(minimumRequests, windowSize);
+        this.window = new boolean[windowSize];
+        this.openDurationNanos = openDuration.getUnit().toNanos(openDuration.getDuration());
+        this.halfOpenRequests = Math.max(1, halfOpenRequests);
+        this.logManager = logManager;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Ask permission to execute a request. Must be followed by {@link #onResult(ResponseStatus)} once the request is done.
+     */
+    public synchronized boolean tryAcquirePermission() {
+        switch (getState()) {
+        case CLOSED:
+            return true;
+        case HALF_OPEN:
+            if (halfOpenPermitted < halfOpenRequests) {
+                halfOpenPermitted++;
+                return true;
+            }
+            return false;
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * @return true if the circuit is open and requests will not be permitted. Does not acquire a permission.
+     */
+    public synchronized boolean isOpen() {
+        return getState() == State.OPEN;
+    }
+
+    public synchronized void onResult(ResponseStatus status) {
+        boolean failure = isFailure(status);
+        switch (state) {
+        case CLOSED:
+            if (status == ResponseStatus.SUCCESS || failure) {
+                record(failure);
+                if (windowCount >= minimumRequests && windowFailures * 100 >= failureRateThreshold * windowCount) {
+                    open();
+                }
+            }
+            break;
+        case HALF_OPEN:
+            if (failure) {
+                open();
+            } else if (status == ResponseStatus.SUCCESS) {
+                halfOpenSucceeded++;
+                if (halfOpenSucceeded >= halfOpenRequests) {
+                    close();
+                }
+            } else {
+                // Not related to the backend, allow another trial request.
+                halfOpenPermitted--;
+            }
+            break;
+        default:
+            // Requests permitted before the circuit opened, ignore.
+            break;
+        }
+    }
+
+    public synchronized State getState() {
+        if (state == State.OPEN && System.nanoTime() - openedAt >= openDurationNanos) {
+            changeState(State.HALF_OPEN);
+            halfOpenPermitted = 0;
+            halfOpenSucceeded = 0;
+        }
+        return state;
+    }
+
+    public synchronized int getFailureRate() {
+        if (windowCount == 0) {
+            return 0;
+        }
+        return windowFailures * 100 / windowCount;
+    }
+
+    public synchronized void reset() {
+        close();
+    }
+
+    private boolean isFailure(ResponseStatus status) {
+        return status == ResponseStatus.TIME_OUT || status == ResponseStatus.BACKEND_FAILURE;
+    }
+
+    private void record(boolean failure) {
+        if (windowCount == window.length) {
+            if (window[windowIndex]) {
+                windowFailures--;
+            }
+        } else {
+            windowCount++;
+        }
+        window[windowIndex] = failure;
+        if (failure) {
+            windowFailures++;
+        }
+        windowIndex = (windowIndex + 1) % window.length;
+    }
+
+    private void open() {
+        openedAt = System.nanoTime();
+        changeState(State.OPEN);
+    }
+
+    private void close() {
+        windowIndex = 0;
+        windowCount = 0;
+        windowFailures = 0;
+        changeState(State.CLOSED);
+    }
+
+    private void changeState(State newState) {
+        if (state != newState) {
+            logManager.warn(CoreLoggers.SERVER, "Circuit breaker '" + name + "' changed from '" + state + "' to '" + newState + "'.");
+            state = newState;
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "'" + name + "' " + state + " failure rate '" + getFailureRate() + "%' ('" + failureRateThreshold + "%' of '" + window.length + "')";
+    }
+}
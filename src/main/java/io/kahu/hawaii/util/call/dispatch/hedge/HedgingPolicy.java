@@ -0,0 +1,94 @@
+/**
+ * Copyright 2014-2018 Q24
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kahu.hawaii.util.call.dispatch.hedge;
+
+import org.apache.http.annotation.ThreadSafe;
+
+import java.util.Arrays;
+
+/**
+ * Hedging policy of an (idempotent) call: if no answer arrives within the hedge delay, a copy of the request is dispatched and the first
+ * answer wins.
+ *
+ * The delay is either fixed, or a percentile of the call times of the last 'window' requests. Until 'window' call times are recorded the
+ * fixed delay is used, if there is none the request is not hedged. The percentile is not computed for each request, it is recomputed each
+ * time a tenth of the window is replaced by new call times.
+ */
+@ThreadSafe
+public class HedgingPolicy {
+    private final long fixedDelay;
+    private final int percentile;
+    private final double[] callTimes;
+    private final int recomputeInterval;
+    private int index = 0;
+    private int count = 0;
+    private int recordedSinceRecompute = 0;
+    private volatile long percentileDelay = -1L;
+
+    /**
+     * @param fixedDelay the hedge delay in milliseconds, or a value <= 0 for none
+     * @param percentile the percentile of the observed call times to use as hedge delay, or a value <= 0 to use the fixed delay only
+     * @param window the number of call times to keep
+     */
+    public HedgingPolicy(long fixedDelay, int percentile, int window) {
+        assert percentile < 100 : "The percentile must be below 100.";
+        this.fixedDelay = fixedDelay;
+        this.percentile = percentile;
+        this.callTimes = new double[percentile > 0 ? Math.max(1, window) : 0];
+        this.recomputeInterval = Math.max(1, callTimes.length / 10);
+    }
+
+    /**
+     * @return the hedge delay in milliseconds, or -1 if the request should not be hedged (yet).
+     */
+    public long getDelay() {
+        long delay = percentileDelay;
+        if (delay >= 0) {
+            return delay;
+        }
+        return fixedDelay > 0 ? fixedDelay : -1L;
+    }
+
+    /**
+     * Record the call time (in milliseconds) of a request, or the time it took until it was cancelled.
+     */
+    public synchronized void record(double callTime) {
+        if (callTimes.length == 0) {
+            return;
+        }
+        callTimes[index] = callTime;
+        index = (index + 1) % callTimes.length;
+        if (count < callTimes.length) {
+            count++;
+        }
+        recordedSinceRecompute++;
+        if (count == callTimes.length && (percentileDelay < 0 || recordedSinceRecompute >= recomputeInterval)) {
+            double[] sorted = Arrays.copyOf(callTimes, count);
+            Arrays.sort(sorted);
+            int rank = (int) Math.ceil(count * percentile / 100.0D);
+            percentileDelay = (long) Math.ceil(sorted[Math.max(0, rank - 1)]);
+            recordedSinceRecompute = 0;
+        }
+    }
+
+    @Override
+    public String toString() {
+        if (percentile > 0) {
+            return "p" + percentile + " of '" + callTimes.length + "' (fixed '" + fixedDelay + "' msec)";
+        }
+        return "fixed '" + fixedDelay + "' msec";
+    }
+}
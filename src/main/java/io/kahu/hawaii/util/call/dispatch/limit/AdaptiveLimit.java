@@ -0,0 +1,35 @@
+/**
+ * Copyright 2014-2018 Q24
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kahu.hawaii.util.call.dispatch.limit;
+
+/**
+ * Algorithm that determines the number of requests a queue may have in flight, based on the observed call times.
+ */
+public interface AdaptiveLimit {
+    /**
+     * @return the current number of requests allowed in flight
+     */
+    int getLimit();
+
+    /**
+     * Update the limit with the outcome of a request.
+     *
+     * @param callTime the call time in milliseconds
+     * @param inFlight the number of requests in flight when the request finished
+     * @param dropped true if the request timed out
+     */
+    void onSample(double callTime, int inFlight, boolean dropped);
+}
@@ -0,0 +1,64 @@
+/**
+ * Copyright 2014-2018 Q24
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kahu.hawaii.util.call.dispatch.limit;
+
+import org.apache.http.annotation.ThreadSafe;
+
+/**
+ * Additive increase, multiplicative decrease. The limit grows by one for each successful request that was made while the queue was
+ * at least half utilized, and is multiplied by the backoff ratio for each request that timed out or took longer than the slow call threshold.
+ */
+@ThreadSafe
+public class AimdLimit implements AdaptiveLimit {
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final double slowCallThreshold;
+
+    private volatile int limit;
+
+    /**
+     * @param slowCallThreshold call time in milliseconds above which a request counts as dropped, 0 or less to only count time outs
+     */
+    public AimdLimit(int initialLimit, int minLimit, int maxLimit, double backoffRatio, double slowCallThreshold) {
+        assert minLimit > 0 && minLimit <= maxLimit : "Invalid limits '" + minLimit + "'/'" + maxLimit + "'.";
+        assert backoffRatio > 0.0D && backoffRatio < 1.0D : "The backoff ratio must be between 0 and 1.";
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.slowCallThreshold = slowCallThreshold;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    @Override
+    public int getLimit() {
+        return limit;
+    }
+
+    @Override
+    public synchronized void onSample(double callTime, int inFlight, boolean dropped) {
+        if (dropped || (slowCallThreshold > 0 && callTime > slowCallThreshold)) {
+            limit = Math.max(minLimit, (int) (limit * backoffRatio));
+        } else if (inFlight * 2 >= limit) {
+            limit = Math.min(maxLimit, limit + 1);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "aimd '" + limit + "' ('" + minLimit + "'/'" + maxLimit + "')";
+    }
+}
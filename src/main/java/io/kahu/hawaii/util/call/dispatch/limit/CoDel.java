@@ -0,0 +1,117 @@
+/**
+ * Copyright 2014-2018 Q24
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kahu.hawaii.util.call.dispatch.limit;
+
+import org.apache.http.annotation.ThreadSafe;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sheds load from a queue based on the queue delay ("Controlled Delay", see Nichols and Jacobson, "Controlling Queue Delay").
+ *
+ * A queue that is only full now and then is fine, a queue that never drains (a standing queue) only adds delay. Each task taken from the
+ * queue reports the time it spent in the queue (its sojourn time). Once the sojourn time stayed above 'target' for at least 'interval'
+ * the queue is in the shedding state: a task is shed, and the next one is shed after interval / sqrt(number shed), so shedding increases
+ * until the delay drops below the target again. Shed tasks fail fast instead of timing out after waiting in the queue.
+ */
+@ThreadSafe
+public class CoDel {
+    private final long target;
+    private final long interval;
+    private final LongAdder shedCount = new LongAdder();
+
+    private long firstAboveTime = 0L;
+    private boolean shedding = false;
+    private int count = 0;
+    private long shedNext = 0L;
+
+    /**
+     * @param target the acceptable queue delay in milliseconds
+     * @param interval the time in milliseconds the queue delay may exceed the target before tasks are shed
+     */
+    public CoDel(long target, long interval) {
+        this.target = TimeUnit.MILLISECONDS.toNanos(target);
+        this.interval = TimeUnit.MILLISECONDS.toNanos(interval);
+    }
+
+    /**
+     * Called for each task taken from the queue.
+     *
+     * @param sojournTime the time in nanoseconds the task spent in the queue
+     * @param queueEmpty true if the queue is empty after taking the task
+     * @param now the current time (System#nanoTime())
+     * @return true if the task must be shed
+     */
+    public synchronized boolean shouldShed(long sojournTime, boolean queueEmpty, long now) {
+        boolean aboveTarget = isAboveTargetForInterval(sojournTime, queueEmpty, now);
+        if (shedding) {
+            if (!aboveTarget) {
+                shedding = false;
+                return false;
+            }
+            if (now - shedNext >= 0) {
+                count++;
+                shedNext = controlLaw(shedNext);
+                return shed();
+            }
+            return false;
+        }
+
+        if (aboveTarget) {
+            shedding = true;
+            // Shedding again shortly after the previous time, continue at (about) the previous rate.
+            count = count > 2 && now - shedNext < 16 * interval ? count - 2 : 1;
+            shedNext = controlLaw(now);
+            return shed();
+        }
+        return false;
+    }
+
+    private boolean isAboveTargetForInterval(long sojournTime, boolean queueEmpty, long now) {
+        if (sojournTime < target || queueEmpty) {
+            firstAboveTime = 0L;
+            return false;
+        }
+        if (firstAboveTime == 0L) {
+            firstAboveTime = now + interval;
+            return false;
+        }
+        return now - firstAboveTime >= 0;
+    }
+
+    private long controlLaw(long time) {
+        return time + (long) (interval / Math.sqrt(count));
+    }
+
+    private boolean shed() {
+        shedCount.increment();
+        return true;
+    }
+
+    public synchronized boolean isShedding() {
+        return shedding;
+    }
+
+    public long getShedCount() {
+        return shedCount.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "codel target '" + TimeUnit.NANOSECONDS.toMillis(target) + "' msec interval '" + TimeUnit.NANOSECONDS.toMillis(interval) + "' msec";
+    }
+}
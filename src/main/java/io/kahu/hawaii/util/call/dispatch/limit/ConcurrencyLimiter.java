@@ -0,0 +1,78 @@
+/**
+ * Copyright 2014-2018 Q24
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kahu.hawaii.util.call.dispatch.limit;
+
+import io.kahu.hawaii.util.call.ResponseStatus;
+import io.kahu.hawaii.util.call.statistics.RequestStatistic;
+import org.apache.http.annotation.ThreadSafe;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps track of the number of requests in flight on a queue and admits new requests as long as the {@link AdaptiveLimit} allows it.
+ */
+@ThreadSafe
+public class ConcurrencyLimiter {
+    private final AdaptiveLimit limit;
+    private final AtomicInteger inFlight = new AtomicInteger(0);
+
+    public ConcurrencyLimiter(AdaptiveLimit limit) {
+        this.limit = limit;
+    }
+
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit.getLimit()) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Release a request that has not been executed.
+     */
+    public void release() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * Release an executed request, using its statistic to update the limit. A cancelled request says nothing about the backend, it does
+     * not update the limit.
+     */
+    public void release(RequestStatistic statistic) {
+        int current = inFlight.getAndDecrement();
+        if (statistic != null && statistic.getStatus() != ResponseStatus.CANCELLED) {
+            limit.onSample(statistic.getCallTime(), current, statistic.getStatus() == ResponseStatus.TIME_OUT);
+        }
+    }
+
+    public int getLimit() {
+        return limit.getLimit();
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    @Override
+    public String toString() {
+        return limit.toString();
+    }
+}
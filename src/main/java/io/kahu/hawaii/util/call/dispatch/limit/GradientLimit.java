@@ -0,0 +1,86 @@
+/**
+ * Copyright 2014-2018 Q24
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kahu.hawaii.util.call.dispatch.limit;
+
+import org.apache.http.annotation.ThreadSafe;
+
+/**
+ * Gradient (Vegas like) limit. The limit follows the ratio between the long term average call time and the current call time: when calls
+ * get slower than usual the backend is queueing, so the limit shrinks; when calls are as fast as usual the limit may grow by a small
+ * queue allowance (the square root of the limit).
+ */
+@ThreadSafe
+public class GradientLimit implements AdaptiveLimit {
+    private static final double SMOOTHING = 0.2D;
+    private static final double MIN_GRADIENT = 0.5D;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final int window;
+
+    private volatile int limit;
+    private double estimatedLimit;
+    private double longCallTime = 0.0D;
+    private long samples = 0L;
+
+    /**
+     * @param window the number of samples the long term average call time is taken over
+     */
+    public GradientLimit(int initialLimit, int minLimit, int maxLimit, double backoffRatio, int window) {
+        assert minLimit > 0 && minLimit <= maxLimit : "Invalid limits '" + minLimit + "'/'" + maxLimit + "'.";
+        assert backoffRatio > 0.0D && backoffRatio < 1.0D : "The backoff ratio must be between 0 and 1.";
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.window = Math.max(1, window);
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+        this.estimatedLimit = limit;
+    }
+
+    @Override
+    public int getLimit() {
+        return limit;
+    }
+
+    @Override
+    public synchronized void onSample(double callTime, int inFlight, boolean dropped) {
+        if (dropped) {
+            estimatedLimit = estimatedLimit * backoffRatio;
+        } else {
+            samples++;
+            double factor = 1.0D / Math.min(samples, window);
+            longCallTime = longCallTime + (callTime - longCallTime) * factor;
+
+            // Don't grow the limit when the queue is not used anyway.
+            if (inFlight * 2 < estimatedLimit) {
+                return;
+            }
+
+            double gradient = Math.max(MIN_GRADIENT, Math.min(1.0D, longCallTime / Math.max(callTime, 0.001D)));
+            double newLimit = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+            estimatedLimit = estimatedLimit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+        }
+
+        estimatedLimit = Math.max(minLimit, Math.min(maxLimit, estimatedLimit));
+        limit = (int) estimatedLimit;
+    }
+
+    @Override
+    public String toString() {
+        return "gradient '" + limit + "' ('" + minLimit + "'/'" + maxLimit + "')";
+    }
+}
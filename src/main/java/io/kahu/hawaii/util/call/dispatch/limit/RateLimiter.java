@@ -0,0 +1,126 @@
+/**
+ * Copyright 2014-2018 Q24
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kahu.hawaii.util.call.dispatch.limit;
+
+import org.apache.http.annotation.ThreadSafe;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the rate of requests with a token bucket. The bucket holds at most 'burst' tokens and is refilled with 'rate' tokens per second,
+ * each request takes a token.
+ *
+ * If there is no token a request either waits for one (at most 'maxWait' milliseconds) or, with a 'maxWait' of 0, is rejected immediately.
+ * A waiting request reserves its token, so waiting requests are admitted in order and the rate is never exceeded.
+ */
+@ThreadSafe
+public class RateLimiter {
+    private final double rate;
+    private final double burst;
+    private final long maxWait;
+    private final long maxWaitNanos;
+    private double tokens;
+    private long lastRefill;
+
+    /**
+     * @param rate the number of requests per second
+     * @param burst the maximum number of requests admitted at once
+     * @param maxWait the maximum time in milliseconds a request waits for a token, 0 to reject immediately
+     */
+    public RateLimiter(double rate, int burst, long maxWait) {
+        this.rate = rate;
+        this.burst = burst;
+        this.maxWait = maxWait;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWait);
+        this.tokens = burst;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Take a token, waiting for it if allowed.
+     *
+     * @throws RejectedExecutionException if no token is available within the maximum wait
+     */
+    public void acquire() throws InterruptedException {
+        long wait = reserve(maxWaitNanos);
+        if (wait < 0) {
+            throw new RejectedExecutionException("The rate limit of '" + rate + "' requests per second has been reached.");
+        }
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    /**
+     * Take a token without waiting.
+     *
+     * @return false if there is no token available
+     */
+    public boolean tryAcquire() {
+        return reserve(0L) == 0L;
+    }
+
+    /**
+     * Reserve a token without waiting for it, the caller waits (or gives the token back with {@link #release()}).
+     *
+     * @param maxWait the maximum time the caller can wait (for instance the remaining time of its request), capped at 'maxWait' of this
+     *            limiter
+     * @return the time in nanoseconds to wait before the token may be used, or -1 if no token is available in time (nothing is reserved
+     *         then)
+     */
+    public long reserve(long maxWait, TimeUnit unit) {
+        return reserve(Math.min(maxWaitNanos, unit.toNanos(maxWait)));
+    }
+
+    /**
+     * Give back a token of a request that is not executed after all, for instance because another limiter rejected it.
+     */
+    public synchronized void release() {
+        tokens = Math.min(burst, tokens + 1.0D);
+    }
+
+    /**
+     * @return true if requests wait for a token instead of being rejected immediately
+     */
+    public boolean isWaiting() {
+        return maxWait > 0;
+    }
+
+    /**
+     * @return the time in nanoseconds to wait for the reserved token, or -1 if that would exceed 'maxWaitNanos' (nothing is reserved then).
+     */
+    private synchronized long reserve(long maxWaitNanos) {
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - lastRefill) * rate / TimeUnit.SECONDS.toNanos(1));
+        lastRefill = now;
+        if (tokens >= 1.0D) {
+            tokens -= 1.0D;
+            return 0L;
+        }
+        long wait = (long) Math.ceil((1.0D - tokens) / rate * TimeUnit.SECONDS.toNanos(1));
+        if (wait > maxWaitNanos) {
+            return -1L;
+        }
+        tokens -= 1.0D;
+        return wait;
+    }
+
+    @Override
+    public String toString() {
+        return "rate limit '" + rate + "'/sec (burst '" + (int) burst + "', max wait '" + maxWait + "' msec)";
+    }
+}
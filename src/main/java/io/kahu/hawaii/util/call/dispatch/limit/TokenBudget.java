@@ -0,0 +1,64 @@
+/**
+ * Copyright 2014-2018 Q24
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kahu.hawaii.util.call.dispatch.limit;
+
+import org.apache.http.annotation.ThreadSafe;
+
+/**
+ * Limits the number of extra requests (retries or hedged requests) relative to the number of requests, so these cannot multiply the load
+ * on a backend that is failing or struggling.
+ *
+ * Each request earns 'ratio' tokens (up to 'maxTokens'), each extra request costs one token. With a ratio of 0.1 at most (about) 10% extra
+ * requests are sent once the initial tokens are spent.
+ */
+@ThreadSafe
+public class TokenBudget {
+    private final double ratio;
+    private final double maxTokens;
+    private double tokens;
+
+    /**
+     * @param ratio the tokens earned per request
+     * @param maxTokens the maximum number of tokens
+     * @param initialTokens the tokens available right away, a retry budget starts full while a hedge budget starts empty
+     */
+    public TokenBudget(double ratio, int maxTokens, int initialTokens) {
+        this.ratio = ratio;
+        this.maxTokens = maxTokens;
+        this.tokens = Math.min(maxTokens, initialTokens);
+    }
+
+    public synchronized void onRequest() {
+        tokens = Math.min(maxTokens, tokens + ratio);
+    }
+
+    public synchronized boolean tryAcquire() {
+        if (tokens >= 1.0D) {
+            tokens -= 1.0D;
+            return true;
+        }
+        return false;
+    }
+
+    public synchronized double getTokens() {
+        return tokens;
+    }
+
+    @Override
+    public String toString() {
+        return "budget '" + ratio + "' (max '" + (int) maxTokens + "')";
+    }
+}
@@ -0,0 +1,84 @@
+/**
+ * Copyright 2014-2018 Q24
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kahu.hawaii.util.call.dispatch.retry;
+
+import io.kahu.hawaii.util.call.Response;
+import io.kahu.hawaii.util.call.ResponseStatus;
+import org.apache.http.annotation.ThreadSafe;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides whether (and when) a failed request is attempted again.
+ *
+ * A response is retryable if its status is one of the retryable statuses or its (HTTP) status code is one of the retryable status codes.
+ * The backoff before attempt n + 1 is a random duration between 0 and min(maxBackoff, backoff * multiplier ^ (n - 1)) milliseconds ("full
+ * jitter"), so clients that failed at the same moment do not retry at the same moment.
+ */
+@ThreadSafe
+public class RetryPolicy {
+    private final int maxAttempts;
+    private final Set<ResponseStatus> retryableStatuses;
+    private final Set<Integer> retryableStatusCodes;
+    private final long backoff;
+    private final long maxBackoff;
+    private final double multiplier;
+
+    /**
+     * @param maxAttempts the maximum number of attempts, including the first one
+     * @param backoff the (maximum) backoff in milliseconds before the second attempt
+     * @param maxBackoff the maximum backoff in milliseconds
+     */
+    public RetryPolicy(int maxAttempts, Set<ResponseStatus> retryableStatuses, Set<Integer> retryableStatusCodes, long backoff, long maxBackoff,
+            double multiplier) {
+        this.maxAttempts = maxAttempts;
+        this.retryableStatuses = retryableStatuses.isEmpty() ? Collections.emptySet() : Collections.unmodifiableSet(EnumSet.copyOf(retryableStatuses));
+        this.retryableStatusCodes = Collections.unmodifiableSet(new HashSet<>(retryableStatusCodes));
+        this.backoff = backoff;
+        this.maxBackoff = maxBackoff;
+        this.multiplier = multiplier;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public boolean isRetryable(Response<?> response) {
+        return retryableStatuses.contains(response.getStatus()) || retryableStatusCodes.contains(response.getStatusCode());
+    }
+
+    /**
+     * @param attempt the attempt that failed (1 based)
+     * @return the backoff in milliseconds before the next attempt
+     */
+    public long getBackoff(int attempt) {
+        double ceiling = Math.min(maxBackoff, backoff * Math.pow(multiplier, attempt - 1));
+        if (ceiling < 1.0D) {
+            return 0L;
+        }
+        return ThreadLocalRandom.current().nextLong((long) ceiling + 1);
+    }
+
+    @Override
+    public String toString() {
+        return "retry policy '" + maxAttempts + "' attempts on " + retryableStatuses + "/" + retryableStatusCodes + " backoff '" + backoff + "'/'"
+                + maxBackoff + "' msec x '" + multiplier + "'";
+    }
+}
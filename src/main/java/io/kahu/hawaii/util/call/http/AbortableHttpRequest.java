@@ -22,22 +22,51 @@ import io.kahu.hawaii.util.exception.ServerError;
 import io.kahu.hawaii.util.exception.ServerException;
 
 import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHost;
 import org.apache.http.HttpRequest;
 import org.apache.http.HttpResponse;
+import org.apache.http.auth.AuthScheme;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.Credentials;
+import org.apache.http.client.AuthCache;
 import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.CredentialsProvider;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.client.methods.HttpOptions;
+import org.apache.http.client.methods.HttpPut;
 import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.methods.HttpTrace;
 import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.entity.BufferedHttpEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.message.BasicHeader;
 
 public class AbortableHttpRequest<T> extends AbstractAbortableRequest<HttpResponse, T> implements HttpCall {
+    private static final String HAWAII_HEADER_PREFIX = "X-Hawaii-";
+    private static final Set<String> IDEMPOTENT_METHODS = new HashSet<>(Arrays.asList(HttpGet.METHOD_NAME, HttpHead.METHOD_NAME,
+            HttpOptions.METHOD_NAME, HttpPut.METHOD_NAME, HttpDelete.METHOD_NAME, HttpTrace.METHOD_NAME));
+
     private boolean aborted = false;
     private HttpClientBuilder httpClientBuilder;
+    private HttpClientPool httpClientPool;
     private final HttpRequestBase httpRequest;
     private final HttpClientContext httpClientContext;
 
@@ -54,11 +83,41 @@ public class AbortableHttpRequest<T> extends AbstractAbortableRequest<HttpRespon
         this.httpClientContext = HttpClientContext.create();
     }
 
+    protected AbortableHttpRequest(AbortableHttpRequest<T> original) throws CloneNotSupportedException {
+        super(original);
+        this.httpRequest = (HttpRequestBase) original.httpRequest.clone();
+        this.httpClientContext = HttpClientContext.create();
+        this.httpClientContext.setCredentialsProvider(original.httpClientContext.getCredentialsProvider());
+        this.httpClientContext.setAuthCache(original.httpClientContext.getAuthCache());
+        this.httpClientBuilder = original.httpClientBuilder;
+        this.httpClientPool = original.httpClientPool;
+    }
+
+    /**
+     * Only requests with an idempotent method can be copied (to be hedged or retried), a POST or PATCH cannot be sent twice.
+     */
+    @Override
+    protected AbstractAbortableRequest<HttpResponse, T> newCopy() {
+        if (!IDEMPOTENT_METHODS.contains(httpRequest.getMethod())) {
+            return null;
+        }
+        try {
+            return new AbortableHttpRequest<>(this);
+        } catch (CloneNotSupportedException e) {
+            return null;
+        }
+    }
+
     @Override
     public void setHttpClientBuilder(HttpClientBuilder httpClientBuilder) {
         this.httpClientBuilder = httpClientBuilder;
     }
 
+    @Override
+    public void setHttpClientPool(HttpClientPool httpClientPool) {
+        this.httpClientPool = httpClientPool;
+    }
+
     @Override
     public HttpRequest getHttpRequest() {
         return httpRequest;
@@ -86,11 +145,80 @@ public class AbortableHttpRequest<T> extends AbstractAbortableRequest<HttpRespon
         }
     }
 
+    /**
+     * Reads the entity completely, so the connection can be released before the response is converted.
+     */
+    @Override
+    protected HttpResponse detach(HttpResponse httpResponse) throws ServerException {
+        HttpEntity entity = httpResponse.getEntity();
+        if (entity != null && !entity.isRepeatable()) {
+            try {
+                httpResponse.setEntity(new BufferedHttpEntity(entity));
+            } catch (IOException e) {
+                throw new ServerException(ServerError.IO, e);
+            }
+        }
+        return httpResponse;
+    }
+
     private CloseableHttpClient getHttpClient() {
+        if (httpClientPool != null) {
+            getStatistic().setConnectionPoolStatistic(httpClientPool.getConnectionPoolStatistic());
+            return httpClientPool.getHttpClient();
+        }
         CloseableHttpClient client = httpClientBuilder.build();
         return client;
     }
 
+    /**
+     * Only GET requests can be coalesced, they are identified by their URI, headers (except the Hawaii headers) and credentials. Requests
+     * with credentials that cannot be identified are not coalesced.
+     */
+    @Override
+    public String getFingerprint() {
+        if (!HttpGet.METHOD_NAME.equals(httpRequest.getMethod())) {
+            return null;
+        }
+        StringBuilder builder = new StringBuilder(httpRequest.getMethod()).append(' ').append(httpRequest.getURI());
+        Header[] headers = httpRequest.getAllHeaders();
+        Arrays.sort(headers, Comparator.comparing(Header::getName, String.CASE_INSENSITIVE_ORDER));
+        for (Header header : headers) {
+            if (!header.getName().startsWith(HAWAII_HEADER_PREFIX)) {
+                builder.append(' ').append(header.getName()).append(": ").append(header.getValue());
+            }
+        }
+        if (httpClientContext.getCredentialsProvider() != null || httpClientContext.getAuthCache() != null) {
+            String identity = getCredentialsIdentity();
+            if (identity == null) {
+                return null;
+            }
+            builder.append(' ').append(identity);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @return the authentication scheme, user name and a digest of the password used for the request, or null if these are unknown.
+     */
+    private String getCredentialsIdentity() {
+        URI uri = httpRequest.getURI();
+        CredentialsProvider credentialsProvider = httpClientContext.getCredentialsProvider();
+        Credentials credentials = credentialsProvider == null ? null : credentialsProvider.getCredentials(new AuthScope(uri.getHost(), uri.getPort()));
+        if (credentials == null || credentials.getUserPrincipal() == null) {
+            return null;
+        }
+        AuthCache authCache = httpClientContext.getAuthCache();
+        AuthScheme authScheme = authCache == null ? null : authCache.get(new HttpHost(uri.getHost(), uri.getPort(), uri.getScheme()));
+        String password = credentials.getPassword() == null ? "" : credentials.getPassword();
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(password.getBytes(StandardCharsets.UTF_8));
+            return "auth " + (authScheme == null ? "-" : authScheme.getSchemeName()) + " " + credentials.getUserPrincipal().getName() + " "
+                    + Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            return null;
+        }
+    }
+
     private void addHawaiiHeaders() {
         SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
         Header header = new BasicHeader("X-Hawaii-Timestamp", sdf.format(new Date()));
@@ -98,6 +226,12 @@ public class AbortableHttpRequest<T> extends AbstractAbortableRequest<HttpRespon
 
         header = new BasicHeader("X-Hawaii-Id", getId());
         httpRequest.setHeader(header);
+
+        Deadline deadline = getDeadline();
+        if (deadline != null && getRoute() != null && getRoute().isForwardingDeadline()) {
+            header = new BasicHeader("X-Hawaii-Deadline", String.valueOf(deadline.remaining(TimeUnit.MILLISECONDS)));
+            httpRequest.setHeader(header);
+        }
     }
 
     @Override
@@ -23,6 +23,8 @@ public interface HttpCall {
 
     void setHttpClientBuilder(HttpClientBuilder builder);
 
+    void setHttpClientPool(HttpClientPool pool);
+
     HttpRequest getHttpRequest();
 
     HttpClientContext getHttpClientContext();
@@ -0,0 +1,79 @@
+/**
+ * Copyright 2014-2018 Q24
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kahu.hawaii.util.call.http;
+
+import io.kahu.hawaii.util.call.TimeOut;
+import org.apache.http.annotation.NotThreadSafe;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Configuration of the (pooled) HTTP client of a backend system.
+ */
+@NotThreadSafe
+public class HttpClientConfiguration {
+    private int maxConnectionsPerRoute = 20;
+    private int maxConnections = 100;
+    private TimeOut connectTimeOut = new TimeOut(5, TimeUnit.SECONDS);
+    private TimeOut socketTimeOut = new TimeOut(60, TimeUnit.SECONDS);
+    private TimeOut idleTimeOut = new TimeOut(30, TimeUnit.SECONDS);
+
+    public int getMaxConnectionsPerRoute() {
+        return maxConnectionsPerRoute;
+    }
+
+    public void setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    public TimeOut getConnectTimeOut() {
+        return connectTimeOut;
+    }
+
+    public void setConnectTimeOut(TimeOut connectTimeOut) {
+        this.connectTimeOut = connectTimeOut;
+    }
+
+    public TimeOut getSocketTimeOut() {
+        return socketTimeOut;
+    }
+
+    public void setSocketTimeOut(TimeOut socketTimeOut) {
+        this.socketTimeOut = socketTimeOut;
+    }
+
+    public TimeOut getIdleTimeOut() {
+        return idleTimeOut;
+    }
+
+    public void setIdleTimeOut(TimeOut idleTimeOut) {
+        this.idleTimeOut = idleTimeOut;
+    }
+
+    @Override
+    public String toString() {
+        return "'" + maxConnectionsPerRoute + "'/'" + maxConnections + "' connect '" + connectTimeOut + "' socket '" + socketTimeOut + "' idle '"
+                + idleTimeOut + "'";
+    }
+}
@@ -0,0 +1,109 @@
+/**
+ * Copyright 2014-2018 Q24
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kahu.hawaii.util.call.http;
+
+import io.kahu.hawaii.util.call.statistics.ConnectionPoolStatistic;
+import io.kahu.hawaii.util.call.statistics.ConnectionPoolStatisticImpl;
+import org.apache.http.annotation.ThreadSafe;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+
+import java.io.IOException;
+
+/**
+ * A long-lived HTTP client with its own connection pool, one per backend system. Connections are kept alive and reused between requests.
+ */
+@ThreadSafe
+public class HttpClientPool {
+    private final String name;
+    private final HttpClientConfiguration configuration;
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient httpClient;
+    private volatile boolean closed = false;
+
+    public HttpClientPool(String name, HttpClientConfiguration configuration) {
+        this.name = name;
+        this.configuration = configuration;
+
+        connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setDefaultMaxPerRoute(configuration.getMaxConnectionsPerRoute());
+        connectionManager.setMaxTotal(configuration.getMaxConnections());
+
+        int connectTimeOut = (int) configuration.getConnectTimeOut().getUnit().toMillis(configuration.getConnectTimeOut().getDuration());
+        int socketTimeOut = (int) configuration.getSocketTimeOut().getUnit().toMillis(configuration.getSocketTimeOut().getDuration());
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(connectTimeOut)
+                .setConnectionRequestTimeout(connectTimeOut)
+                .setSocketTimeout(socketTimeOut)
+                .build();
+
+        httpClient = HttpClientBuilder.create()
+                .disableContentCompression()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .build();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public HttpClientConfiguration getConfiguration() {
+        return configuration;
+    }
+
+    public CloseableHttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    public ConnectionPoolStatistic getConnectionPoolStatistic() {
+        return new ConnectionPoolStatisticImpl(name, connectionManager.getTotalStats());
+    }
+
+    /**
+     * Closes expired connections and connections that have been idle longer than the configured idle time out.
+     */
+    public void evictIdleConnections() {
+        connectionManager.closeExpiredConnections();
+        connectionManager.closeIdleConnections(configuration.getIdleTimeOut().getDuration(), configuration.getIdleTimeOut().getUnit());
+    }
+
+    /**
+     * @return true if no connection of the pool is leased or waited for.
+     */
+    public boolean isIdle() {
+        PoolStats stats = connectionManager.getTotalStats();
+        return stats.getLeased() == 0 && stats.getPending() == 0;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public void close() {
+        closed = true;
+        try {
+            httpClient.close();
+        } catch (IOException e) {
+            // ignore
+        } finally {
+            connectionManager.shutdown();
+        }
+    }
+}
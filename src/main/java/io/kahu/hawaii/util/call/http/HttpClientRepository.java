@@ -0,0 +1,151 @@
+/**
+ * Copyright 2014-2018 Q24
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kahu.hawaii.util.call.http;
+
+import io.kahu.hawaii.util.call.TimeOut;
+import io.kahu.hawaii.util.call.dispatch.HawaiiThreadFactory;
+import io.kahu.hawaii.util.call.statistics.ConnectionPoolStatistic;
+import io.kahu.hawaii.util.logger.CoreLoggers;
+import io.kahu.hawaii.util.logger.LogManager;
+import org.apache.http.annotation.ThreadSafe;
+import org.jolokia.jmx.JsonMBean;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds the pooled HTTP clients, keyed by backend system.
+ *
+ * Backend systems without an explicit configuration get a pool with the default configuration on first use. Idle connections of all pools
+ * are evicted periodically.
+ */
+@ThreadSafe
+@JsonMBean
+public class HttpClientRepository {
+    private static final long EVICTION_INTERVAL_SECONDS = 5L;
+
+    private final ConcurrentMap<String, HttpClientPool> pools = new ConcurrentHashMap<>();
+    private final Set<HttpClientPool> retired = ConcurrentHashMap.newKeySet();
+    private final Map<String, HttpClientConfiguration> configurations = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService evictor;
+    private final LogManager logManager;
+
+    public HttpClientRepository(LogManager logManager) {
+        this.logManager = logManager;
+        this.evictor = Executors.newSingleThreadScheduledExecutor(new HawaiiThreadFactory("http-connection-evictor"));
+        this.evictor.scheduleWithFixedDelay(this::evictIdleConnections, EVICTION_INTERVAL_SECONDS, EVICTION_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Configure the pool of a backend system. An existing pool for the system is replaced, it is closed once none of its connections are
+     * leased, but not before its connect and socket time outs have passed, so requests built or in flight on it can finish.
+     */
+    public void configure(String backendSystem, HttpClientConfiguration configuration) {
+        configurations.put(backendSystem, configuration);
+        HttpClientPool old = pools.put(backendSystem, createPool(backendSystem, configuration));
+        if (old != null) {
+            retire(old);
+        }
+    }
+
+    public HttpClientPool get(String backendSystem) {
+        HttpClientPool pool = pools.get(backendSystem);
+        if (pool == null) {
+            HttpClientConfiguration configuration = configurations.get(backendSystem);
+            if (configuration == null) {
+                configuration = new HttpClientConfiguration();
+            }
+            HttpClientPool created = createPool(backendSystem, configuration);
+            pool = pools.putIfAbsent(backendSystem, created);
+            if (pool == null) {
+                pool = created;
+            } else {
+                created.close();
+            }
+        }
+        return pool;
+    }
+
+    public ConnectionPoolStatistic getConnectionPoolStatistic(String backendSystem) {
+        HttpClientPool pool = pools.get(backendSystem);
+        if (pool == null) {
+            return null;
+        }
+        return pool.getConnectionPoolStatistic();
+    }
+
+    public Map<String, ConnectionPoolStatistic> getConnectionPoolStatistics() {
+        Map<String, ConnectionPoolStatistic> statistics = new HashMap<>();
+        for (HttpClientPool pool : pools.values()) {
+            statistics.put(pool.getName(), pool.getConnectionPoolStatistic());
+        }
+        return statistics;
+    }
+
+    public void stop() {
+        evictor.shutdownNow();
+        for (HttpClientPool pool : pools.values()) {
+            pool.close();
+        }
+        pools.clear();
+        for (HttpClientPool pool : retired) {
+            pool.close();
+        }
+        retired.clear();
+    }
+
+    private void retire(HttpClientPool pool) {
+        retired.add(pool);
+        HttpClientConfiguration configuration = pool.getConfiguration();
+        long gracePeriod = toMillis(configuration.getConnectTimeOut()) + toMillis(configuration.getSocketTimeOut());
+        evictor.schedule(() -> closeWhenIdle(pool), gracePeriod, TimeUnit.MILLISECONDS);
+    }
+
+    private void closeWhenIdle(HttpClientPool pool) {
+        if (pool.isIdle()) {
+            retired.remove(pool);
+            pool.close();
+            logManager.info(CoreLoggers.SERVER, "Closed replaced http connection pool '" + pool.getName() + "'.");
+        } else {
+            evictor.schedule(() -> closeWhenIdle(pool), EVICTION_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    private static long toMillis(TimeOut timeOut) {
+        return timeOut.getUnit().toMillis(timeOut.getDuration());
+    }
+
+    private HttpClientPool createPool(String backendSystem, HttpClientConfiguration configuration) {
+        logManager.info(CoreLoggers.SERVER, "Creating http connection pool '" + backendSystem + "' with " + configuration + ".");
+        return new HttpClientPool(backendSystem, configuration);
+    }
+
+    private void evictIdleConnections() {
+        for (HttpClientPool pool : pools.values()) {
+            try {
+                pool.evictIdleConnections();
+            } catch (Throwable t) {
+                logManager.warn(CoreLoggers.SERVER, "Unable to evict idle connections of pool '" + pool.getName() + "'.", t);
+            }
+        }
+    }
+}
@@ -16,6 +16,7 @@
 package io.kahu.hawaii.util.call.http;
 
 import io.kahu.hawaii.util.call.*;
+import io.kahu.hawaii.util.call.dispatch.RequestDispatcher;
 import io.kahu.hawaii.util.call.http.util.UriBuilder;
 import io.kahu.hawaii.util.exception.ServerError;
 import io.kahu.hawaii.util.exception.ServerException;
@@ -250,6 +251,10 @@ public class HttpRequestBuilder<T> implements RequestBuilder<T> {
         request.setCallback(callback);
 
         request.setHttpClientBuilder(HTTP_CLIENT_BUILDER);
+        RequestDispatcher requestDispatcher = prototype.getRequestDispatcher();
+        if (requestDispatcher != null && requestDispatcher.getHttpClientRepository() != null) {
+            request.setHttpClientPool(requestDispatcher.getHttpClientRepository().get(getRequestContext().getBackendSystem()));
+        }
         return request;
     }
 
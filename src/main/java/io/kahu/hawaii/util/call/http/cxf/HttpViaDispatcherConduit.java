@@ -125,6 +125,9 @@ public class HttpViaDispatcherConduit extends AbstractConduit implements Conduit
                     new CallLoggerImpl<>(logManager, new HttpRequestLogger(), new SoapResponseLogger()));
 
             soapRequest.setHttpClientBuilder(HTTP_CLIENT_BUILDER);
+            if (requestDispatcher.getHttpClientRepository() != null) {
+                soapRequest.setHttpClientPool(requestDispatcher.getHttpClientRepository().get(systemName));
+            }
 
             RequestConfiguration configuration = requestConfigurations.get(context.toString());
             context.setConfiguration(configuration);
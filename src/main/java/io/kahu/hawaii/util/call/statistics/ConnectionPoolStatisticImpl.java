@@ -0,0 +1,66 @@
+/**
+ * Copyright 2014-2018 Q24
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kahu.hawaii.util.call.statistics;
+
+import org.apache.http.annotation.ThreadSafe;
+import org.apache.http.pool.PoolStats;
+
+@ThreadSafe
+public class ConnectionPoolStatisticImpl implements ConnectionPoolStatistic {
+    private final String poolName;
+    private final int leased;
+    private final int available;
+    private final int pending;
+    private final int max;
+
+    public ConnectionPoolStatisticImpl(String poolName, PoolStats stats) {
+        this.poolName = poolName;
+        this.leased = stats.getLeased();
+        this.available = stats.getAvailable();
+        this.pending = stats.getPending();
+        this.max = stats.getMax();
+    }
+
+    @Override
+    public String getPoolName() {
+        return poolName;
+    }
+
+    @Override
+    public int getLeased() {
+        return leased;
+    }
+
+    @Override
+    public int getAvailable() {
+        return available;
+    }
+
+    @Override
+    public int getPending() {
+        return pending;
+    }
+
+    @Override
+    public int getMax() {
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return "'" + poolName + "' \n\tleased '" + leased + "' \n\tavailable '" + available + "' \n\tpending '" + pending + "' \n\tmax '" + max + "'.";
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright 2014-2018 Q24
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kahu.hawaii.util.call.statistics;
+
+import org.apache.http.annotation.ThreadSafe;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram with power of two buckets: bucket n counts the values in (2^(n-1), 2^n], the first bucket counts the values up to 1. Recording
+ * a value does not take a lock.
+ */
+@ThreadSafe
+public class Histogram {
+    private static final int BUCKETS = 64;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0L);
+
+    public void record(long value) {
+        long v = Math.max(0L, value);
+        buckets.incrementAndGet(v <= 1L ? 0 : BUCKETS - Long.numberOfLeadingZeros(v - 1L));
+        count.increment();
+        sum.add(v);
+        max.accumulate(v);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public double getMean() {
+        long n = count.sum();
+        return n == 0L ? 0.0D : (double) sum.sum() / n;
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @return the count per (non empty) bucket by the upper bound of the bucket, e.g. "<= 8".
+     */
+    public Map<String, Long> getCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (int i = 0; i < BUCKETS; i++) {
+            long n = buckets.get(i);
+            if (n > 0L) {
+                counts.put("<= " + (i == BUCKETS - 1 ? Long.MAX_VALUE : 1L << i), n);
+            }
+        }
+        return counts;
+    }
+
+    @Override
+    public String toString() {
+        return "count '" + getCount() + "' mean '" + getMean() + "' max '" + getMax() + "' " + getCounts();
+    }
+}
@@ -0,0 +1,70 @@
+/**
+ * Copyright 2014-2018 Q24
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kahu.hawaii.util.call.statistics;
+
+import org.apache.http.annotation.ThreadSafe;
+
+/**
+ * Queue statistics of one priority class of a prioritized queue.
+ */
+@ThreadSafe
+public class PriorityQueueStatistic {
+    private final int priority;
+    private final int queueSize;
+    private final long dequeuedCount;
+    private final double averageQueueTime;
+    private final double maximumQueueTime;
+
+    public PriorityQueueStatistic(int priority, int queueSize, long dequeuedCount, double averageQueueTime, double maximumQueueTime) {
+        this.priority = priority;
+        this.queueSize = queueSize;
+        this.dequeuedCount = dequeuedCount;
+        this.averageQueueTime = averageQueueTime;
+        this.maximumQueueTime = maximumQueueTime;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    public long getDequeuedCount() {
+        return dequeuedCount;
+    }
+
+    /**
+     * @return the average time (in milliseconds) the dequeued tasks of this priority spent in the queue.
+     */
+    public double getAverageQueueTime() {
+        return averageQueueTime;
+    }
+
+    /**
+     * @return the maximum time (in milliseconds) a dequeued task of this priority spent in the queue.
+     */
+    public double getMaximumQueueTime() {
+        return maximumQueueTime;
+    }
+
+    @Override
+    public String toString() {
+        return "priority '" + priority + "' queueSize '" + queueSize + "' dequeued '" + dequeuedCount + "' avg '" + averageQueueTime + "' max '"
+                + maximumQueueTime + "' msec";
+    }
+}
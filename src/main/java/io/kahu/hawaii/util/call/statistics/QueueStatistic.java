@@ -15,6 +15,8 @@
  */
 package io.kahu.hawaii.util.call.statistics;
 
+import java.util.Map;
+
 public interface QueueStatistic {
     String getQueueName();
 
@@ -34,4 +36,14 @@ public interface QueueStatistic {
 
     long getRejectedTaskCount();
 
+    /**
+     * @return the number of tasks cancelled before they started (for instance because their request timed out in the queue).
+     */
+    long getCancelledTaskCount();
+
+    /**
+     * @return the queue statistics per priority (ordered by priority), empty if the queue is not prioritized.
+     */
+    Map<Integer, PriorityQueueStatistic> getPriorityStatistics();
+
 }
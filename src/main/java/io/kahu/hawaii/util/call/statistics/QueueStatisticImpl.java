@@ -18,6 +18,10 @@ package io.kahu.hawaii.util.call.statistics;
 import io.kahu.hawaii.util.call.dispatch.HawaiiExecutorImpl;
 import org.apache.http.annotation.ThreadSafe;
 
+import java.util.Collections;
+import java.util.Map;
+import java.util.function.Supplier;
+
 @ThreadSafe
 public class QueueStatisticImpl implements QueueStatistic {
     private final String queueName;
@@ -29,7 +33,14 @@ public class QueueStatisticImpl implements QueueStatistic {
     private final int activeTaskCount;
     private final long completedTaskCount;
     private final long rejectedTaskCount;
-
+    private final long cancelledTaskCount;
+    private final Supplier<Map<Integer, PriorityQueueStatistic>> priorityStatisticsSupplier;
+    private volatile Map<Integer, PriorityQueueStatistic> priorityStatistics;
+
+    /**
+     * @deprecated takes the main lock of the executor several times, use {@link HawaiiExecutorImpl#getQueueStatistic()}.
+     */
+    @Deprecated
     public QueueStatisticImpl(HawaiiExecutorImpl executor) {
         this.queueName = executor.getName();
 
@@ -43,6 +54,45 @@ public class QueueStatisticImpl implements QueueStatistic {
         this.activeTaskCount = executor.getActiveCount();
         this.completedTaskCount = executor.getCompletedTaskCount();
         this.rejectedTaskCount = executor.getRejectedTaskCount();
+        this.cancelledTaskCount = executor.getCancelledTaskCount();
+        this.priorityStatistics = executor.getPriorityStatistics();
+        this.priorityStatisticsSupplier = null;
+    }
+
+    public QueueStatisticImpl(String queueName, int poolSize, int corePoolSize, int maximumPoolSize, int largestPoolSize, int queueSize, int activeTaskCount,
+            long completedTaskCount, long rejectedTaskCount) {
+        this(queueName, poolSize, corePoolSize, maximumPoolSize, largestPoolSize, queueSize, activeTaskCount, completedTaskCount, rejectedTaskCount,
+                Collections.emptyMap());
+    }
+
+    public QueueStatisticImpl(String queueName, int poolSize, int corePoolSize, int maximumPoolSize, int largestPoolSize, int queueSize, int activeTaskCount,
+            long completedTaskCount, long rejectedTaskCount, Map<Integer, PriorityQueueStatistic> priorityStatistics) {
+        this(queueName, poolSize, corePoolSize, maximumPoolSize, largestPoolSize, queueSize, activeTaskCount, completedTaskCount, rejectedTaskCount, 0L,
+                priorityStatistics);
+    }
+
+    public QueueStatisticImpl(String queueName, int poolSize, int corePoolSize, int maximumPoolSize, int largestPoolSize, int queueSize, int activeTaskCount,
+            long completedTaskCount, long rejectedTaskCount, long cancelledTaskCount, Map<Integer, PriorityQueueStatistic> priorityStatistics) {
+        this(queueName, poolSize, corePoolSize, maximumPoolSize, largestPoolSize, queueSize, activeTaskCount, completedTaskCount, rejectedTaskCount,
+                cancelledTaskCount, () -> priorityStatistics);
+    }
+
+    /**
+     * @param priorityStatistics taken the first time the statistics per priority are asked for (if ever)
+     */
+    public QueueStatisticImpl(String queueName, int poolSize, int corePoolSize, int maximumPoolSize, int largestPoolSize, int queueSize, int activeTaskCount,
+            long completedTaskCount, long rejectedTaskCount, long cancelledTaskCount, Supplier<Map<Integer, PriorityQueueStatistic>> priorityStatistics) {
+        this.queueName = queueName;
+        this.poolSize = poolSize;
+        this.corePoolSize = corePoolSize;
+        this.maximumPoolSize = maximumPoolSize;
+        this.largestPoolSize = largestPoolSize;
+        this.queueSize = queueSize;
+        this.activeTaskCount = activeTaskCount;
+        this.completedTaskCount = completedTaskCount;
+        this.rejectedTaskCount = rejectedTaskCount;
+        this.cancelledTaskCount = cancelledTaskCount;
+        this.priorityStatisticsSupplier = priorityStatistics;
     }
 
     @Override
@@ -90,10 +140,33 @@ public class QueueStatisticImpl implements QueueStatistic {
         return rejectedTaskCount;
     }
 
+    @Override
+    public long getCancelledTaskCount() {
+        return cancelledTaskCount;
+    }
+
+    @Override
+    public Map<Integer, PriorityQueueStatistic> getPriorityStatistics() {
+        Map<Integer, PriorityQueueStatistic> statistics = priorityStatistics;
+        if (statistics == null) {
+            statistics = priorityStatisticsSupplier.get();
+            priorityStatistics = statistics;
+        }
+        return statistics;
+    }
+
     @Override
     public String toString() {
         return "'" + queueName + "' \n\tpool_size '" + poolSize + "' \n\tcorePoolSize '" + corePoolSize + "' \n\tmaxPoolSize '" + maximumPoolSize
                 + "' \n\tlargestPoolSize '" + largestPoolSize + "' \n\tqueueSize '" + queueSize + "' \n\tactiveTaskCount '" + activeTaskCount
-                + "' \n\tcompletedTaskCount '" + completedTaskCount + "' \n\trejectedTaskCount '" + rejectedTaskCount + "'.";
+                + "' \n\tcompletedTaskCount '" + completedTaskCount + "' \n\trejectedTaskCount '" + rejectedTaskCount + "' \n\tcancelledTaskCount '" + cancelledTaskCount + "'" + toString(getPriorityStatistics()) + ".";
+    }
+
+    private static String toString(Map<Integer, PriorityQueueStatistic> priorityStatistics) {
+        StringBuilder builder = new StringBuilder();
+        for (PriorityQueueStatistic statistic : priorityStatistics.values()) {
+            builder.append(" \n\t").append(statistic);
+        }
+        return builder.toString();
     }
 }
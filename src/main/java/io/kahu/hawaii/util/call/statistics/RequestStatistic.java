@@ -23,6 +23,7 @@ public class RequestStatistic {
     private long startNano;
     private long startCallNano;
     private long endCallNano;
+    private long queueConversionNano;
     private long startConversionNano;
     private long endConversionNano;
     private long startCallbackNano;
@@ -30,8 +31,12 @@ public class RequestStatistic {
     private long endNano;
 
     private QueueStatistic queueStatistic;
+    private ConnectionPoolStatistic connectionPoolStatistic;
 
     private ResponseStatus status;
+    private boolean coalesced = false;
+    private boolean hedged = false;
+    private int attempt = 1;
 
     public void startRequest() {
         this.startNano = System.nanoTime();
@@ -57,6 +62,13 @@ public class RequestStatistic {
         this.endCallbackNano = System.nanoTime();
     }
 
+    /**
+     * The response is handed to the conversion stage.
+     */
+    public void queueConversion() {
+        queueConversionNano = System.nanoTime();
+    }
+
     public void startConversion() {
         startConversionNano = System.nanoTime();
     }
@@ -72,9 +84,21 @@ public class RequestStatistic {
         builder.append("\tTotal Duration '" + getTotalDuration() + "' msec.\n");
         builder.append("\tQueue time     '" + getQueueTime() + "' msec.\n");
         builder.append("\tCall time      '" + getCallTime() + "' msec.\n");
+        if (queueConversionNano != 0) {
+            builder.append("\tConversion q.  '" + getConversionQueueTime() + "' msec.\n");
+        }
         builder.append("\tConversion     '" + getConversionDuration() + "' msec.\n");
         builder.append("\tCallback       '" + getCallbackDuration() + "' msec.\n");
         builder.append("\tStatus         '" + status + "'.\n");
+        if (coalesced) {
+            builder.append("\tCoalesced with an identical request in flight.\n");
+        }
+        if (hedged) {
+            builder.append("\tHedged.\n");
+        }
+        if (attempt > 1) {
+            builder.append("\tAttempt        '" + attempt + "'.\n");
+        }
         return builder.toString();
     }
 
@@ -89,6 +113,10 @@ public class RequestStatistic {
         this.status = status;
     }
 
+    public ResponseStatus getStatus() {
+        return status;
+    }
+
     public double getTotalDuration() {
         return diff(startNano, endNano);
     }
@@ -105,10 +133,53 @@ public class RequestStatistic {
         return diff(startConversionNano, endConversionNano);
     }
 
+    /**
+     * @return the time the response waited for the conversion stage, 0 if the response was converted by the thread that executed the request.
+     */
+    public double getConversionQueueTime() {
+        if (queueConversionNano == 0) {
+            return 0.0D;
+        }
+        return diff(queueConversionNano, startConversionNano);
+    }
+
     public double getCallbackDuration() {
         return diff(startCallbackNano, endCallbackNano);
     }
 
+    public void setCoalesced(boolean coalesced) {
+        this.coalesced = coalesced;
+    }
+
+    /**
+     * @return true if the request was not executed itself but got the response of an identical request in flight.
+     */
+    public boolean isCoalesced() {
+        return coalesced;
+    }
+
+    public void setHedged(boolean hedged) {
+        this.hedged = hedged;
+    }
+
+    /**
+     * @return true if a copy of the request was dispatched because the request did not answer within the hedge delay.
+     */
+    public boolean isHedged() {
+        return hedged;
+    }
+
+    public void setAttempt(int attempt) {
+        this.attempt = attempt;
+    }
+
+    /**
+     * @return the attempt (1 based) of a retried request, for the request itself the number of attempts made.
+     */
+    public int getAttempt() {
+        return attempt;
+    }
+
     public void setQueueStatistic(QueueStatistic queueStatistic) {
         this.queueStatistic = queueStatistic;
     }
@@ -117,4 +188,12 @@ public class RequestStatistic {
         return queueStatistic;
     }
 
+    public void setConnectionPoolStatistic(ConnectionPoolStatistic connectionPoolStatistic) {
+        this.connectionPoolStatistic = connectionPoolStatistic;
+    }
+
+    public ConnectionPoolStatistic getConnectionPoolStatistic() {
+        return connectionPoolStatistic;
+    }
+
 }
@@ -742,11 +742,21 @@ public class DefaultLogManager implements LogManager {
             putContext("call.duration.queue", d);
         }
 
+        d = requestStatistic.getConversionQueueTime();
+        if (d != 0) {
+            putContext("call.duration.conversion_queue", d);
+        }
+
+        if (requestStatistic.getAttempt() > 1) {
+            putContext("call.attempt", requestStatistic.getAttempt());
+        }
+
         QueueStatistic queueStatistic = requestStatistic.getQueueStatistic();
         if (queueStatistic != null) {
             putContext("queue.name", queueStatistic.getQueueName());
 
             putContext("queue.tasks.rejected", queueStatistic.getRejectedTaskCount());
+            putContext("queue.tasks.cancelled", queueStatistic.getCancelledTaskCount());
             putContext("queue.tasks.completed", queueStatistic.getCompletedTaskCount());
             putContext("queue.tasks.active", queueStatistic.getActiveTaskCount());
             putContext("queue.tasks.pending", queueStatistic.getQueueSize());
@@ -103,6 +103,18 @@ public class LoggingContext {
         return context.get();
     }
 
+    /**
+     * Make the given LoggingContext instance (obtained with get() on this or
+     * another thread) the context of the current thread, for example to
+     * restore it after work that removed it.
+     *
+     * @param loggingContext
+     *            the context
+     */
+    public static void set(LoggingContext loggingContext) {
+        context.set(loggingContext);
+    }
+
     /**
      * Shortcut to get the top of the stack
      *
@@ -0,0 +1,44 @@
+/**
+ * Copyright 2014-2018 Q24
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kahu.hawaii.util.call;
+
+import org.junit.Test;
+
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class RandomRequestIdGeneratorTest {
+    private final RequestIdGenerator generator = new RandomRequestIdGenerator();
+
+    @Test
+    public void testGeneratesVersion4Uuids() {
+        UUID uuid = UUID.fromString(generator.generate());
+        assertThat(uuid.version(), is(4));
+        assertThat(uuid.variant(), is(2));
+    }
+
+    @Test
+    public void testIdsAreUniqueAcrossThreads() {
+        Set<String> ids = ConcurrentHashMap.newKeySet();
+        IntStream.range(0, 100000).parallel().forEach(i -> ids.add(generator.generate()));
+        assertThat(ids.size(), is(100000));
+    }
+}
@@ -0,0 +1,109 @@
+/**
+ * Copyright 2014-2018 Q24
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kahu.hawaii.util.call;
+
+import io.kahu.hawaii.util.call.statistics.RequestStatistic;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class ResponseTest {
+    private final Response<String> response = new Response<>(null, new RequestStatistic(), null);
+
+    @Test
+    public void testListenersRunWhenTheRequestIsDone() {
+        List<String> called = new ArrayList<>();
+        response.onComplete(r -> called.add("first"));
+        response.onComplete(r -> {
+            throw new IllegalStateException("broken listener");
+        });
+        response.onComplete(r -> called.add("second"));
+        assertThat(called.isEmpty(), is(true));
+
+        response.signalDone();
+        assertThat(called.size(), is(2));
+    }
+
+    @Test
+    public void testListenerAddedAfterCompletionRunsImmediately() {
+        response.signalDone();
+
+        AtomicReference<Response<String>> called = new AtomicReference<>();
+        response.onComplete(called::set);
+        assertThat(called.get(), is(sameInstance(response)));
+    }
+
+    @Test
+    public void testListenerRunsOnTheExecutor() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            CountDownLatch latch = new CountDownLatch(1);
+            AtomicReference<Thread> thread = new AtomicReference<>();
+            response.onComplete(r -> {
+                thread.set(Thread.currentThread());
+                latch.countDown();
+            }, executor);
+
+            response.signalDone();
+            assertTrue(latch.await(1, TimeUnit.SECONDS));
+            assertThat(thread.get(), is(not(sameInstance(Thread.currentThread()))));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testListenerExceptionsAreHandedToTheFailureHandler() throws Exception {
+        List<Throwable> failures = new CopyOnWriteArrayList<>();
+        response.setListenerFailureHandler(failures::add);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            IllegalStateException direct = new IllegalStateException("broken listener");
+            IllegalStateException onExecutor = new IllegalStateException("broken listener on the executor");
+            CountDownLatch latch = new CountDownLatch(1);
+            response.onComplete(r -> {
+                throw direct;
+            });
+            response.onComplete(r -> {
+                latch.countDown();
+                throw onExecutor;
+            }, executor);
+
+            response.signalDone();
+            assertTrue(latch.await(1, TimeUnit.SECONDS));
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(1, TimeUnit.SECONDS));
+            assertThat(failures.size(), is(2));
+            assertThat(failures.contains(direct), is(true));
+            assertThat(failures.contains(onExecutor), is(true));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/**
+ * Copyright 2014-2018 Q24
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kahu.hawaii.util.call.configuration;
+
+import io.kahu.hawaii.util.call.RequestContext;
+import io.kahu.hawaii.util.call.dispatch.ExecutorRepository;
+import io.kahu.hawaii.util.call.dispatch.HawaiiExecutorImpl;
+import io.kahu.hawaii.util.call.dispatch.RoutingTable;
+import io.kahu.hawaii.util.logger.DefaultLogManager;
+import io.kahu.hawaii.util.logger.LogManager;
+import io.kahu.hawaii.util.logger.LogManagerConfiguration;
+import io.kahu.hawaii.util.logger.LoggingConfiguration;
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class DispatcherConfiguratorTest {
+    private final LogManager logManager = new DefaultLogManager(new LogManagerConfiguration(new LoggingConfiguration()));
+
+    private ExecutorRepository executorRepository;
+    private RequestConfigurations requestConfigurations;
+    private DispatcherConfigurator configurator;
+
+    @Before
+    public void setUp() {
+        executorRepository = new ExecutorRepository(logManager);
+        requestConfigurations = new RequestConfigurations();
+        configurator = new DispatcherConfigurator(executorRepository, requestConfigurations, logManager);
+    }
+
+    @After
+    public void tearDown() {
+        executorRepository.stop();
+    }
+
+    private JSONObject config(int corePoolSize, int maxPendingRequests, String callQueue, int callTimeOut) throws JSONException {
+        return new JSONObject("{ 'queues': ["
+                + "{ 'name': 'default', 'core_pool_size': 1, 'max_pool_size': 2, 'keep_alive_time': 60, 'max_pending_requests': 10 },"
+                + "{ 'name': 'crm', 'core_pool_size': " + corePoolSize + ", 'max_pool_size': 4, 'keep_alive_time': 60, 'max_pending_requests': "
+                + maxPendingRequests + " } ],"
+                + "'systems': [ { 'name': 'crm', 'calls': [ { 'method': 'get', 'queue': '" + callQueue + "', 'time_out': " + callTimeOut + " } ] } ] }");
+    }
+
+    @Test
+    public void testPoolSizesAreChangedInPlace() throws JSONException {
+        configurator.configure(config(1, 10, "crm", 5));
+        HawaiiExecutorImpl crm = (HawaiiExecutorImpl) executorRepository.getExecutorByName("crm");
+
+        configurator.configure(config(3, 10, "crm", 5));
+
+        assertThat(executorRepository.getExecutorByName("crm"), is(sameInstance(crm)));
+        assertThat(crm.getCorePoolSize(), is(3));
+        assertThat(crm.isShutdown(), is(false));
+    }
+
+    @Test
+    public void testQueueIsReplacedWhenItsCapacityChanges() throws Exception {
+        configurator.configure(config(1, 10, "crm", 5));
+        HawaiiExecutorImpl crm = (HawaiiExecutorImpl) executorRepository.getExecutorByName("crm");
+
+        configurator.configure(config(1, 20, "crm", 5));
+
+        assertThat(executorRepository.getExecutorByName("crm"), is(not(sameInstance(crm))));
+        awaitShutdown(crm);
+        assertThat(crm.isShutdown(), is(true));
+    }
+
+    @Test
+    public void testRequestsSubmittedWhileTheQueueIsReplacedAreExecutedOrRejected() throws Exception {
+        configurator.configure(config(1, 10, "crm", 5));
+        // A request that resolved the queue just before the reload.
+        HawaiiExecutorImpl crm = (HawaiiExecutorImpl) executorRepository.getExecutorByName("crm");
+
+        configurator.configure(config(1, 20, "crm", 5));
+
+        CountDownLatch executed = new CountDownLatch(1);
+        crm.execute(executed::countDown);
+        assertThat(executed.await(1, TimeUnit.SECONDS), is(true));
+
+        awaitShutdown(crm);
+        try {
+            crm.execute(() -> fail("A retired queue does not execute new requests."));
+            fail("Expected the retired queue to reject the request.");
+        } catch (RejectedExecutionException e) {
+            // expected, the request is not left in the queue of the retired executor
+        }
+        assertThat(crm.getQueue().size(), is(0));
+        assertThat(crm.getQueueStatistic().getRejectedTaskCount(), is(1L));
+    }
+
+    private void awaitShutdown(HawaiiExecutorImpl executor) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000L;
+        while (!executor.isShutdown() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10L);
+        }
+    }
+
+    @Test
+    public void testCallRoutingAndTimeOutAreUpdated() throws JSONException {
+        configurator.configure(config(1, 10, "crm", 5));
+
+        configurator.configure(config(1, 10, "default", 7));
+
+        RequestConfiguration configuration = requestConfigurations.get("crm.get");
+        assertThat(configuration.getExecutorName(), is("default"));
+        assertThat(configuration.getTimeOut().getDuration(), is(7L));
+    }
+
+    @Test
+    public void testRemovedSettingsAreTurnedOff() throws JSONException {
+        JSONObject json = config(1, 10, "crm", 5);
+        JSONObject system = json.getJSONArray("systems").getJSONObject(0);
+        system.put("rate_limit", new JSONObject("{ 'rate': 10 }"));
+        system.put("forward_deadline", true);
+        JSONObject call = system.getJSONArray("calls").getJSONObject(0);
+        call.put("circuit_breaker", new JSONObject("{ 'failure_rate_threshold': 50 }"));
+        call.put("hedge", new JSONObject("{ 'delay': 20 }"));
+        call.put("priority", 5);
+        configurator.configure(json);
+        RoutingTable.Route route = executorRepository.getRoutingTable().getRoute(new RequestContext<>("crm", "get"));
+        assertThat(route.getCircuitBreaker(), is(not(nullValue())));
+        assertThat(route.getRateLimiters().size(), is(1));
+        assertThat(route.isForwardingDeadline(), is(true));
+
+        configurator.configure(new JSONObject("{ 'queues': [ { 'name': 'default', 'core_pool_size': 1, 'max_pool_size': 2, 'keep_alive_time': 60, "
+                + "'max_pending_requests': 10 } ], 'systems': [ { 'name': 'crm', 'calls': [ { 'method': 'get' } ] } ] }"));
+
+        route = executorRepository.getRoutingTable().getRoute(new RequestContext<>("crm", "get"));
+        assertThat(route.getCircuitBreaker(), is(nullValue()));
+        assertThat(route.getHedgingPolicy(), is(nullValue()));
+        assertThat(route.getRateLimiters().isEmpty(), is(true));
+        assertThat(route.isForwardingDeadline(), is(false));
+        assertThat(route.getTimeOut(), is(nullValue()));
+        assertThat(route.getExecutor(), is(sameInstance(executorRepository.getExecutorByName("default"))));
+        assertThat(requestConfigurations.get("crm.get").getPriority(), is(0));
+    }
+
+    @Test
+    public void testInvalidConfigurationIsNotApplied() throws JSONException {
+        configurator.configure(config(1, 10, "crm", 5));
+        HawaiiExecutorImpl crm = (HawaiiExecutorImpl) executorRepository.getExecutorByName("crm");
+
+        try {
+            configurator.configure(config(3, 20, "unknown", 7));
+            fail("Expected an invalid configuration.");
+        } catch (JSONException e) {
+            // expected
+        }
+
+        assertThat(executorRepository.getExecutorByName("crm"), is(sameInstance(crm)));
+        assertThat(crm.getCorePoolSize(), is(1));
+        assertThat(requestConfigurations.get("crm.get").getExecutorName(), is("crm"));
+        assertThat(executorRepository.getExecutorByName("unknown"), is(nullValue()));
+    }
+}
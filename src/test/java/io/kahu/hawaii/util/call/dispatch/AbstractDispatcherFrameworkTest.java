@@ -16,6 +16,7 @@
 package io.kahu.hawaii.util.call.dispatch;
 
 import io.kahu.hawaii.util.call.*;
+import io.kahu.hawaii.util.call.configuration.RequestConfigurations;
 import io.kahu.hawaii.util.call.log.CallLogger;
 import io.kahu.hawaii.util.call.statistics.QueueStatistic;
 import io.kahu.hawaii.util.exception.ServerException;
@@ -26,11 +27,14 @@ import io.kahu.hawaii.util.logger.LoggingConfiguration;
 import org.junit.After;
 import org.mockito.Mock;
 
+import java.util.Collections;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.TimeUnit;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.anyObject;
+import static org.mockito.Mockito.doAnswer;
 
 public class AbstractDispatcherFrameworkTest {
     private LogManager logManager = new DefaultLogManager(new LogManagerConfiguration(new LoggingConfiguration()));
@@ -59,6 +63,18 @@ public class AbstractDispatcherFrameworkTest {
         return callLogger;
     }
 
+    /**
+     * Route the requests dispatched via the (mocked) repository to the executor of the test, with the given configurations (may be null).
+     */
+    protected void route(ExecutorRepository executorRepository, RequestConfigurations requestConfigurations) {
+        RoutingTable table = RoutingTable.build(Collections.singletonMap(ExecutorRepository.DEFAULT_EXECUTOR_NAME, getExecutor()),
+                Collections.emptyMap(), requestConfigurations);
+        doAnswer(invocation -> {
+            AbortableRequest<?> request = (AbortableRequest<?>) invocation.getArguments()[0];
+            return table.getRoute(request.getContext());
+        }).when(executorRepository).getRoute(anyObject());
+    }
+
     protected TestRequest createRequest() {
         return createRequest(0);
     }
@@ -87,7 +103,7 @@ public class AbstractDispatcherFrameworkTest {
     }
 
     protected void verifyStatistics(int active, int queue, long completed, long rejected) {
-        QueueStatistic queueStatistic = getExecutor().getQueueStatistic();
+        QueueStatistic queueStatistic = getQueueStatistic();
 
         assertThat("Task count differs", queueStatistic.getActiveTaskCount(), is(active));
         assertThat("Queue size differs", queueStatistic.getQueueSize(), is(queue));
@@ -95,6 +111,26 @@ public class AbstractDispatcherFrameworkTest {
         assertThat("Rejected count differs", queueStatistic.getRejectedTaskCount(), is(rejected));
     }
 
+    /**
+     * Wait (at most a second) until the threads of the executor reach the statistics, then verify them.
+     */
+    protected void awaitStatistics(int active, int queue, int completed, int rejected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 1000;
+        while (System.currentTimeMillis() < deadline) {
+            QueueStatistic queueStatistic = getQueueStatistic();
+            if (queueStatistic.getActiveTaskCount() == active && queueStatistic.getQueueSize() == queue
+                    && queueStatistic.getCompletedTaskCount() == completed && queueStatistic.getRejectedTaskCount() == rejected) {
+                break;
+            }
+            Thread.sleep(1);
+        }
+        verifyStatistics(active, queue, completed, rejected);
+    }
+
+    protected QueueStatistic getQueueStatistic() {
+        return getExecutor().getQueueStatistic();
+    }
+
     protected void createExecutor(int coreSize, int maxSize, int queueSize) {
         executor = new HawaiiExecutorImpl("name", coreSize, maxSize, queueSize, new TimeOut(1, TimeUnit.MINUTES), logManager);
         executor.prestartAllCoreThreads();
@@ -15,13 +15,35 @@
  */
 package io.kahu.hawaii.util.call.dispatch;
 
+import io.kahu.hawaii.util.call.ResponseStatus;
+import io.kahu.hawaii.util.call.TimeOut;
+import io.kahu.hawaii.util.call.dispatch.limit.AimdLimit;
+import io.kahu.hawaii.util.call.dispatch.limit.CoDel;
+import io.kahu.hawaii.util.call.dispatch.limit.ConcurrencyLimiter;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 
 public class HawaiiExecutorImplTest extends AbstractDispatcherFrameworkTest {
+    private static final long MSEC = TimeUnit.MILLISECONDS.toNanos(1);
+
     @Rule
     public ExpectedException thrown = ExpectedException.none();
 
@@ -45,18 +67,15 @@ public class HawaiiExecutorImplTest extends AbstractDispatcherFrameworkTest {
 
         // r1 will be directly consumed by the core thread.
         TestRequest r1 = exec(createRequest());
-        Thread.sleep(1);
-        verifyStatistics(1, 0, 0, 0);
+        awaitStatistics(1, 0, 0, 0);
 
         // r2 will create a new thread, which will consume r2.
         TestRequest r2 = exec(createRequest());
-        Thread.sleep(1);
-        verifyStatistics(2, 0, 0, 0);
+        awaitStatistics(2, 0, 0, 0);
 
         // r3 will be queued.
         TestRequest r3 = exec(createRequest());
-        Thread.sleep(1);
-        verifyStatistics(2, 1, 0, 0);
+        awaitStatistics(2, 1, 0, 0);
 
         // r4 will be rejected
         thrown.expect(RejectedExecutionException.class);
@@ -69,27 +88,151 @@ public class HawaiiExecutorImplTest extends AbstractDispatcherFrameworkTest {
         verifyStatistics(2, 1, 0, 2);
     }
 
+    @Test
+    public void testStatisticsFollowThreadsAndTasks() throws InterruptedException {
+        createExecutor(1, 2, 1);
+
+        TestRequest r1 = exec(createRequest());
+        TestRequest r2 = exec(createRequest());
+        awaitStatistics(2, 0, 0, 0);
+        assertThat(getQueueStatistic().getPoolSize(), is(2));
+        assertThat(getQueueStatistic().getLargestPoolSize(), is(2));
+
+        r1.proceed();
+        r2.proceed();
+        awaitStatistics(0, 0, 2, 0);
+        assertThat(getQueueStatistic().getLargestPoolSize(), is(2));
+    }
+
+    @Test
+    public void testConcurrencyLimitRejectsTasks() throws InterruptedException {
+        createExecutor(2, 2, 2);
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(new AimdLimit(1, 1, 4, 0.5D, 0.0D));
+        getExecutor().setConcurrencyLimiter(limiter);
+
+        // Another request is in flight, which takes the only place.
+        assertThat(limiter.tryAcquire(), is(true));
+        try {
+            exec(createRequest());
+            fail("Expected the request to be rejected.");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+        verifyStatistics(0, 0, 0, 1);
+        assertThat(limiter.getInFlight(), is(1));
+
+        limiter.release();
+        exec(createRequest()).proceed();
+        awaitStatistics(0, 0, 1, 1);
+    }
+
+    @Test
+    public void testStandingQueueIsShed() throws InterruptedException {
+        createExecutor(1, 1, 3);
+        // Each task taken from the queue reports a fixed sojourn time and time (in milliseconds) instead of the real ones.
+        long[][] taken = { { 0L, 0L }, { 20L, 20L }, { 40L, 40L }, { 40L, 40L } };
+        AtomicInteger next = new AtomicInteger(0);
+        getExecutor().setCoDel(new CoDel(5, 10) {
+            @Override
+            public synchronized boolean shouldShed(long sojournTime, boolean queueEmpty, long now) {
+                long[] fixed = taken[next.getAndIncrement()];
+                return super.shouldShed(fixed[0] * MSEC, queueEmpty, fixed[1] * MSEC);
+            }
+        });
+
+        TestRequest r1 = exec(createRequest());
+        awaitStatistics(1, 0, 0, 0);
+        TestRequest r2 = exec(createRequest());
+        TestRequest r3 = exec(createRequest());
+        TestRequest r4 = exec(createRequest());
+        r3.proceed();
+        r4.proceed();
+
+        // r2 starts the interval, r3 is taken after the interval and shed, r4 empties the queue.
+        r1.proceed();
+        awaitStatistics(1, 2, 1, 0);
+        r2.proceed();
+        awaitStatistics(0, 0, 4, 1);
+
+        assertThat(r2.isRejected(), is(false));
+        assertThat(r3.isRejected(), is(true));
+        assertThat(r3.getResponse().getStatus(), is(ResponseStatus.TOO_BUSY));
+        assertThat(r4.isRejected(), is(false));
+        assertThat(next.get(), is(4));
+    }
+
+    @Test
+    public void testCancelledTaskIsRemovedFromTheQueue() throws InterruptedException {
+        createExecutor(1, 1, 1);
+        getExecutor().setConcurrencyLimiter(new ConcurrencyLimiter(new AimdLimit(2, 1, 2, 0.9D, 0.0D)));
+
+        TestRequest r1 = exec(createRequest());
+        Thread.sleep(10);
+        TestRequest r2 = createRequest();
+        FutureTask<String> task = getExecutor().execute(r2, r2.getResponse());
+        verifyStatistics(1, 1, 0, 0);
+
+        getExecutor().cancel(task);
+        assertThat(task.isCancelled(), is(true));
+        assertThat(getQueueStatistic().getCancelledTaskCount(), is(1L));
+        verifyStatistics(1, 0, 0, 0);
+
+        // The place in the queue and the permit of the limiter are free again.
+        TestRequest r3 = exec(createRequest());
+        verifyStatistics(1, 1, 0, 0);
+
+        r1.proceed();
+        r2.proceed();
+        r3.proceed();
+        awaitStatistics(0, 0, 2, 0);
+        assertThat(getQueueStatistic().getCancelledTaskCount(), is(1L));
+    }
+
+    @Test
+    public void testTaskInterruptedWhileWaitingForAPermitIsRejected() throws Exception {
+        HawaiiExecutorImpl executor = new HawaiiExecutorImpl("interrupted", 1, 1, 1, new TimeOut(1, TimeUnit.MINUTES), getLogManager());
+        executor.setCallerRuns(true);
+
+        // The caller holds the only permit.
+        TestRequest blocking = createRequest();
+        Thread caller = new Thread(() -> executor.executeOnCaller(blocking, blocking.getResponse()));
+        caller.start();
+        for (int i = 0; i < 1000 && executor.getQueueStatistic().getActiveTaskCount() == 0; i++) {
+            Thread.sleep(1);
+        }
+
+        // The thread of the pool waits for the permit until it is interrupted.
+        TestRequest waiting = createRequest();
+        FutureTask<String> task = executor.execute(waiting, waiting.getResponse());
+        executor.shutdownNow();
+        task.get(1, TimeUnit.SECONDS);
+
+        assertThat(waiting.isRejected(), is(true));
+        assertThat(waiting.getResponse().getStatus(), is(ResponseStatus.TOO_BUSY));
+        assertThat(executor.getQueueStatistic().getRejectedTaskCount(), is(1L));
+
+        blocking.proceed();
+        caller.join(1000);
+        assertThat(blocking.getResponse().getStatus(), is(ResponseStatus.SUCCESS));
+    }
+
     @Test
     public void testExecutorKeepsTrackOfCompletedTasks() throws InterruptedException {
         createExecutor(1, 1, 1);
 
         // This one is directly consumed by one of the threads
         TestRequest r1 = exec(createRequest());
-        Thread.sleep(1);
-        verifyStatistics(1, 0, 0, 0);
+        awaitStatistics(1, 0, 0, 0);
 
         // This one is queued
         TestRequest r2 = exec(createRequest());
-        Thread.sleep(1);
-        verifyStatistics(1, 1, 0, 0);
+        awaitStatistics(1, 1, 0, 0);
 
         r1.proceed();
-        Thread.sleep(2);
-        verifyStatistics(1, 0, 1, 0);
+        awaitStatistics(1, 0, 1, 0);
 
         r2.proceed();
-        Thread.sleep(2);
-        verifyStatistics(0, 0, 2, 0);
+        awaitStatistics(0, 0, 2, 0);
     }
 
     @Test
@@ -98,13 +241,11 @@ public class HawaiiExecutorImplTest extends AbstractDispatcherFrameworkTest {
 
         // r1 will be directly consumed by the core thread.
         TestRequest r1 = exec(createRequest());
-        Thread.sleep(1);
-        verifyStatistics(1, 0, 0, 0);
+        awaitStatistics(1, 0, 0, 0);
 
         // r2 will be queued.
         TestRequest r2 = exec(createRequest());
-        Thread.sleep(1);
-        verifyStatistics(1, 1, 0, 0);
+        awaitStatistics(1, 1, 0, 0);
 
         // r3 will be queued.
         thrown.expect(RejectedExecutionException.class);
@@ -126,8 +267,51 @@ public class HawaiiExecutorImplTest extends AbstractDispatcherFrameworkTest {
         // r5 will be processed normally.
         thrown.expect(RejectedExecutionException.class);
         TestRequest r5 = exec(createRequest());
-        Thread.sleep(1);
-        verifyStatistics(1, 0, 2, 1);
+        awaitStatistics(1, 0, 2, 1);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testSubmittingDoesNotTakeTheLockOfTheQueue() throws Exception {
+        AtomicInteger sizeCalls = new AtomicInteger(0);
+        BlockingQueue<Runnable> workQueue = new ArrayBlockingQueue<Runnable>(100) {
+            @Override
+            public int size() {
+                // ArrayBlockingQueue takes its lock to count the tasks.
+                sizeCalls.incrementAndGet();
+                return super.size();
+            }
+        };
+        HawaiiExecutorImpl executor = new HawaiiExecutorImpl("name", 1, 1, new TimeOut(1, TimeUnit.MINUTES), workQueue, new HawaiiThreadFactory("name"),
+                null, getLogManager());
+        TestRequest blocking = createRequest();
+        try {
+            executor.execute(blocking, blocking.getResponse());
+
+            // Four threads submit twenty requests each while the only thread of the pool is busy.
+            ExecutorService submitters = Executors.newFixedThreadPool(4);
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> submitted = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                submitted.add(submitters.submit(() -> {
+                    start.await();
+                    for (int j = 0; j < 20; j++) {
+                        TestRequest request = createRequest();
+                        executor.execute(request, request.getResponse());
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : submitted) {
+                future.get(5, TimeUnit.SECONDS);
+            }
+            submitters.shutdown();
+
+            assertThat(executor.getQueueStatistic().getQueueSize(), is(80));
+            assertThat(sizeCalls.get(), is(0));
+        } finally {
+            blocking.proceed();
+            executor.shutdownNow();
+        }
+    }
+}
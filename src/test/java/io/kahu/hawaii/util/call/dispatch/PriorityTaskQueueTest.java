@@ -0,0 +1,155 @@
+/**
+ * Copyright 2014-2018 Q24
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kahu.hawaii.util.call.dispatch;
+
+import io.kahu.hawaii.util.call.TimeOut;
+import io.kahu.hawaii.util.call.statistics.PriorityQueueStatistic;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class PriorityTaskQueueTest extends AbstractDispatcherFrameworkTest {
+    private HawaiiExecutorImpl executor;
+
+    @After
+    public void stopExecutor() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    private FutureRequest<String> createTask(int priority) {
+        TestRequest request = createRequest();
+        request.getContext().getConfiguration().setPriority(priority);
+        return new FutureRequest<>(request, request.getResponse());
+    }
+
+    @Test
+    public void testHigherPriorityIsTakenFirst() {
+        PriorityTaskQueue queue = new PriorityTaskQueue(10, TimeUnit.HOURS.toMillis(1));
+        FutureRequest<String> low = createTask(0);
+        FutureRequest<String> high = createTask(5);
+        FutureRequest<String> medium = createTask(1);
+        FutureRequest<String> otherLow = createTask(0);
+        queue.add(low);
+        queue.add(high);
+        queue.add(medium);
+        queue.add(otherLow);
+
+        assertThat(queue.poll(), is(sameInstance(high)));
+        assertThat(queue.poll(), is(sameInstance(medium)));
+        assertThat(queue.poll(), is(sameInstance(low)));
+        assertThat(queue.poll(), is(sameInstance(otherLow)));
+        assertThat(queue.poll() == null, is(true));
+    }
+
+    @Test
+    public void testWaitingTasksAge() throws InterruptedException {
+        PriorityTaskQueue queue = new PriorityTaskQueue(10, 1);
+        FutureRequest<String> low = createTask(0);
+        queue.add(low);
+        Thread.sleep(20);
+        FutureRequest<String> high = createTask(5);
+        queue.add(high);
+
+        assertThat(queue.poll(), is(sameInstance(low)));
+        assertThat(queue.poll(), is(sameInstance(high)));
+    }
+
+    @Test
+    public void testQueueIsBounded() {
+        PriorityTaskQueue queue = new PriorityTaskQueue(1, 1000);
+        queue.add(createTask(0));
+
+        assertThat(queue.offer(createTask(5)), is(false));
+        assertThat(queue.remainingCapacity(), is(0));
+        try {
+            queue.add(createTask(5));
+            fail("Expected a full queue.");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testRemovingViaTheIteratorRemovesTheTask() {
+        HawaiiBlockingQueue<Runnable> queue = new HawaiiBlockingQueue<>(new PriorityTaskQueue(10, 1000));
+        FutureRequest<String> low = createTask(0);
+        FutureRequest<String> high = createTask(5);
+        queue.add(low);
+        queue.add(high);
+
+        Iterator<Runnable> iterator = queue.iterator();
+        Runnable removed = iterator.next();
+        iterator.remove();
+        assertThat(queue.size(), is(1));
+        assertThat(queue.getDepth(), is(1));
+        assertThat(queue.contains(removed), is(false));
+
+        // A task taken meanwhile is not removed (again).
+        Runnable taken = iterator.next();
+        assertThat(queue.poll(), is(sameInstance(taken)));
+        iterator.remove();
+        assertThat(queue.size(), is(0));
+        assertThat(queue.getDepth(), is(0));
+    }
+
+    @Test
+    public void testQueueStatisticsArePerPriority() throws InterruptedException {
+        executor = new HawaiiExecutorImpl("prioritized", 1, 1, new TimeOut(1, TimeUnit.MINUTES), new PriorityTaskQueue(10, 1000), new HawaiiThreadFactory(
+                "prioritized"), null, getLogManager());
+        executor.prestartAllCoreThreads();
+
+        TestRequest blocking = createRequest();
+        executor.execute(blocking, blocking.getResponse());
+        // Wait until the worker took the blocking request, otherwise it may take the high priority request instead.
+        for (int i = 0; i < 1000 && executor.getQueueStatistic().getPriorityStatistics().get(0).getDequeuedCount() == 0L; i++) {
+            Thread.sleep(1);
+        }
+        TestRequest low = createRequest();
+        executor.execute(low, low.getResponse());
+        TestRequest high = createRequest();
+        high.getContext().getConfiguration().setPriority(2);
+        executor.execute(high, high.getResponse());
+        Thread.sleep(20);
+
+        Map<Integer, PriorityQueueStatistic> statistics = executor.getQueueStatistic().getPriorityStatistics();
+        assertThat(statistics.get(0).getQueueSize(), is(1));
+        assertThat(statistics.get(2).getQueueSize(), is(1));
+
+        blocking.proceed();
+        high.proceed();
+        Thread.sleep(20);
+
+        statistics = executor.getQueueStatistic().getPriorityStatistics();
+        assertThat(statistics.get(2).getQueueSize(), is(0));
+        assertThat(statistics.get(2).getDequeuedCount(), is(1L));
+        assertThat(statistics.get(2).getMaximumQueueTime() >= 10.0D, is(true));
+        assertThat(statistics.get(0).getQueueSize(), is(0));
+        // The blocking request was queued as well, it was taken by the idle worker right away.
+        assertThat(statistics.get(0).getDequeuedCount(), is(2L));
+
+        low.proceed();
+    }
+}
@@ -16,6 +16,14 @@
 package io.kahu.hawaii.util.call.dispatch;
 
 import io.kahu.hawaii.util.call.*;
+import io.kahu.hawaii.util.call.configuration.RequestConfigurations;
+import io.kahu.hawaii.util.call.dispatch.circuit.CircuitBreaker;
+import io.kahu.hawaii.util.call.dispatch.hedge.HedgingPolicy;
+import io.kahu.hawaii.util.call.dispatch.limit.RateLimiter;
+import io.kahu.hawaii.util.call.dispatch.limit.TokenBudget;
+import io.kahu.hawaii.util.call.dispatch.retry.RetryPolicy;
+import io.kahu.hawaii.util.call.http.HttpClientPool;
+import io.kahu.hawaii.util.call.http.HttpClientRepository;
 import io.kahu.hawaii.util.exception.ServerError;
 import io.kahu.hawaii.util.exception.ServerException;
 import org.junit.Before;
@@ -25,10 +33,27 @@ import org.junit.rules.ExpectedException;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.anyObject;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class RequestDispatcherTest extends AbstractDispatcherFrameworkTest {
@@ -48,7 +73,7 @@ public class RequestDispatcherTest extends AbstractDispatcherFrameworkTest {
 
     private void setUp(int maxSize) {
         createExecutor(1, maxSize, 1);
-        when(executorRepository.getExecutor(anyObject())).thenReturn(getExecutor());
+        route(executorRepository, null);
         when(executorRepository.getAsyncExecutor(anyObject())).thenReturn(getExecutor());
 
         requestDispatcher = new RequestDispatcher(executorRepository, getLogManager());
@@ -72,6 +97,22 @@ public class RequestDispatcherTest extends AbstractDispatcherFrameworkTest {
         assertThat(response.get(), is(equalTo("Backend response.")));
     }
 
+    @Test
+    public void testStopClosesTheHttpPoolsOfTheDispatcherOnly() {
+        RequestDispatcher dispatcher = new RequestDispatcher(executorRepository, getLogManager());
+        HttpClientPool ownPool = dispatcher.getHttpClientRepository().get("crm");
+        HttpClientRepository shared = new HttpClientRepository(getLogManager());
+        RequestDispatcher sharing = new RequestDispatcher(executorRepository, shared, getLogManager());
+        HttpClientPool sharedPool = shared.get("crm");
+
+        dispatcher.stop();
+        sharing.stop();
+
+        assertThat(ownPool.isClosed(), is(true));
+        assertThat(sharedPool.isClosed(), is(false));
+        shared.stop();
+    }
+
     @Test
     public void testRequestTimesOut() throws InterruptedException, ServerException {
         setUp(1);
@@ -98,24 +139,305 @@ public class RequestDispatcherTest extends AbstractDispatcherFrameworkTest {
         assertThat(request.isRejected(), is(true));
     }
 
+    @Test
+    public void testRequestShortCircuitedWhenCircuitIsOpen() throws InterruptedException, ServerException {
+        setUp(1);
+        RequestConfigurations requestConfigurations = new RequestConfigurations();
+        CircuitBreaker circuitBreaker = new CircuitBreaker("test", 50, 1, 10, new TimeOut(1, TimeUnit.MINUTES), 1, getLogManager());
+        requestConfigurations.get("test").setCircuitBreaker(circuitBreaker);
+        route(executorRepository, requestConfigurations);
+
+        TestRequest request = createRequest(1);
+        requestDispatcher.execute(request);
+        request.proceed();
+        assertThat(circuitBreaker.isOpen(), is(true));
+
+        request = createRequest(1);
+        Response<String> response = requestDispatcher.execute(request);
+
+        assertThat(request.isRejected(), is(true));
+        assertThat(response.getStatus(), is(ResponseStatus.TOO_BUSY));
+    }
+
+    @Test
+    public void testRequestRejectedWhenRateLimitIsReached() throws InterruptedException, ServerException {
+        setUp(2);
+        RequestConfigurations requestConfigurations = new RequestConfigurations();
+        requestConfigurations.get("test").setRateLimiter(new RateLimiter(0.1D, 1, 0));
+        route(executorRepository, requestConfigurations);
+
+        TestRequest request = createRequest(1);
+        request.proceed();
+        assertThat(requestDispatcher.execute(request).getStatus(), is(ResponseStatus.SUCCESS));
+
+        request = createRequest(1);
+        request.proceed();
+        Response<String> response = requestDispatcher.execute(request);
+
+        assertThat(request.isRejected(), is(true));
+        assertThat(response.getStatus(), is(ResponseStatus.TOO_BUSY));
+    }
+
+    @Test
+    public void testTokensAreGivenBackWhenAnotherRateLimitRejects() throws InterruptedException, ServerException {
+        setUp(2);
+        RequestConfigurations requestConfigurations = new RequestConfigurations();
+        RateLimiter callRateLimiter = new RateLimiter(0.1D, 1, 0);
+        RateLimiter systemRateLimiter = new RateLimiter(0.1D, 1, 0);
+        requestConfigurations.get("test.method").setRateLimiter(callRateLimiter);
+        requestConfigurations.get("test").setRateLimiter(systemRateLimiter);
+        route(executorRepository, requestConfigurations);
+        assertThat(systemRateLimiter.tryAcquire(), is(true));
+
+        TestRequest request = createRequest(1);
+        request.proceed();
+        Response<String> response = requestDispatcher.execute(request);
+
+        assertThat(response.getStatus(), is(ResponseStatus.TOO_BUSY));
+        // The rejected request did not use up the token of the call.
+        assertThat(callRateLimiter.tryAcquire(), is(true));
+    }
+
+    @Test
+    public void testRequestDoesNotWaitForATokenBeyondItsTimeOut() throws InterruptedException, ServerException {
+        setUp(2);
+        RequestConfigurations requestConfigurations = new RequestConfigurations();
+        requestConfigurations.get("test").setRateLimiter(new RateLimiter(0.1D, 1, 20000));
+        route(executorRepository, requestConfigurations);
+
+        TestRequest request = createRequest(1);
+        request.proceed();
+        assertThat(requestDispatcher.execute(request).getStatus(), is(ResponseStatus.SUCCESS));
+
+        // The next token comes in 10 seconds, after the time out of 1 second.
+        long start = System.nanoTime();
+        request = createRequest(1);
+        request.proceed();
+        Response<String> response = requestDispatcher.execute(request);
+
+        assertThat(response.getStatus(), is(ResponseStatus.TOO_BUSY));
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 500L, is(true));
+    }
+
+    @Test
+    public void testIdenticalRequestsAreCoalesced() throws InterruptedException, ServerException {
+        setUp(1);
+        RequestConfigurations requestConfigurations = new RequestConfigurations();
+        requestConfigurations.setCoalescing("test.method", true);
+        route(executorRepository, requestConfigurations);
+
+        TestRequest leader = createRequest(1);
+        leader.setFingerprint("GET /customer/1");
+        Response<String> leaderResponse = dispatch(requestDispatcher, leader);
+        Thread.sleep(30);
+
+        TestRequest follower = createRequest(1);
+        follower.setFingerprint("GET /customer/1");
+        Response<String> followerResponse = dispatch(requestDispatcher, follower);
+        Thread.sleep(30);
+        verifyStatistics(1, 0, 0, 0);
+
+        leader.proceed();
+
+        assertThat(leaderResponse.get(), is(equalTo("Backend response.")));
+        assertThat(followerResponse.get(), is(equalTo("Backend response.")));
+        assertThat(follower.getStatistic().isCoalesced(), is(true));
+        assertThat(leader.getStatistic().isCoalesced(), is(false));
+    }
+
+    @Test
+    public void testSlowRequestIsHedged() throws InterruptedException, ServerException {
+        setUp(2);
+        RequestConfigurations requestConfigurations = new RequestConfigurations();
+        requestConfigurations.get("test.method").setHedgingPolicy(new HedgingPolicy(20, -1, 0));
+        route(executorRepository, requestConfigurations);
+        when(executorRepository.getHedgeBudget(anyString())).thenReturn(new TokenBudget(1.0D, 1, 0));
+
+        TestRequest request = createRequest(1);
+        List<TestRequest> copies = request.enableCopies();
+        Response<String> response = dispatch(requestDispatcher, request);
+        Thread.sleep(60);
+        assertThat(copies.size(), is(2));
+
+        copies.get(1).proceed();
+
+        assertThat(response.get(), is(equalTo("Backend response.")));
+        assertThat(request.getStatistic().isHedged(), is(true));
+        assertThat(copies.get(0).isAborted(), is(true));
+        // The losing copy is finished, so its backend call is logged.
+        assertThat(copies.get(0).getResponse().getStatus(), is(ResponseStatus.CANCELLED));
+        verify(getCallLogger()).logResponse(copies.get(0).getResponse());
+        copies.get(0).proceed();
+    }
+
+    @Test
+    public void testTimeOfTheFirstCopyIsRecordedAlsoIfTheHedgeWins() throws InterruptedException, ServerException {
+        setUp(2);
+        RequestConfigurations requestConfigurations = new RequestConfigurations();
+        HedgingPolicy policy = new HedgingPolicy(20, 50, 1);
+        requestConfigurations.get("test.method").setHedgingPolicy(policy);
+        route(executorRepository, requestConfigurations);
+        when(executorRepository.getHedgeBudget(anyString())).thenReturn(new TokenBudget(1.0D, 1, 0));
+
+        TestRequest request = createRequest(1);
+        List<TestRequest> copies = request.enableCopies();
+        Response<String> response = dispatch(requestDispatcher, request);
+        for (int i = 0; i < 1000 && copies.size() < 2; i++) {
+            Thread.sleep(1);
+        }
+        assertThat(copies.size(), is(2));
+        Thread.sleep(20);
+
+        copies.get(1).proceed();
+
+        assertThat(response.get(), is(equalTo("Backend response.")));
+        // The first copy started (at least) the hedge delay before the hedge and was cancelled after the hedge answered.
+        assertThat(policy.getDelay() >= copies.get(1).getStatistic().getCallTime() + 20, is(true));
+        copies.get(0).proceed();
+    }
+
+    @Test
+    public void testRetryableResponseIsAttemptedAgainWithinTheBudget() throws InterruptedException, ServerException {
+        setUp(2);
+        RequestConfigurations requestConfigurations = new RequestConfigurations();
+        // The test backend always answers successfully, so retry on success.
+        requestConfigurations.get("test.method").setRetryPolicy(new RetryPolicy(3, EnumSet.of(ResponseStatus.SUCCESS), Collections.emptySet(), 1, 1, 1.0D));
+        requestConfigurations.get("test").setRetryBudget(new TokenBudget(0.0D, 1, 1));
+        route(executorRepository, requestConfigurations);
+
+        TestRequest request = createRequest(1);
+        List<TestRequest> copies = request.enableCopies();
+        Response<String> response = dispatch(requestDispatcher, request);
+        Thread.sleep(20);
+        copies.get(0).proceed();
+        Thread.sleep(40);
+        assertThat(copies.size(), is(2));
+        copies.get(1).proceed();
+
+        assertThat(response.get(), is(equalTo("Backend response.")));
+        // The budget allows one retry only.
+        assertThat(copies.size(), is(2));
+        assertThat(copies.get(1).getStatistic().getAttempt(), is(2));
+        assertThat(request.getStatistic().getAttempt(), is(2));
+    }
+
+    @Test
+    public void testAsyncRequestIsRetriedWithoutAGuardThread() throws Exception {
+        setUp(2);
+        RequestConfigurations requestConfigurations = new RequestConfigurations();
+        // The test backend always answers successfully, so retry on success.
+        requestConfigurations.get("test.method").setRetryPolicy(new RetryPolicy(3, EnumSet.of(ResponseStatus.SUCCESS), Collections.emptySet(), 1, 1, 1.0D));
+        requestConfigurations.get("test").setRetryBudget(new TokenBudget(0.0D, 1, 1));
+        route(executorRepository, requestConfigurations);
+
+        TestRequest request = createRequest(1);
+        List<TestRequest> copies = request.enableCopies();
+        Response<String> response = requestDispatcher.executeAsync(request);
+        copies.get(0).proceed();
+        for (int i = 0; i < 1000 && copies.size() < 2; i++) {
+            Thread.sleep(1);
+        }
+        assertThat(copies.size(), is(2));
+        copies.get(1).proceed();
+
+        assertThat(response.toCompletionStage().toCompletableFuture().get(2, TimeUnit.SECONDS).get(), is(equalTo("Backend response.")));
+        assertThat(copies.size(), is(2));
+        assertThat(request.getStatistic().getAttempt(), is(2));
+        verify(executorRepository, never()).getAsyncExecutor(anyObject());
+    }
+
+    @Test
+    public void testAsyncRequestWaitsForARateLimitWithoutAGuardThread() throws Exception {
+        setUp(2);
+        RequestConfigurations requestConfigurations = new RequestConfigurations();
+        requestConfigurations.get("test").setRateLimiter(new RateLimiter(20.0D, 1, 1000));
+        route(executorRepository, requestConfigurations);
+
+        TestRequest first = createRequest(1);
+        first.proceed();
+        assertThat(requestDispatcher.execute(first).getStatus(), is(ResponseStatus.SUCCESS));
+
+        // The next token comes in 50 milliseconds, the caller does not wait for it.
+        long start = System.nanoTime();
+        TestRequest second = createRequest(1);
+        second.proceed();
+        Response<String> response = requestDispatcher.executeAsync(second);
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 30L, is(true));
+
+        assertThat(response.toCompletionStage().toCompletableFuture().get(2, TimeUnit.SECONDS).getStatus(), is(ResponseStatus.SUCCESS));
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 30L, is(true));
+        verify(executorRepository, never()).getAsyncExecutor(anyObject());
+    }
+
+    @Test
+    public void testAsyncExecutionNeedsAnExecutorThatTellsWhenItIsDone() {
+        HawaiiExecutor executor = mock(HawaiiExecutor.class);
+        when(executor.getName()).thenReturn("blind");
+        TestRequest request = createRequest(1);
+
+        try {
+            new AsyncExecution<>(request, null, null, Runnable::run).start(executor, null);
+            fail("Expected the executor to be refused.");
+        } catch (ServerException e) {
+            // expected
+        }
+        verify(executor, never()).execute(anyObject(), anyObject());
+    }
+
     @Test
     public void testExecuteAsyncRequest() throws InterruptedException, ServerException {
         setUp(2);
         TestRequest request = createRequest(1);
         Response<String> response = dispatchAsync(requestDispatcher, request);
 
+        // Only the worker thread is used, no thread waits for the request.
         Thread.sleep(50);
-        verifyStatistics(2, 0, 0, 0);
+        verifyStatistics(1, 0, 0, 0);
 
         request.proceed();
 
         response.get();
         Thread.sleep(10);
-        verifyStatistics(0, 0, 2, 0);
+        verifyStatistics(0, 0, 1, 0);
 
         assertThat(response.get(), is(equalTo("Backend response.")));
     }
 
+    @Test
+    public void testAsyncRequestsCanBeChained() throws Exception {
+        setUp(2);
+        TestRequest first = createRequest(1);
+        TestRequest second = createRequest(1);
+        first.proceed();
+        second.proceed();
+
+        CompletableFuture<Response<String>> chain = executeAsync(first).thenCompose(response -> executeAsync(second)).toCompletableFuture();
+
+        assertThat(chain.get(1, TimeUnit.SECONDS), is(second.getResponse()));
+        assertThat(first.getResponse().getStatus(), is(ResponseStatus.SUCCESS));
+        assertThat(second.getResponse().getStatus(), is(ResponseStatus.SUCCESS));
+    }
+
+    private CompletionStage<Response<String>> executeAsync(TestRequest request) {
+        try {
+            return requestDispatcher.executeAsync(request).toCompletionStage();
+        } catch (ServerException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    @Test
+    public void testAsyncRequestTimeOutCompletesTheStage() throws Exception {
+        setUp(2);
+        TestRequest request = createRequest(1);
+
+        Response<String> response = requestDispatcher.executeAsync(request).toCompletionStage().toCompletableFuture().get(2, TimeUnit.SECONDS);
+
+        assertThat(response.getStatus(), is(ResponseStatus.TIME_OUT));
+        assertThat(request.isAborted(), is(true));
+        request.proceed();
+    }
+
     @Test
     public void testAsyncRequestTimesOut() throws InterruptedException, ServerException {
         setUp(2);
@@ -143,6 +465,360 @@ public class RequestDispatcherTest extends AbstractDispatcherFrameworkTest {
         assertThat(request.isRejected(), is(true));
     }
 
+    @Test
+    public void testConversionStageReleasesTheQueueThread() throws Exception {
+        setUp(2);
+        when(getCallLogger().getLogManager()).thenReturn(getLogManager());
+        CountDownLatch converting = new CountDownLatch(1);
+        List<String> conversionThreads = new ArrayList<>();
+        ResponseHandler<String, String> handler = (payload, response) -> {
+            conversionThreads.add(Thread.currentThread().getName());
+            try {
+                converting.await();
+            } catch (InterruptedException e) {
+                throw new ServerException(ServerError.UNEXPECTED_EXCEPTION, e);
+            }
+            response.set(payload);
+        };
+        RequestContext<String> context = new RequestContext<>("test", "method", 1);
+        context.getConfiguration().setConversionStage(true);
+        TestRequest request = new TestRequest(requestDispatcher, context, handler, getCallLogger());
+        request.proceed();
+        Response<String> response = dispatch(requestDispatcher, request);
+        Thread.sleep(50);
+
+        // The queue thread is done while the response is still being converted.
+        verifyStatistics(0, 0, 1, 0);
+        assertThat(response.toCompletionStage().toCompletableFuture().isDone(), is(false));
+
+        converting.countDown();
+        assertThat(response.get(), is(equalTo("Backend response.")));
+        assertThat(conversionThreads.get(0).startsWith("hawaii-conversion"), is(true));
+        assertThat(request.getStatistic().getConversionQueueTime() > 0.0D, is(true));
+    }
+
+    @Test
+    public void testTimeOutDuringConversionIsKept() throws Exception {
+        setUp(2);
+        when(getCallLogger().getLogManager()).thenReturn(getLogManager());
+        CountDownLatch converting = new CountDownLatch(1);
+        CountDownLatch converted = new CountDownLatch(1);
+        ResponseHandler<String, String> handler = (payload, response) -> {
+            try {
+                converting.await();
+            } catch (InterruptedException e) {
+                throw new ServerException(ServerError.UNEXPECTED_EXCEPTION, e);
+            } finally {
+                converted.countDown();
+            }
+            throw new ServerException(ServerError.IO, "Unable to convert the response.");
+        };
+        RequestContext<String> context = new RequestContext<>("test", "method", 1);
+        context.getConfiguration().setConversionStage(true);
+        TestRequest request = new TestRequest(requestDispatcher, context, handler, getCallLogger());
+        request.proceed();
+        Response<String> response = dispatch(requestDispatcher, request);
+
+        response.toCompletionStage().toCompletableFuture().get(5, TimeUnit.SECONDS);
+        assertThat(response.getStatus(), is(ResponseStatus.TIME_OUT));
+
+        // The conversion ends after the time out, it does not change the response.
+        converting.countDown();
+        assertThat(converted.await(1, TimeUnit.SECONDS), is(true));
+        Thread.sleep(50);
+        assertThat(response.getStatus(), is(ResponseStatus.TIME_OUT));
+        assertThat(response.getThrowable(), is(nullValue()));
+    }
+
+    @Test
+    public void testCallerRunsRequestWhenAThreadIsAvailable() throws Exception {
+        setUp(1);
+        getExecutor().setCallerRuns(true);
+        List<Thread> threads = Collections.synchronizedList(new ArrayList<>());
+        ResponseHandler<String, String> handler = (payload, response) -> {
+            threads.add(Thread.currentThread());
+            response.set(payload);
+        };
+
+        TestRequest request = createRequest(1, handler);
+        request.proceed();
+        assertThat(requestDispatcher.execute(request).get(), is(equalTo("Backend response.")));
+        assertThat(threads.get(0), is(Thread.currentThread()));
+        verifyStatistics(0, 0, 1, 0);
+
+        // The only thread is busy (asynchronous requests are never run by the caller), the next request is queued.
+        TestRequest blocking = createRequest(1, handler);
+        Response<String> blockingResponse = requestDispatcher.executeAsync(blocking);
+        Thread.sleep(30);
+        request = createRequest(1, handler);
+        request.proceed();
+        Response<String> response = dispatch(requestDispatcher, request);
+        Thread.sleep(30);
+        verifyStatistics(1, 1, 1, 0);
+
+        blocking.proceed();
+        assertThat(blockingResponse.get(), is(equalTo("Backend response.")));
+        assertThat(response.get(), is(equalTo("Backend response.")));
+        assertThat(threads.get(2).getName().startsWith("name"), is(true));
+    }
+
+    @Test
+    public void testCallersAndThePoolShareTheMaximumPoolSize() throws Exception {
+        setUp(1);
+        getExecutor().setCallerRuns(true);
+
+        TestRequest caller = createRequest(1);
+        Response<String> callerResponse = dispatch(requestDispatcher, caller);
+        Thread.sleep(30);
+        verifyStatistics(1, 0, 0, 0);
+
+        // The caller holds the only permit, the thread of the pool waits for it.
+        TestRequest pooled = createRequest(1);
+        pooled.proceed();
+        Response<String> pooledResponse = requestDispatcher.executeAsync(pooled);
+        Thread.sleep(30);
+        verifyStatistics(1, 0, 0, 0);
+
+        caller.proceed();
+        assertThat(callerResponse.get(), is(equalTo("Backend response.")));
+        assertThat(pooledResponse.get(), is(equalTo("Backend response.")));
+        Thread.sleep(30);
+        verifyStatistics(0, 0, 2, 0);
+    }
+
+    @Test
+    public void testCallerRunsRequestIsAbortedAtItsTimeOut() throws Exception {
+        setUp(1);
+        getExecutor().setCallerRuns(true);
+        ResponseHandler<String, String> handler = (payload, response) -> {
+            throw new ServerException(ServerError.IO, "Connection aborted.");
+        };
+        TestRequest request = new TestRequest(null, new RequestContext<>("test", "method", 1), handler, getCallLogger()) {
+            @Override
+            protected void abortInternally() {
+                super.abortInternally();
+                // Like closing the connection, the backend call ends.
+                proceed();
+            }
+        };
+
+        Response<String> response = requestDispatcher.execute(request);
+
+        assertThat(request.isAborted(), is(true));
+        assertThat(response.getStatus(), is(ResponseStatus.TIME_OUT));
+        verifyStatistics(0, 0, 1, 0);
+    }
+
+    @Test
+    public void testRequestIsNotExecutedWhenTheTimerIsStopped() throws ServerException {
+        // Without core threads, as a prestarted thread that has not started yet counts as a task.
+        createExecutor(0, 1, 1);
+        route(executorRepository, null);
+        requestDispatcher = new RequestDispatcher(executorRepository, getLogManager());
+        requestDispatcher.stop();
+
+        TestRequest request = createRequest(1);
+        request.proceed();
+        Response<String> response = requestDispatcher.execute(request);
+
+        assertThat(response.getStatus(), is(ResponseStatus.TOO_BUSY));
+        assertThat(getExecutor().getTaskCount(), is(0L));
+    }
+
+    @Test
+    public void testTimedOutRequestIsCompletedOffTheTimerThread() throws Exception {
+        setUp(2);
+        when(getCallLogger().getLogManager()).thenReturn(getLogManager());
+        TestRequest request = createRequest(1);
+        Response<String> response = requestDispatcher.executeAsync(request);
+        CompletableFuture<String> completedOn = new CompletableFuture<>();
+        response.onComplete(completed -> completedOn.complete(Thread.currentThread().getName()));
+
+        assertThat(completedOn.get(5, TimeUnit.SECONDS).startsWith("hawaii-conversion"), is(true));
+        assertThat(response.getStatus(), is(ResponseStatus.TIME_OUT));
+        request.proceed();
+    }
+
+    @Test
+    public void testRequestsAreBatched() throws Exception {
+        setUp(2);
+        when(getCallLogger().getLogManager()).thenReturn(getLogManager());
+        RequestConfigurations requestConfigurations = new RequestConfigurations();
+        MicroBatcher microBatcher = new MicroBatcher(2, 50L);
+        requestConfigurations.get("test.method").setMicroBatcher(microBatcher);
+        List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+        requestConfigurations.get("test.method").setBatchMapper(new BatchMapper<String, String>() {
+            @Override
+            public AbortableRequest<String> toBatchRequest(List<AbortableRequest<String>> requests) {
+                batchSizes.add(requests.size());
+                TestRequest batchRequest = new TestRequest(requestDispatcher, new RequestContext<>("test", "bulk", 1), new PassthroughResponseHandler<>(),
+                        getCallLogger());
+                batchRequest.proceed();
+                return batchRequest;
+            }
+
+            @Override
+            public List<String> split(String batchResponse, List<AbortableRequest<String>> requests) {
+                List<String> responses = new ArrayList<>();
+                for (int i = 0; i < requests.size(); i++) {
+                    responses.add(batchResponse + " " + i);
+                }
+                return responses;
+            }
+        });
+        route(executorRepository, requestConfigurations);
+
+        // The first two requests fill up a batch, the third one is dispatched once it waited long enough.
+        Response<String> first = requestDispatcher.executeAsync(createRequest(1));
+        Response<String> second = requestDispatcher.executeAsync(createRequest(1));
+        Response<String> third = requestDispatcher.executeAsync(createRequest(1));
+
+        assertThat(first.get(), is(equalTo("Backend response. 0")));
+        assertThat(second.get(), is(equalTo("Backend response. 1")));
+        assertThat(third.get(), is(equalTo("Backend response. 0")));
+        assertThat(batchSizes, is(equalTo(Arrays.asList(2, 1))));
+        assertThat(microBatcher.getBatchSizes().getCount(), is(2L));
+        assertThat(microBatcher.getWaitTimes().getCount(), is(3L));
+        assertThat(microBatcher.getWaitTimes().getMax() >= 40L, is(true));
+    }
+
+    private List<TestRequest> createScatterRequests(int amount) {
+        when(getCallLogger().getLogManager()).thenReturn(getLogManager());
+        List<TestRequest> requests = new ArrayList<>();
+        for (int i = 0; i < amount; i++) {
+            requests.add(new TestRequest(requestDispatcher, new RequestContext<>("test", "method", 1), new PassthroughResponseHandler<>(), getCallLogger()));
+        }
+        return requests;
+    }
+
+    @Test
+    public void testScatterGatherReturnsPartialResultsAtDeadline() throws Exception {
+        setUp(3);
+        List<TestRequest> requests = createScatterRequests(3);
+        requests.get(1).proceed();
+
+        ScatterGatherResult<String> result = requestDispatcher.scatterGather(requests, new TimeOut(100, TimeUnit.MILLISECONDS));
+
+        assertThat(result.isDeadlinePassed(), is(true));
+        assertThat(result.getCompleted().size(), is(1));
+        assertThat(result.getCompleted().get(0), is(requests.get(1).getResponse()));
+        assertThat(result.getResponses().get(1), is(requests.get(1).getResponse()));
+
+        Thread.sleep(20);
+        assertThat(requests.get(0).isAborted(), is(true));
+        assertThat(requests.get(2).getResponse().getStatus(), is(ResponseStatus.CANCELLED));
+        requests.forEach(TestRequest::proceed);
+    }
+
+    @Test
+    public void testScatterGatherStragglersDoNotOpenTheCircuit() throws Exception {
+        setUp(2);
+        RequestConfigurations requestConfigurations = new RequestConfigurations();
+        CircuitBreaker circuitBreaker = new CircuitBreaker("test", 50, 1, 10, new TimeOut(1, TimeUnit.MINUTES), 1, getLogManager());
+        requestConfigurations.get("test").setCircuitBreaker(circuitBreaker);
+        route(executorRepository, requestConfigurations);
+        List<TestRequest> requests = createScatterRequests(2);
+        requests.get(0).proceed();
+
+        ScatterGatherResult<String> result = requestDispatcher.scatterGather(requests, new TimeOut(100, TimeUnit.MILLISECONDS));
+
+        assertThat(result.isDeadlinePassed(), is(true));
+        assertThat(requests.get(1).getResponse().getStatus(), is(ResponseStatus.CANCELLED));
+        assertThat(circuitBreaker.isOpen(), is(false));
+        assertThat(circuitBreaker.getFailureRate(), is(0));
+        requests.forEach(TestRequest::proceed);
+    }
+
+    @Test
+    public void testScatterGatherCancelsStartedRequestsWhenOneCannotBeExecuted() throws Exception {
+        setUp(2);
+        List<TestRequest> started = createScatterRequests(2);
+        @SuppressWarnings("unchecked")
+        Request<String> failing = mock(Request.class);
+        when(failing.executeAsync()).thenThrow(new ServerException(ServerError.UNEXPECTED_EXCEPTION, "Cannot execute."));
+        List<Request<String>> requests = new ArrayList<>(started);
+        requests.add(failing);
+
+        try {
+            requestDispatcher.scatterGather(requests, new TimeOut(1, TimeUnit.SECONDS));
+            fail("Expected the exception of the failing request.");
+        } catch (ServerException e) {
+            // The requests started before are cancelled.
+        }
+
+        for (TestRequest request : started) {
+            assertThat(request.getResponse().getStatus(), is(ResponseStatus.CANCELLED));
+            assertThat(request.isAborted(), is(true));
+            request.proceed();
+        }
+    }
+
+    @Test
+    public void testScatterGatherFirstSuccessful() throws Exception {
+        setUp(3);
+        List<TestRequest> requests = createScatterRequests(3);
+        requests.get(2).proceed();
+
+        ScatterGatherResult<String> result = requestDispatcher.scatterGather(requests, new TimeOut(1, TimeUnit.SECONDS), 1);
+
+        assertThat(result.isDeadlinePassed(), is(false));
+        assertThat(result.getNumberOfSuccesses(), is(1));
+        assertThat(result.getCompleted().get(0), is(requests.get(2).getResponse()));
+        Thread.sleep(20);
+        assertThat(requests.get(0).isAborted(), is(true));
+        requests.forEach(TestRequest::proceed);
+    }
+
+    @Test
+    public void testScatterGatherAllCompleted() throws Exception {
+        setUp(3);
+        List<TestRequest> requests = createScatterRequests(3);
+        requests.forEach(TestRequest::proceed);
+
+        ScatterGatherResult<String> result = requestDispatcher.scatterGather(requests, new TimeOut(1, TimeUnit.SECONDS));
+
+        assertThat(result.isDeadlinePassed(), is(false));
+        assertThat(result.getCompleted().size(), is(3));
+        assertThat(result.getNumberOfSuccesses(), is(3));
+    }
+
+    @Test
+    public void testTransactionDeadlineLimitsTimeOut() throws Exception {
+        setUp(1);
+        TestRequest request = createScatterRequests(1).get(0);
+        getLogManager().putContext(Deadline.CONTEXT_KEY, Deadline.after(new TimeOut(50, TimeUnit.MILLISECONDS)));
+        try {
+            long start = System.nanoTime();
+            Response<String> response = request.execute();
+
+            assertThat(response.getStatus(), is(ResponseStatus.TIME_OUT));
+            assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 500L, is(true));
+        } finally {
+            getLogManager().removeContext(Deadline.CONTEXT_KEY);
+            request.proceed();
+        }
+    }
+
+    @Test
+    public void testExpiredRequestIsDroppedAtDequeue() throws Exception {
+        setUp(1);
+        List<TestRequest> requests = createScatterRequests(2);
+        requests.get(0).executeAsync();
+        Thread.sleep(20);
+
+        // Queued behind the first request, times out while queued.
+        Response<String> response = requests.get(1).executeAsync();
+        Thread.sleep(1100);
+        assertThat(response.getStatus(), is(ResponseStatus.TIME_OUT));
+
+        // The second request is removed from the queue as it times out, it is never executed (it would block until proceed).
+        verifyStatistics(1, 0, 0, 0);
+        assertThat(getQueueStatistic().getCancelledTaskCount(), is(1L));
+
+        requests.get(0).proceed();
+        Thread.sleep(20);
+        verifyStatistics(0, 0, 1, 0);
+    }
 
     @Test
     public void testExceptionOnExecuteIsRethrownByGet() throws ServerException {
@@ -49,7 +49,7 @@ public class ResponseHandlerTest extends AbstractDispatcherFrameworkTest {
 
     private void setUp(int maxSize) {
         createExecutor(1, maxSize, 1);
-        when(executorRepository.getExecutor(anyObject())).thenReturn(getExecutor());
+        route(executorRepository, null);
         when(executorRepository.getAsyncExecutor(anyObject())).thenReturn(getExecutor());
 
         requestDispatcher = new RequestDispatcher(executorRepository, getLogManager());
@@ -0,0 +1,156 @@
+/**
+ * Copyright 2014-2018 Q24
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kahu.hawaii.util.call.dispatch;
+
+import io.kahu.hawaii.util.call.AbortableRequest;
+import io.kahu.hawaii.util.call.Response;
+import io.kahu.hawaii.util.call.ResponseStatus;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class ResponsePublisherTest extends AbstractDispatcherFrameworkTest {
+    @Mock
+    private ExecutorRepository executorRepository;
+
+    private RequestDispatcher requestDispatcher;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        createExecutor(4, 4, 10);
+        route(executorRepository, null);
+        requestDispatcher = new RequestDispatcher(executorRepository, getLogManager());
+    }
+
+    @Test
+    public void testDemandAndConcurrencyLimitTheRequestsInFlight() throws InterruptedException {
+        List<TestRequest> requests = createRequests(10);
+        requests.forEach(TestRequest::proceed);
+        Factory factory = new Factory(requests);
+        AtomicInteger maxInFlight = new AtomicInteger(0);
+        List<Response<String>> responses = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch completed = new CountDownLatch(1);
+
+        requestDispatcher.publish(factory, 2).subscribe(new TestSubscriber(1) {
+            @Override
+            public void onNext(Response<String> response) {
+                maxInFlight.accumulateAndGet(factory.handedOut.get() - responses.size(), Math::max);
+                responses.add(response);
+                subscription.request(1);
+            }
+
+            @Override
+            public void onComplete() {
+                completed.countDown();
+            }
+        });
+
+        assertTrue(completed.await(1, TimeUnit.SECONDS));
+        assertThat(responses.size(), is(10));
+        assertThat(responses.stream().allMatch(response -> response.getStatus() == ResponseStatus.SUCCESS), is(true));
+        assertThat(maxInFlight.get() <= 1, is(true));
+    }
+
+    @Test
+    public void testRequestsAreOnlyExecutedOnDemandAndAbortedOnCancel() throws InterruptedException {
+        List<TestRequest> requests = createRequests(10);
+        Factory factory = new Factory(requests);
+        TestSubscriber subscriber = new TestSubscriber(3);
+
+        requestDispatcher.publish(factory, 5).subscribe(subscriber);
+        Thread.sleep(30);
+        assertThat(factory.handedOut.get(), is(3));
+        verifyStatistics(3, 0, 0, 0);
+
+        subscriber.subscription.cancel();
+        assertThat(requests.get(0).isAborted(), is(true));
+        assertThat(requests.get(2).isAborted(), is(true));
+        assertThat(factory.handedOut.get(), is(3));
+        requests.forEach(TestRequest::proceed);
+    }
+
+    private List<TestRequest> createRequests(int amount) {
+        List<TestRequest> requests = new ArrayList<>();
+        for (int i = 0; i < amount; i++) {
+            requests.add(createRequest(1));
+        }
+        return requests;
+    }
+
+    private static class Factory implements RequestFactory<String> {
+        private final List<TestRequest> requests;
+        private final AtomicInteger handedOut = new AtomicInteger(0);
+
+        private Factory(List<TestRequest> requests) {
+            this.requests = requests;
+        }
+
+        @Override
+        public AbortableRequest<String> getNextRequest() {
+            int next = handedOut.get();
+            if (next == requests.size()) {
+                return null;
+            }
+            handedOut.incrementAndGet();
+            return requests.get(next);
+        }
+
+        @Override
+        public int getNumberOfRequests() {
+            return requests.size();
+        }
+    }
+
+    private static class TestSubscriber implements ResponsePublisher.Subscriber<Response<String>> {
+        private final long initialDemand;
+        protected volatile ResponsePublisher.Subscription subscription;
+
+        private TestSubscriber(long initialDemand) {
+            this.initialDemand = initialDemand;
+        }
+
+        @Override
+        public void onSubscribe(ResponsePublisher.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(initialDemand);
+        }
+
+        @Override
+        public void onNext(Response<String> response) {
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/**
+ * Copyright 2014-2018 Q24
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kahu.hawaii.util.call.dispatch;
+
+import io.kahu.hawaii.util.call.RequestContext;
+import io.kahu.hawaii.util.call.TimeOut;
+import io.kahu.hawaii.util.call.configuration.RequestConfigurations;
+import io.kahu.hawaii.util.call.dispatch.circuit.CircuitBreaker;
+import io.kahu.hawaii.util.call.dispatch.limit.RateLimiter;
+import io.kahu.hawaii.util.logger.LogManager;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class RoutingTableTest {
+    private ExecutorRepository repository;
+    private RequestConfigurations requestConfigurations;
+    private HawaiiExecutor defaultExecutor;
+    private HawaiiExecutor crmExecutor;
+    private HawaiiExecutor slowExecutor;
+
+    @Before
+    public void setUp() {
+        repository = new ExecutorRepository(mock(LogManager.class));
+        defaultExecutor = executor(ExecutorRepository.DEFAULT_EXECUTOR_NAME);
+        crmExecutor = executor("crm");
+        slowExecutor = executor("slow");
+        repository.add(defaultExecutor);
+        repository.add(crmExecutor);
+        repository.add(slowExecutor);
+        repository.setDefaultExecutors(Collections.singletonMap("crm", "crm"));
+
+        requestConfigurations = new RequestConfigurations();
+        requestConfigurations.get("crm.search").setExecutorName("slow");
+        requestConfigurations.get("crm.search").setTimeOut(new TimeOut(30, TimeUnit.SECONDS));
+        requestConfigurations.get("crm.get");
+        repository.setRequestConfigurations(requestConfigurations);
+    }
+
+    @Test
+    public void testRoutesConfiguredCallsToTheirQueue() {
+        RoutingTable table = repository.getRoutingTable();
+        assertThat(table.getExecutor(new RequestContext<>("crm", "search")), is(sameInstance(slowExecutor)));
+        assertThat(table.getRoute(new RequestContext<>("crm", "search")).getTimeOut().getDuration(), is(30L));
+    }
+
+    @Test
+    public void testFallsBackToSystemAndDefaultQueue() {
+        RoutingTable table = repository.getRoutingTable();
+        assertThat(table.getExecutor(new RequestContext<>("crm", "get")), is(sameInstance(crmExecutor)));
+        assertThat(table.getRoute(new RequestContext<>("crm", "get")).getTimeOut(), is(nullValue()));
+        assertThat(table.getExecutor(new RequestContext<>("crm", "unknown")), is(sameInstance(crmExecutor)));
+        assertThat(table.getExecutor(new RequestContext<>("billing", "get")), is(sameInstance(defaultExecutor)));
+    }
+
+    @Test
+    public void testRoutingDoesNotChangeTheContext() {
+        RequestContext<String> context = new RequestContext<>("crm", "search");
+        repository.getRoutingTable().getExecutor(context);
+        assertThat(context.getExecutorName(), is(nullValue()));
+    }
+
+    @Test
+    public void testTableIsReplacedWhenTheConfigurationChanges() {
+        RoutingTable before = repository.getRoutingTable();
+        requestConfigurations.setExecutorName("crm.get", "slow");
+
+        RoutingTable after = repository.getRoutingTable();
+        assertThat(after, is(not(sameInstance(before))));
+        assertThat(before.getExecutor(new RequestContext<>("crm", "get")), is(sameInstance(crmExecutor)));
+        assertThat(after.getExecutor(new RequestContext<>("crm", "get")), is(sameInstance(slowExecutor)));
+    }
+
+    @Test
+    public void testRouteCombinesTheSettingsOfTheCallAndItsSystem() {
+        CircuitBreaker circuitBreaker = new CircuitBreaker("crm", 50, 1, 10, new TimeOut(1, TimeUnit.MINUTES), 1, mock(LogManager.class));
+        RateLimiter callRateLimiter = new RateLimiter(10.0D, 1, 0);
+        RateLimiter systemRateLimiter = new RateLimiter(100.0D, 1, 0);
+        requestConfigurations.get("crm").setCircuitBreaker(circuitBreaker);
+        requestConfigurations.get("crm").setRateLimiter(systemRateLimiter);
+        requestConfigurations.get("crm").setCoalescing(true);
+        requestConfigurations.get("crm.search").setRateLimiter(callRateLimiter);
+
+        RoutingTable.Route route = repository.getRoutingTable().getRoute(new RequestContext<>("crm", "search"));
+        assertThat(route.getCircuitBreaker(), is(sameInstance(circuitBreaker)));
+        assertThat(route.getRateLimiters(), is(Arrays.asList(callRateLimiter, systemRateLimiter)));
+        assertThat(route.isCoalescing(), is(true));
+        assertThat(route.getHedgingPolicy(), is(nullValue()));
+        assertThat(route.getRetryPolicy(), is(nullValue()));
+    }
+
+    private HawaiiExecutor executor(String name) {
+        HawaiiExecutor executor = mock(HawaiiExecutor.class);
+        when(executor.getName()).thenReturn(name);
+        return executor;
+    }
+}
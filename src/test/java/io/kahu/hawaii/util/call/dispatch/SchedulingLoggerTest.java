@@ -0,0 +1,97 @@
+/**
+ * Copyright 2014-2018 Q24
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kahu.hawaii.util.call.dispatch;
+
+import io.kahu.hawaii.util.call.AbortableRequest;
+import io.kahu.hawaii.util.call.TimeOut;
+import io.kahu.hawaii.util.call.statistics.QueueStatistic;
+import io.kahu.hawaii.util.call.statistics.QueueStatisticImpl;
+import io.kahu.hawaii.util.logger.CoreLoggers;
+import io.kahu.hawaii.util.logger.LogManager;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+public class SchedulingLoggerTest {
+    private LogManager logManager;
+    private AbortableRequest<String> request;
+    private SchedulingLogger schedulingLogger;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        logManager = mock(LogManager.class);
+        request = mock(AbortableRequest.class);
+        schedulingLogger = new SchedulingLogger(logManager);
+    }
+
+    private QueueStatistic statistic(int pending, int active) {
+        return new QueueStatisticImpl("queue", active, 1, 10, active, pending, active, 0L, 0L);
+    }
+
+    @Test
+    public void testAllRequestsAreLoggedByDefault() {
+        schedulingLogger.logScheduleStart(request, statistic(0, 0));
+        schedulingLogger.logScheduleStart(request, statistic(0, 0));
+
+        verify(logManager, times(2)).info(eq(CoreLoggers.SERVER), anyString());
+    }
+
+    @Test
+    public void testNothingIsLoggedWhenOff() {
+        schedulingLogger.setPolicy(SchedulingLogPolicy.off());
+
+        schedulingLogger.logScheduleStart(request, statistic(100, 10));
+
+        verifyZeroInteractions(logManager);
+    }
+
+    @Test
+    public void testOnlyRequestsOverTheThresholdAreLogged() {
+        schedulingLogger.setPolicy(SchedulingLogPolicy.threshold(5, 0));
+
+        schedulingLogger.logScheduleStart(request, statistic(4, 10));
+        verifyZeroInteractions(logManager);
+
+        schedulingLogger.logScheduleStart(request, statistic(5, 10));
+        verify(logManager).info(eq(CoreLoggers.SERVER), anyString());
+    }
+
+    @Test
+    public void testSummaryIsLoggedOncePerInterval() throws InterruptedException {
+        schedulingLogger.setPolicy(SchedulingLogPolicy.summary(new TimeOut(50, TimeUnit.MILLISECONDS)));
+
+        schedulingLogger.logScheduleStart(request, statistic(3, 1));
+        schedulingLogger.logScheduleStart(request, statistic(7, 2));
+        verify(logManager, never()).info(eq(CoreLoggers.SERVER), anyString());
+
+        Thread.sleep(60);
+        schedulingLogger.logScheduleStart(request, statistic(1, 1));
+        schedulingLogger.logScheduleStart(request, statistic(1, 1));
+
+        verify(logManager).putContext("pool.task.pending.max", 7L);
+        verify(logManager).info(CoreLoggers.SERVER, "Scheduled '3' requests on queue 'queue' in the last '0' sec.");
+    }
+}
@@ -24,6 +24,8 @@ import io.kahu.hawaii.util.call.statistics.RequestStatistic;
 import io.kahu.hawaii.util.exception.ServerError;
 import io.kahu.hawaii.util.exception.ServerException;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 
 public class TestRequest extends AbstractAbortableRequest<String, String> {
@@ -31,6 +33,8 @@ public class TestRequest extends AbstractAbortableRequest<String, String> {
 
     private boolean aborted = false;
     private boolean rejected = false;
+    private String fingerprint = null;
+    private List<TestRequest> copies = null;
 
     public TestRequest(RequestDispatcher requestDispatcher, RequestContext<String> context, ResponseHandler<String, String> responseHandler, CallLogger<String> logger) {
         super(requestDispatcher, context, responseHandler, logger);
@@ -38,6 +42,28 @@ public class TestRequest extends AbstractAbortableRequest<String, String> {
         setResponse(new Response<>(this, this.getStatistic(), null));
     }
 
+    private TestRequest(TestRequest original) {
+        super(original);
+    }
+
+    @Override
+    protected TestRequest newCopy() {
+        if (copies == null) {
+            return null;
+        }
+        TestRequest copy = new TestRequest(this);
+        copies.add(copy);
+        return copy;
+    }
+
+    /**
+     * Allow copies of this request, the copies are collected.
+     */
+    public List<TestRequest> enableCopies() {
+        copies = new ArrayList<>();
+        return copies;
+    }
+
     @Override
     protected void executeInternally(ResponseHandler<String, String> responseHandler, Response<String> response) throws ServerException {
         try {
@@ -49,6 +75,11 @@ public class TestRequest extends AbstractAbortableRequest<String, String> {
         responseHandler.addToResponse("Backend response.", response);
     }
 
+    @Override
+    protected String detach(String payload) {
+        return payload;
+    }
+
     @Override
     protected void abortInternally() {
         aborted = true;
@@ -69,6 +100,15 @@ public class TestRequest extends AbstractAbortableRequest<String, String> {
         return null;
     }
 
+    @Override
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    public void setFingerprint(String fingerprint) {
+        this.fingerprint = fingerprint;
+    }
+
     public void proceed() {
         latch.countDown();
     }
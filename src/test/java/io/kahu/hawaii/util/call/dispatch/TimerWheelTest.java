@@ -0,0 +1,94 @@
+/**
+ * Copyright 2014-2018 Q24
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kahu.hawaii.util.call.dispatch;
+
+import io.kahu.hawaii.util.logger.DefaultLogManager;
+import io.kahu.hawaii.util.logger.LogManagerConfiguration;
+import io.kahu.hawaii.util.logger.LoggingConfiguration;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class TimerWheelTest {
+    private final TimerWheel timer = new TimerWheel("test-timer", 1, TimeUnit.MILLISECONDS, 8, new DefaultLogManager(new LogManagerConfiguration(
+            new LoggingConfiguration())));
+
+    @After
+    public void tearDown() {
+        timer.stop();
+    }
+
+    @Test
+    public void testTaskRunsAfterItsDelay() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        long start = System.nanoTime();
+        // Longer than one turn of the wheel.
+        TimerWheel.Handle handle = timer.schedule(latch::countDown, 30, TimeUnit.MILLISECONDS);
+
+        assertThat(latch.await(1, TimeUnit.SECONDS), is(true));
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 30, is(true));
+        assertThat(handle.isExpired(), is(true));
+        assertThat(timer.getPending(), is(0));
+    }
+
+    @Test
+    public void testCancelledTaskDoesNotRun() throws InterruptedException {
+        AtomicInteger runs = new AtomicInteger(0);
+        TimerWheel.Handle handle = timer.schedule(runs::incrementAndGet, 10, TimeUnit.MILLISECONDS);
+
+        assertThat(handle.cancel(), is(true));
+        assertThat(handle.cancel(), is(false));
+        Thread.sleep(30);
+
+        assertThat(runs.get(), is(0));
+        assertThat(handle.isCancelled(), is(true));
+    }
+
+    @Test
+    public void testManyTimeOutsCanBeScheduledAndCancelled() throws InterruptedException {
+        AtomicInteger runs = new AtomicInteger(0);
+        List<TimerWheel.Handle> handles = new ArrayList<>();
+        for (int i = 0; i < 100000; i++) {
+            handles.add(timer.schedule(runs::incrementAndGet, 300 + i % 50, TimeUnit.MILLISECONDS));
+        }
+        assertThat(timer.getPending(), is(100000));
+
+        for (int i = 0; i < handles.size(); i += 2) {
+            handles.get(i).cancel();
+        }
+        assertThat(timer.getPending(), is(50000));
+
+        Thread.sleep(800);
+        assertThat(runs.get(), is(50000));
+        assertThat(timer.getPending(), is(0));
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void testStoppedTimerRejectsTasks() {
+        timer.stop();
+        timer.schedule(() -> {
+        }, 1, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ * Copyright 2014-2018 Q24
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kahu.hawaii.util.call.dispatch;
+
+import io.kahu.hawaii.util.call.statistics.QueueStatistic;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class VirtualThreadExecutorTest extends AbstractDispatcherFrameworkTest {
+    private VirtualThreadExecutor executor;
+
+    @After
+    public void stopExecutor() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    private TestRequest exec(VirtualThreadExecutor executor, TestRequest request) {
+        executor.execute(request, request.getResponse());
+        return request;
+    }
+
+    @Override
+    protected QueueStatistic getQueueStatistic() {
+        return executor.getQueueStatistic();
+    }
+
+    @Test
+    public void testConcurrencyIsCappedAndPendingTasksWait() throws InterruptedException {
+        executor = new VirtualThreadExecutor("virtual", 1, 1, getLogManager());
+
+        TestRequest r1 = exec(executor, createRequest());
+        TestRequest r2 = exec(executor, createRequest());
+        awaitStatistics(1, 1, 0, 0);
+
+        try {
+            exec(executor, createRequest());
+            fail("Expected a rejected execution.");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+        verifyStatistics(1, 1, 0, 1);
+
+        r1.proceed();
+        awaitStatistics(1, 0, 1, 1);
+
+        r2.proceed();
+        awaitStatistics(0, 0, 2, 1);
+        assertThat(executor.getQueueStatistic().getLargestPoolSize(), is(1));
+    }
+
+    @Test
+    public void testCancelledPendingTaskGivesBackItsPlaceRightAway() throws InterruptedException {
+        executor = new VirtualThreadExecutor("virtual", 1, 1, getLogManager());
+
+        TestRequest r1 = exec(executor, createRequest());
+        TestRequest r2 = createRequest();
+        FutureTask<String> task = executor.execute(r2, r2.getResponse());
+        awaitStatistics(1, 1, 0, 0);
+
+        executor.cancel(task);
+        assertThat(executor.getCancelledTaskCount(), is(1L));
+        verifyStatistics(1, 0, 0, 0);
+
+        // The place of the cancelled task is free again.
+        TestRequest r3 = exec(executor, createRequest());
+        verifyStatistics(1, 1, 0, 0);
+
+        r1.proceed();
+        r3.proceed();
+        awaitStatistics(0, 0, 2, 0);
+        assertThat(executor.getCancelledTaskCount(), is(1L));
+    }
+
+    @Test
+    public void testExecutorAcceptsTasksAgainAfterCompletion() throws InterruptedException {
+        executor = new VirtualThreadExecutor("virtual", 1, 0, getLogManager());
+
+        TestRequest r1 = exec(executor, createRequest());
+        r1.proceed();
+        awaitStatistics(0, 0, 1, 0);
+
+        TestRequest r2 = exec(executor, createRequest());
+        awaitStatistics(1, 0, 1, 0);
+        r2.proceed();
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ * Copyright 2014-2018 Q24
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kahu.hawaii.util.call.dispatch.circuit;
+
+import io.kahu.hawaii.util.call.ResponseStatus;
+import io.kahu.hawaii.util.call.TimeOut;
+import io.kahu.hawaii.util.logger.LogManager;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class CircuitBreakerTest {
+    private final LogManager logManager = mock(LogManager.class);
+
+    @Test
+    public void testOpensWhenFailureRateIsReached() {
+        CircuitBreaker circuitBreaker = new CircuitBreaker("test", 50, 4, 10, new TimeOut(1, TimeUnit.MINUTES), 1, logManager);
+
+        circuitBreaker.onResult(ResponseStatus.SUCCESS);
+        circuitBreaker.onResult(ResponseStatus.TIME_OUT);
+        circuitBreaker.onResult(ResponseStatus.SUCCESS);
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.CLOSED));
+
+        circuitBreaker.onResult(ResponseStatus.BACKEND_FAILURE);
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.OPEN));
+        assertThat(circuitBreaker.tryAcquirePermission(), is(false));
+    }
+
+    @Test
+    public void testIgnoresStatusesUnrelatedToTheBackend() {
+        CircuitBreaker circuitBreaker = new CircuitBreaker("test", 50, 2, 10, new TimeOut(1, TimeUnit.MINUTES), 1, logManager);
+
+        circuitBreaker.onResult(ResponseStatus.TOO_BUSY);
+        circuitBreaker.onResult(ResponseStatus.INTERNAL_FAILURE);
+        circuitBreaker.onResult(ResponseStatus.TIME_OUT);
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.CLOSED));
+    }
+
+    @Test
+    public void testSlidingWindowForgetsOldFailures() {
+        CircuitBreaker circuitBreaker = new CircuitBreaker("test", 50, 2, 2, new TimeOut(1, TimeUnit.MINUTES), 1, logManager);
+
+        circuitBreaker.onResult(ResponseStatus.SUCCESS);
+        circuitBreaker.onResult(ResponseStatus.SUCCESS);
+        circuitBreaker.onResult(ResponseStatus.SUCCESS);
+        assertThat(circuitBreaker.getFailureRate(), is(0));
+        circuitBreaker.onResult(ResponseStatus.TIME_OUT);
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.OPEN));
+    }
+
+    @Test
+    public void testHalfOpenClosesAfterSuccessfulTrialRequests() {
+        CircuitBreaker circuitBreaker = new CircuitBreaker("test", 50, 1, 10, new TimeOut(0, TimeUnit.MILLISECONDS), 2, logManager);
+        circuitBreaker.onResult(ResponseStatus.TIME_OUT);
+
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.HALF_OPEN));
+        assertThat(circuitBreaker.tryAcquirePermission(), is(true));
+        assertThat(circuitBreaker.tryAcquirePermission(), is(true));
+        assertThat(circuitBreaker.tryAcquirePermission(), is(false));
+
+        circuitBreaker.onResult(ResponseStatus.SUCCESS);
+        circuitBreaker.onResult(ResponseStatus.SUCCESS);
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.CLOSED));
+        assertThat(circuitBreaker.getFailureRate(), is(0));
+    }
+
+    @Test
+    public void testHalfOpenReopensOnFailure() {
+        CircuitBreaker circuitBreaker = new CircuitBreaker("test", 50, 1, 10, new TimeOut(0, TimeUnit.MILLISECONDS), 2, logManager);
+        circuitBreaker.onResult(ResponseStatus.TIME_OUT);
+
+        assertThat(circuitBreaker.tryAcquirePermission(), is(true));
+        circuitBreaker.onResult(ResponseStatus.BACKEND_FAILURE);
+        assertThat(circuitBreaker.isOpen(), is(false)); // The open duration has already passed.
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.HALF_OPEN));
+    }
+
+    @Test
+    public void testReset() {
+        CircuitBreaker circuitBreaker = new CircuitBreaker("test", 50, 1, 10, new TimeOut(1, TimeUnit.MINUTES), 1, logManager);
+        circuitBreaker.onResult(ResponseStatus.TIME_OUT);
+        assertThat(circuitBreaker.isOpen(), is(true));
+
+        circuitBreaker.reset();
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.CLOSED));
+        assertThat(circuitBreaker.tryAcquirePermission(), is(true));
+    }
+}
@@ -0,0 +1,71 @@
+/**
+ * Copyright 2014-2018 Q24
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kahu.hawaii.util.call.dispatch.hedge;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class HedgingTest {
+
+    @Test
+    public void testFixedDelay() {
+        HedgingPolicy policy = new HedgingPolicy(50, -1, 0);
+        policy.record(500.0D);
+        assertThat(policy.getDelay(), is(50L));
+    }
+
+    @Test
+    public void testNoDelayMeansNoHedging() {
+        HedgingPolicy policy = new HedgingPolicy(-1, 95, 10);
+        assertThat(policy.getDelay(), is(-1L));
+    }
+
+    @Test
+    public void testPercentileDelayOnceTheWindowIsFilled() {
+        HedgingPolicy policy = new HedgingPolicy(50, 90, 10);
+        for (int i = 1; i <= 9; i++) {
+            policy.record(i * 10.0D);
+        }
+        assertThat(policy.getDelay(), is(50L));
+
+        policy.record(100.0D);
+        assertThat(policy.getDelay(), is(90L));
+
+        // Replaces the oldest call time (10).
+        policy.record(200.0D);
+        assertThat(policy.getDelay(), is(100L));
+    }
+
+    @Test
+    public void testPercentileIsRecomputedEachTenthOfTheWindow() {
+        HedgingPolicy policy = new HedgingPolicy(50, 50, 100);
+        for (int i = 0; i < 100; i++) {
+            policy.record(10.0D);
+        }
+        assertThat(policy.getDelay(), is(10L));
+
+        // The median is 1000 once 51 call times are replaced, but it is only recomputed after each 10 call times.
+        for (int i = 0; i < 59; i++) {
+            policy.record(1000.0D);
+        }
+        assertThat(policy.getDelay(), is(10L));
+
+        policy.record(1000.0D);
+        assertThat(policy.getDelay(), is(1000L));
+    }
+}
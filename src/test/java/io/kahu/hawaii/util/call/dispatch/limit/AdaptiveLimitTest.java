@@ -0,0 +1,101 @@
+/**
+ * Copyright 2014-2018 Q24
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kahu.hawaii.util.call.dispatch.limit;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+
+public class AdaptiveLimitTest {
+
+    @Test
+    public void testAimdIncreasesAdditivelyAndDecreasesMultiplicatively() {
+        AimdLimit limit = new AimdLimit(10, 1, 20, 0.5D, 0.0D);
+
+        limit.onSample(10.0D, 10, false);
+        assertThat(limit.getLimit(), is(11));
+
+        limit.onSample(10.0D, 11, true);
+        assertThat(limit.getLimit(), is(5));
+    }
+
+    @Test
+    public void testAimdDoesNotGrowWhenUnderutilized() {
+        AimdLimit limit = new AimdLimit(10, 1, 20, 0.5D, 0.0D);
+
+        limit.onSample(10.0D, 2, false);
+        assertThat(limit.getLimit(), is(10));
+    }
+
+    @Test
+    public void testAimdTreatsSlowCallsAsDropped() {
+        AimdLimit limit = new AimdLimit(10, 1, 20, 0.5D, 100.0D);
+
+        limit.onSample(150.0D, 10, false);
+        assertThat(limit.getLimit(), is(5));
+    }
+
+    @Test
+    public void testAimdStaysWithinBounds() {
+        AimdLimit limit = new AimdLimit(2, 2, 3, 0.5D, 0.0D);
+
+        limit.onSample(1.0D, 3, true);
+        assertThat(limit.getLimit(), is(2));
+
+        limit.onSample(1.0D, 3, false);
+        limit.onSample(1.0D, 3, false);
+        assertThat(limit.getLimit(), is(3));
+    }
+
+    @Test
+    public void testGradientShrinksWhenCallsGetSlower() {
+        GradientLimit limit = new GradientLimit(50, 1, 100, 0.9D, 10);
+        for (int i = 0; i < 20; i++) {
+            limit.onSample(10.0D, 50, false);
+        }
+        int steady = limit.getLimit();
+
+        for (int i = 0; i < 20; i++) {
+            limit.onSample(100.0D, steady, false);
+        }
+        assertThat(limit.getLimit(), is(lessThan(steady)));
+    }
+
+    @Test
+    public void testGradientGrowsWhenCallsAreSteady() {
+        GradientLimit limit = new GradientLimit(10, 1, 100, 0.9D, 10);
+        for (int i = 0; i < 20; i++) {
+            limit.onSample(10.0D, limit.getLimit(), false);
+        }
+        assertThat(limit.getLimit(), is(greaterThan(10)));
+    }
+
+    @Test
+    public void testLimiterRejectsOverTheLimit() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(new AimdLimit(2, 1, 2, 0.5D, 0.0D));
+
+        assertThat(limiter.tryAcquire(), is(true));
+        assertThat(limiter.tryAcquire(), is(true));
+        assertThat(limiter.tryAcquire(), is(false));
+
+        limiter.release();
+        assertThat(limiter.getInFlight(), is(1));
+        assertThat(limiter.tryAcquire(), is(true));
+    }
+}
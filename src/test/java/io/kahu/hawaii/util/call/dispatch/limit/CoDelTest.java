@@ -0,0 +1,71 @@
+/**
+ * Copyright 2014-2018 Q24
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kahu.hawaii.util.call.dispatch.limit;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class CoDelTest {
+    private static final long MSEC = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void testShortQueueDelayIsNotShed() {
+        CoDel coDel = new CoDel(5, 100);
+        for (long now = 0; now < 1000; now += 10) {
+            assertThat(coDel.shouldShed(4 * MSEC, false, now * MSEC), is(false));
+        }
+        assertThat(coDel.getShedCount(), is(0L));
+    }
+
+    @Test
+    public void testShedsOnceDelayStaysAboveTargetForAnInterval() {
+        CoDel coDel = new CoDel(5, 100);
+        assertThat(coDel.shouldShed(10 * MSEC, false, 1 * MSEC), is(false));
+        assertThat(coDel.shouldShed(10 * MSEC, false, 50 * MSEC), is(false));
+        assertThat(coDel.shouldShed(10 * MSEC, false, 101 * MSEC), is(true));
+        assertThat(coDel.isShedding(), is(true));
+
+        // The next task is shed after interval / sqrt(1), then after interval / sqrt(2).
+        assertThat(coDel.shouldShed(10 * MSEC, false, 150 * MSEC), is(false));
+        assertThat(coDel.shouldShed(10 * MSEC, false, 201 * MSEC), is(true));
+        assertThat(coDel.shouldShed(10 * MSEC, false, 250 * MSEC), is(false));
+        assertThat(coDel.shouldShed(10 * MSEC, false, 272 * MSEC), is(true));
+        assertThat(coDel.getShedCount(), is(3L));
+    }
+
+    @Test
+    public void testStopsSheddingOnceDelayDropsBelowTarget() {
+        CoDel coDel = new CoDel(5, 100);
+        coDel.shouldShed(10 * MSEC, false, 1 * MSEC);
+        assertThat(coDel.shouldShed(10 * MSEC, false, 101 * MSEC), is(true));
+
+        assertThat(coDel.shouldShed(1 * MSEC, false, 102 * MSEC), is(false));
+        assertThat(coDel.isShedding(), is(false));
+        // The delay has to stay above the target for a full interval again.
+        assertThat(coDel.shouldShed(10 * MSEC, false, 500 * MSEC), is(false));
+    }
+
+    @Test
+    public void testEmptyQueueIsNotShed() {
+        CoDel coDel = new CoDel(5, 100);
+        coDel.shouldShed(10 * MSEC, false, 1 * MSEC);
+        assertThat(coDel.shouldShed(10 * MSEC, true, 200 * MSEC), is(false));
+    }
+}
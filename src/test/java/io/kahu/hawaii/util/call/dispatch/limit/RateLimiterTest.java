@@ -0,0 +1,83 @@
+/**
+ * Copyright 2014-2018 Q24
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kahu.hawaii.util.call.dispatch.limit;
+
+import org.junit.Test;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
+public class RateLimiterTest {
+
+    @Test
+    public void testBurstIsAdmittedAtOnce() {
+        RateLimiter rateLimiter = new RateLimiter(1.0D, 3, 0);
+        assertThat(rateLimiter.tryAcquire(), is(true));
+        assertThat(rateLimiter.tryAcquire(), is(true));
+        assertThat(rateLimiter.tryAcquire(), is(true));
+        assertThat(rateLimiter.tryAcquire(), is(false));
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void testRejectImmediately() throws InterruptedException {
+        RateLimiter rateLimiter = new RateLimiter(1.0D, 1, 0);
+        rateLimiter.acquire();
+        rateLimiter.acquire();
+    }
+
+    @Test
+    public void testWaitForToken() throws InterruptedException {
+        RateLimiter rateLimiter = new RateLimiter(20.0D, 1, 200);
+        rateLimiter.acquire();
+
+        long start = System.nanoTime();
+        rateLimiter.acquire();
+        rateLimiter.acquire();
+        // Two tokens at 20 per second take (about) 100 msec.
+        assertThat((System.nanoTime() - start) / 1000000L, greaterThanOrEqualTo(90L));
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void testRejectWhenWaitExceedsMaximum() throws InterruptedException {
+        RateLimiter rateLimiter = new RateLimiter(1.0D, 1, 200);
+        rateLimiter.acquire();
+        rateLimiter.acquire();
+    }
+
+    @Test
+    public void testReservedTokenCanBeGivenBack() {
+        RateLimiter rateLimiter = new RateLimiter(0.1D, 1, 0);
+        assertThat(rateLimiter.reserve(0L, TimeUnit.MILLISECONDS), is(0L));
+        assertThat(rateLimiter.tryAcquire(), is(false));
+
+        rateLimiter.release();
+        assertThat(rateLimiter.tryAcquire(), is(true));
+    }
+
+    @Test
+    public void testWaitIsCappedByTheCaller() throws InterruptedException {
+        RateLimiter rateLimiter = new RateLimiter(1.0D, 1, 5000);
+        rateLimiter.acquire();
+
+        // The next token comes in a second, the caller can wait 100 msec only.
+        assertThat(rateLimiter.reserve(100L, TimeUnit.MILLISECONDS), is(-1L));
+        assertThat(rateLimiter.reserve(2000L, TimeUnit.MILLISECONDS) > 0L, is(true));
+    }
+}
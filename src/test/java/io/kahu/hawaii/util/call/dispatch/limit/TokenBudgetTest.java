@@ -0,0 +1,59 @@
+/**
+ * Copyright 2014-2018 Q24
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kahu.hawaii.util.call.dispatch.limit;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class TokenBudgetTest {
+
+    @Test
+    public void testRetryBudgetStartsFullAndRefillsWithRequests() {
+        TokenBudget budget = new TokenBudget(0.5D, 2, 2);
+        assertThat(budget.tryAcquire(), is(true));
+        assertThat(budget.tryAcquire(), is(true));
+        assertThat(budget.tryAcquire(), is(false));
+
+        budget.onRequest();
+        assertThat(budget.tryAcquire(), is(false));
+        budget.onRequest();
+        assertThat(budget.tryAcquire(), is(true));
+    }
+
+    @Test
+    public void testHedgeBudgetStartsEmptyAndLimitsHedgesToRatioOfRequests() {
+        TokenBudget budget = new TokenBudget(0.5D, 10, 0);
+        budget.onRequest();
+        assertThat(budget.tryAcquire(), is(false));
+
+        budget.onRequest();
+        assertThat(budget.tryAcquire(), is(true));
+        assertThat(budget.tryAcquire(), is(false));
+    }
+
+    @Test
+    public void testBudgetIsCapped() {
+        TokenBudget budget = new TokenBudget(1.0D, 2, 0);
+        for (int i = 0; i < 10; i++) {
+            budget.onRequest();
+        }
+        assertThat(budget.tryAcquire(), is(true));
+        assertThat(budget.tryAcquire(), is(true));
+        assertThat(budget.tryAcquire(), is(false));
+    }
+}
@@ -0,0 +1,56 @@
+/**
+ * Copyright 2014-2018 Q24
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kahu.hawaii.util.call.dispatch.retry;
+
+import io.kahu.hawaii.util.call.Response;
+import io.kahu.hawaii.util.call.ResponseStatus;
+import io.kahu.hawaii.util.call.statistics.RequestStatistic;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.EnumSet;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class RetryTest {
+
+    @Test
+    public void testRetryableStatusesAndStatusCodes() {
+        RetryPolicy policy = new RetryPolicy(3, EnumSet.of(ResponseStatus.TIME_OUT), Collections.singleton(503), 100, 1000, 2.0D);
+
+        Response<String> response = new Response<>(null, new RequestStatistic(), null);
+        response.setStatus(ResponseStatus.TIME_OUT, "time out");
+        assertThat(policy.isRetryable(response), is(true));
+
+        response.setStatus(ResponseStatus.BACKEND_FAILURE, "failure");
+        assertThat(policy.isRetryable(response), is(false));
+
+        response.setStatusCode(503);
+        assertThat(policy.isRetryable(response), is(true));
+    }
+
+    @Test
+    public void testBackoffIsJitteredAndCapped() {
+        RetryPolicy policy = new RetryPolicy(10, EnumSet.of(ResponseStatus.TIME_OUT), Collections.emptySet(), 100, 500, 2.0D);
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(policy.getBackoff(1) <= 100L);
+            assertTrue(policy.getBackoff(2) <= 200L);
+            assertTrue(policy.getBackoff(8) <= 500L);
+        }
+    }
+}
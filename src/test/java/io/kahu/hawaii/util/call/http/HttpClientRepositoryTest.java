@@ -0,0 +1,93 @@
+/**
+ * Copyright 2014-2018 Q24
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kahu.hawaii.util.call.http;
+
+import io.kahu.hawaii.util.call.TimeOut;
+import io.kahu.hawaii.util.call.statistics.ConnectionPoolStatistic;
+import io.kahu.hawaii.util.logger.DefaultLogManager;
+import io.kahu.hawaii.util.logger.LogManagerConfiguration;
+import io.kahu.hawaii.util.logger.LoggingConfiguration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+
+public class HttpClientRepositoryTest {
+    private HttpClientRepository repository;
+
+    @Before
+    public void setUp() {
+        repository = new HttpClientRepository(new DefaultLogManager(new LogManagerConfiguration(new LoggingConfiguration())));
+    }
+
+    @After
+    public void tearDown() {
+        repository.stop();
+    }
+
+    @Test
+    public void assureThatThePoolIsSharedPerBackendSystem() {
+        HttpClientPool crm = repository.get("crm");
+
+        assertThat(repository.get("crm"), is(sameInstance(crm)));
+        assertThat(repository.get("crm").getHttpClient(), is(sameInstance(crm.getHttpClient())));
+        assertThat(repository.get("billing"), is(not(sameInstance(crm))));
+    }
+
+    @Test
+    public void assureThatTheConfigurationIsUsed() {
+        HttpClientConfiguration configuration = new HttpClientConfiguration();
+        configuration.setMaxConnections(7);
+        repository.configure("crm", configuration);
+
+        ConnectionPoolStatistic statistic = repository.get("crm").getConnectionPoolStatistic();
+        assertThat(statistic.getPoolName(), is("crm"));
+        assertThat(statistic.getMax(), is(7));
+        assertThat(statistic.getLeased(), is(0));
+        assertThat(statistic.getAvailable(), is(0));
+        assertThat(statistic.getPending(), is(0));
+    }
+
+    @Test
+    public void assureThatAReplacedPoolIsClosedAfterItsTimeOuts() throws Exception {
+        HttpClientConfiguration configuration = new HttpClientConfiguration();
+        configuration.setConnectTimeOut(new TimeOut(100, TimeUnit.MILLISECONDS));
+        configuration.setSocketTimeOut(new TimeOut(100, TimeUnit.MILLISECONDS));
+        repository.configure("crm", configuration);
+        HttpClientPool old = repository.get("crm");
+
+        repository.configure("crm", new HttpClientConfiguration());
+        assertThat(old.isClosed(), is(false));
+        assertThat(repository.get("crm").isClosed(), is(false));
+
+        long deadline = System.currentTimeMillis() + 5000L;
+        while (!old.isClosed() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10L);
+        }
+        assertThat(old.isClosed(), is(true));
+        assertThat(repository.get("crm").isClosed(), is(false));
+    }
+
+    @Test
+    public void assureThatUnknownSystemsHaveNoStatistic() {
+        assertThat(repository.getConnectionPoolStatistic("unknown"), is(nullValue()));
+        assertThat(repository.getConnectionPoolStatistics().size(), is(0));
+    }
+}
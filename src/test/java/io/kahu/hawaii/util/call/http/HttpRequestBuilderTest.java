@@ -19,6 +19,7 @@ import io.kahu.hawaii.util.call.Request;
 import io.kahu.hawaii.util.call.RequestPrototype;
 import io.kahu.hawaii.util.call.ResponseHandler;
 import io.kahu.hawaii.util.call.TimeOut;
+import io.kahu.hawaii.util.call.dispatch.RequestCoalescer;
 import io.kahu.hawaii.util.call.dispatch.RequestDispatcher;
 import io.kahu.hawaii.util.call.http.response.StringResponseHandler;
 import io.kahu.hawaii.util.call.log.CallLogger;
@@ -34,6 +35,10 @@ import org.junit.Before;
 import org.junit.Test;
 import org.springframework.http.HttpMethod;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.mockito.Mockito.*;
 
 public class HttpRequestBuilderTest {
@@ -106,6 +111,43 @@ public class HttpRequestBuilderTest {
         verifyHeader((AbortableHttpRequest<String>) request, "TestHeader3", "TestValue3");
     }
 
+    @Test
+    public void assureRequestsWithDifferentCredentialsAreNotCoalesced() throws ServerException {
+        RequestCoalescer coalescer = new RequestCoalescer();
+        Request<String> alice = builderWithoutHeaderProvider.newInstance().withCredentials(createCredentials("alice", "secret")).build();
+        Request<String> bob = builderWithoutHeaderProvider.newInstance().withCredentials(createCredentials("bob", "secret")).build();
+        Request<String> otherPassword = builderWithoutHeaderProvider.newInstance().withCredentials(createCredentials("alice", "other")).build();
+        Request<String> aliceAgain = builderWithoutHeaderProvider.newInstance().withCredentials(createCredentials("alice", "secret")).build();
+        Request<String> anonymous = builderWithoutHeaderProvider.newInstance().build();
+
+        String key = coalescer.getKey((AbortableHttpRequest<String>) alice);
+        assertNotNull(key);
+        assertNotEquals(key, coalescer.getKey((AbortableHttpRequest<String>) bob));
+        assertNotEquals(key, coalescer.getKey((AbortableHttpRequest<String>) otherPassword));
+        assertNotEquals(key, coalescer.getKey((AbortableHttpRequest<String>) anonymous));
+        assertEquals(key, coalescer.getKey((AbortableHttpRequest<String>) aliceAgain));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void assureOnlyIdempotentRequestsAreCopied() throws ServerException {
+        Request<String> get = builderWithoutHeaderProvider.newInstance().build();
+        HttpRequestContext<String> postContext = new HttpRequestContext<>(HttpMethod.POST, "http://test.com", "/testUrl", "dynalean", "add_shop_location",
+                new TimeOut(1, TimeUnit.SECONDS));
+        RequestPrototype<HttpResponse, String> postPrototype = new RequestPrototype<>(requestDispatcher, postContext, responseHandler, logger);
+        Request<String> post = new HttpRequestBuilder<>(postPrototype).newInstance().build();
+
+        assertNotNull(((AbortableHttpRequest<String>) get).newCopy());
+        assertNull(((AbortableHttpRequest<String>) post).newCopy());
+    }
+
+    private HttpRequestCredentials createCredentials(String username, String password) {
+        HttpRequestCredentials credentials = new HttpRequestCredentials();
+        credentials.setUsername(username);
+        credentials.setPassword(password);
+        return credentials;
+    }
+
     private void verifyHeader(AbortableHttpRequest<String> request, String key, String value) {
         Header header = request.getHttpRequest().getFirstHeader(key);
         assert (header != null);
@@ -0,0 +1,46 @@
+/**
+ * Copyright 2014-2018 Q24
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kahu.hawaii.util.call.statistics;
+
+import org.junit.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class HistogramTest {
+    @Test
+    public void testValuesAreCountedInPowerOfTwoBuckets() {
+        Histogram histogram = new Histogram();
+        for (long value : new long[] { 0L, 1L, 2L, 3L, 4L, 5L, 1000L }) {
+            histogram.record(value);
+        }
+
+        Map<String, Long> expected = new LinkedHashMap<>();
+        expected.put("<= 1", 2L);
+        expected.put("<= 2", 1L);
+        expected.put("<= 4", 2L);
+        expected.put("<= 8", 1L);
+        expected.put("<= 1024", 1L);
+        assertThat(histogram.getCounts(), is(equalTo(expected)));
+        assertThat(histogram.getCount(), is(7L));
+        assertThat(histogram.getMax(), is(1000L));
+        assertThat(histogram.getMean(), is(1015.0D / 7));
+    }
+}